@@ -14,57 +14,468 @@ import net.superblaubeere27.asmdelta.difference.AbstractDifference;
 import net.superblaubeere27.asmdelta.difference.clazz.*;
 import net.superblaubeere27.asmdelta.difference.fields.*;
 import net.superblaubeere27.asmdelta.difference.methods.*;
-import net.superblaubeere27.asmdelta.utils.InstructionComparator;
-import net.superblaubeere27.asmdelta.utils.ScheduledRunnable;
-import net.superblaubeere27.asmdelta.utils.Scheduler;
+import net.superblaubeere27.asmdelta.utils.InstructionEditScript;
+import net.superblaubeere27.asmdelta.matching.ClassMatch;
+import net.superblaubeere27.asmdelta.matching.ClassMatcher;
+import net.superblaubeere27.asmdelta.matching.MemberMatcher;
+import net.superblaubeere27.asmdelta.utils.MappedZipFile;
+import net.superblaubeere27.asmdelta.utils.MethodBodyHash;
+import net.superblaubeere27.asmdelta.utils.TaskExecutor;
+import net.superblaubeere27.asmdelta.utils.TaskGroup;
 import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.tree.FieldNode;
-import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.commons.SimpleRemapper;
+import org.objectweb.asm.tree.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 public class ASMDelta {
 
+    /**
+     * Number of changed class pairs handed to a worker at once
+     */
+    private static final int PAIRS_PER_TASK = 4;
+    /**
+     * The directory of the versioned classes of a multi-release jar
+     */
+    private static final String VERSIONS_DIRECTORY = "META-INF/versions/";
+
     public static List<AbstractDifference> calculateDifference(int threadCount, File origFile, File newFile) throws IOException {
-        HashMap<String, ClassNode> originalClasses = loadJar(threadCount, loadClasspathFile(origFile));
-        HashMap<String, ClassNode> newClasses = loadJar(threadCount, loadClasspathFile(newFile));
+        try (TaskExecutor executor = new TaskExecutor(threadCount)) {
+            return calculateDifference(executor, origFile, newFile);
+        }
+    }
+
+    /**
+     * Calculates the differences between two jars.
+     * <p>
+     * The calling thread walks the central directories of both jars and submits every pair of entries whose content
+     * differs to the executor, which parses and compares them right away. Reading, parsing and comparing overlap
+     * instead of waiting for each other. Only a few tasks per thread may be pending, so the fast path for unchanged
+     * entries can't get far ahead of the workers.
+     * <p>
+     * The differences are returned in {@link AbstractDifference#ORDER}, independent of the thread count.
+     */
+    public static List<AbstractDifference> calculateDifference(TaskExecutor executor, File origFile, File newFile) throws IOException {
+        return calculateDifference(executor, origFile, newFile, new DeltaOptions());
+    }
+
+    /**
+     * @see #calculateDifference(TaskExecutor, File, File)
+     */
+    public static List<AbstractDifference> calculateDifference(TaskExecutor executor, File origFile, File newFile, DeltaOptions options) throws IOException {
+        RenameCandidates renameCandidates = options.isDetectRenames() ? new RenameCandidates() : null;
+        // Every task collects into its own list, they are only merged once all tasks finished
+        Queue<List<AbstractDifference>> taskDifferences = new ConcurrentLinkedQueue<>();
+
+        // Each task borrows one read buffer for the original and one for the new jar, their inflaters are ended with the pool
+        try (MappedZipFile origJar = new MappedZipFile(origFile); MappedZipFile newJar = new MappedZipFile(newFile); MappedZipFile.ReadBufferPool readBuffers = new MappedZipFile.ReadBufferPool()) {
+            Map<String, MappedZipFile.Entry> originalEntries = classEntries(origJar);
+            Map<String, MappedZipFile.Entry> newEntries = classEntries(newJar);
+
+            TaskGroup<IOException> group = executor.newGroup(executor.getParallelism() * 4);
+
+            try {
+                submitChangedPairs(group, originalEntries, newEntries, readBuffers, pairs -> {
+                    List<AbstractDifference> pairDifferences = new ArrayList<>();
+                    MappedZipFile.ReadBuffer originalBuffer = readBuffers.borrow();
+                    MappedZipFile.ReadBuffer newBuffer = readBuffers.borrow();
+
+                    try {
+                        for (ClassPair pair : pairs) {
+                            comparePair(pairDifferences, pair, originalBuffer, newBuffer, renameCandidates);
+                        }
+                    } finally {
+                        readBuffers.release(originalBuffer);
+                        readBuffers.release(newBuffer);
+                    }
+
+                    taskDifferences.add(pairDifferences);
+                });
+            } catch (IOException | RuntimeException e) {
+                group.cancel();
+                awaitAfterFailure(group);
+                throw e;
+            }
+
+            group.await();
+
+            if (renameCandidates != null) {
+                // The entries are keyed by their name in the jar/jmod, not by the class name
+                String originalPrefix = classEntryPrefix(origJar);
+                String newPrefix = classEntryPrefix(newJar);
+                Predicate<String> isTaken = name -> originalEntries.containsKey(originalPrefix + name + ".class") || newEntries.containsKey(newPrefix + name + ".class");
+
+                compareWithRenames(executor, renameCandidates, isTaken, readBuffers, taskDifferences);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Calculating the difference was interrupted");
+        }
+
+        List<AbstractDifference> differences = new ArrayList<>(taskDifferences.stream().mapToInt(List::size).sum());
+
+        taskDifferences.forEach(differences::addAll);
+        differences.sort(AbstractDifference.ORDER);
+
+        return differences;
+    }
+
+    /**
+     * Submits every pair of entries that could contain a difference. Byte-identical entries can't, so they are
+     * skipped without being parsed.
+     */
+    private static void submitChangedPairs(TaskGroup<IOException> group, Map<String, MappedZipFile.Entry> originalEntries, Map<String, MappedZipFile.Entry> newEntries, MappedZipFile.ReadBufferPool readBuffers, TaskExecutor.ChunkTask<ClassPair, IOException> task) throws IOException, InterruptedException {
+        MappedZipFile.ReadBuffer originalBuffer = readBuffers.borrow();
+        MappedZipFile.ReadBuffer newBuffer = readBuffers.borrow();
+
+        try {
+            submitChangedPairs(group, originalEntries, newEntries, originalBuffer, newBuffer, task);
+        } finally {
+            readBuffers.release(originalBuffer);
+            readBuffers.release(newBuffer);
+        }
+    }
+
+    private static void submitChangedPairs(TaskGroup<IOException> group, Map<String, MappedZipFile.Entry> originalEntries, Map<String, MappedZipFile.Entry> newEntries, MappedZipFile.ReadBuffer originalBuffer, MappedZipFile.ReadBuffer newBuffer, TaskExecutor.ChunkTask<ClassPair, IOException> task) throws IOException, InterruptedException {
+
+        List<ClassPair> pairs = new ArrayList<>(PAIRS_PER_TASK);
+
+        for (MappedZipFile.Entry entry : originalEntries.values()) {
+            if (group.isCancelled()) return;
+
+            MappedZipFile.Entry other = newEntries.get(entry.getName());
+
+            if (other == null || !isSameContent(entry, other, originalBuffer, newBuffer)) {
+                pairs.add(new ClassPair(entry, other));
+            }
+            if (pairs.size() == PAIRS_PER_TASK) {
+                submitPairs(group, pairs, task);
+                pairs = new ArrayList<>(PAIRS_PER_TASK);
+            }
+        }
+        for (MappedZipFile.Entry entry : newEntries.values()) {
+            if (group.isCancelled()) return;
 
-        List<AbstractDifference> differences = new ArrayList<>();
+            if (!originalEntries.containsKey(entry.getName())) {
+                pairs.add(new ClassPair(null, entry));
+            }
+            if (pairs.size() == PAIRS_PER_TASK) {
+                submitPairs(group, pairs, task);
+                pairs = new ArrayList<>(PAIRS_PER_TASK);
+            }
+        }
 
-        originalClasses.keySet().stream().filter(key -> !newClasses.containsKey(key)).map(RemoveClassDifference::new).forEach(differences::add); // Removed classes
-        newClasses.keySet().stream().filter(key -> !originalClasses.containsKey(key)).map(key -> new AddClassDifference(newClasses.get(key))).forEach(differences::add); // Added classes
+        submitPairs(group, pairs, task);
+    }
 
-        LinkedList<String> collect = originalClasses.keySet().stream().filter(newClasses::containsKey).distinct().collect(Collectors.toCollection(LinkedList::new));
+    private static void submitPairs(TaskGroup<IOException> group, List<ClassPair> pairs, TaskExecutor.ChunkTask<ClassPair, IOException> task) throws InterruptedException {
+        if (!pairs.isEmpty()) {
+            group.submit(() -> task.run(pairs));
+        }
+    }
 
-        ScheduledRunnable runnable = () -> {
-            String next;
+    /**
+     * Waits for the tasks of a failed group, the original failure is more interesting than theirs
+     */
+    private static void awaitAfterFailure(TaskGroup<?> group) {
+        try {
+            group.await();
+        } catch (Exception ignored) {
+            if (ignored instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 
-            synchronized (collect) {
-                next = collect.poll();
+    /**
+     * @param renameCandidates Collects the classes instead of comparing them if not <code>null</code>
+     */
+    private static void comparePair(List<AbstractDifference> differences, ClassPair pair, MappedZipFile.ReadBuffer originalBuffer, MappedZipFile.ReadBuffer newBuffer, RenameCandidates renameCandidates) throws IOException {
+        if (renameCandidates != null) {
+            if (pair.originalEntry != null) {
+                renameCandidates.originalClasses.add(parseClass(classReader(pair.originalEntry, originalBuffer)));
             }
+            if (pair.newEntry != null) {
+                ClassNode newClass = parseClass(classReader(pair.newEntry, newBuffer));
+
+                renameCandidates.newClasses.add(newClass);
+                renameCandidates.newEntries.put(newClass.name, pair.newEntry);
+            }
+            return;
+        }
+
+        if (pair.newEntry == null) {
+            differences.add(new RemoveClassDifference(classReader(pair.originalEntry, originalBuffer).getClassName()));
+            return;
+        }
+        // Added classes keep the bytes of their entry, they are never parsed
+        if (pair.originalEntry == null) {
+            differences.add(new AddClassDifference(pair.newEntry.readAllBytes(newBuffer)));
+            return;
+        }
+
+        ClassReader newReader = classReader(pair.newEntry, newBuffer);
+        ClassReader oldReader = classReader(pair.originalEntry, originalBuffer);
+
+        if (!oldReader.getClassName().equals(newReader.getClassName())) { // The entry now contains another class
+            differences.add(new RemoveClassDifference(oldReader.getClassName()));
+            differences.add(new AddClassDifference(pair.newEntry.readAllBytes(newBuffer)));
+            return;
+        }
+
+        compareClasses(differences, parseClass(oldReader), parseClass(newReader), null);
+    }
+
+    /**
+     * Compares the changed classes of both jars after pairing them up by similarity instead of by name. Classes that
+     * were paired with a class of another name are moved there, references to them are remapped in every changed
+     * class before it is compared. Unpaired classes are removed and added as usual.
+     */
+    private static void compareWithRenames(TaskExecutor executor, RenameCandidates candidates, Predicate<String> isTaken, MappedZipFile.ReadBufferPool readBuffers, Queue<List<AbstractDifference>> taskDifferences) throws IOException, InterruptedException {
+        List<ClassMatch> matches = new ArrayList<>(ClassMatcher.match(executor, new ArrayList<>(candidates.originalClasses), new ArrayList<>(candidates.newClasses)));
+        Map<String, String> renames = renames(matches);
+
+        // A renamed class keeps whatever the differences don't model, pairs that would lose some of it aren't renamed
+        while (matches.removeIf(match -> !match.getOriginalClass().name.equals(match.getNewClass().name) && !hasSameUnmodelledAttributes(match.getOriginalClass(), match.getNewClass(), renames))) {
+            renames.clear();
+            renames.putAll(renames(matches));
+        }
 
-            if (next == null) return true;
+        Map<String, ClassNode> unmatchedOriginals = new TreeMap<>();
+        Map<String, ClassNode> unmatchedNews = new TreeMap<>();
 
-            compareClasses(differences, originalClasses.get(next), newClasses.get(next));
+        candidates.originalClasses.forEach(classNode -> unmatchedOriginals.put(classNode.name, classNode));
+        candidates.newClasses.forEach(classNode -> unmatchedNews.put(classNode.name, classNode));
 
+        List<ClassNode[]> pairs = new ArrayList<>();
+
+        for (ClassMatch match : matches) {
+            unmatchedOriginals.remove(match.getOriginalClass().name);
+            unmatchedNews.remove(match.getNewClass().name);
+
+            pairs.add(new ClassNode[]{match.getOriginalClass(), match.getNewClass()});
+        }
+
+        List<AbstractDifference> poolDifferences = new ArrayList<>();
+        // Pool moves, unmatched classes whose name is taken by a renamed class have to make room first
+        Map<String, String> moves = new TreeMap<>(renames);
+        Set<String> renameTargets = new HashSet<>(renames.values());
+
+        for (Iterator<ClassNode> iterator = unmatchedOriginals.values().iterator(); iterator.hasNext(); ) {
+            ClassNode original = iterator.next();
+            ClassNode sameName = unmatchedNews.remove(original.name);
+
+            if (sameName != null) { // Nothing similar on either side, compare them like without rename detection
+                pairs.add(new ClassNode[]{original, sameName});
+                continue;
+            }
+
+            if (renameTargets.contains(original.name)) {
+                moves.put(original.name, null);
+            } else {
+                poolDifferences.add(new RemoveClassDifference(original.name));
+            }
+        }
+
+        int evictions = 0;
+
+        for (Map.Entry<String, String> move : moves.entrySet()) {
+            if (move.getValue() == null) {
+                String temporaryName;
+
+                do {
+                    temporaryName = "asmdelta$removed$" + evictions++;
+                } while (isTaken.test(temporaryName));
+
+                move.setValue(temporaryName);
+                poolDifferences.add(new RemoveClassDifference(temporaryName));
+            }
+        }
+
+        poolDifferences.addAll(RenameClassDifference.plan(moves, isTaken));
+
+        MappedZipFile.ReadBuffer readBuffer = readBuffers.borrow();
+
+        try {
+            for (String name : unmatchedNews.keySet()) {
+                poolDifferences.add(new AddClassDifference(candidates.newEntries.get(name).readAllBytes(readBuffer)));
+            }
+        } finally {
+            readBuffers.release(readBuffer);
+        }
+
+        taskDifferences.add(poolDifferences);
+
+        MoveCandidates moveCandidates = new MoveCandidates();
+
+        executor.forEachChunk(pairs, executor.chunkSize(pairs.size()), chunk -> {
+            List<AbstractDifference> chunkDifferences = new ArrayList<>();
+
+            for (ClassNode[] pair : chunk) {
+                ClassNode original = pair[0];
+
+                if (!renames.isEmpty()) {
+                    Map<String, String> usedRenames = new HashMap<>();
+
+                    original = RemapClassDifference.remap(original, renames, usedRenames);
+
+                    if (!usedRenames.isEmpty()) {
+                        chunkDifferences.add(new RemapClassDifference(original.name, new TreeMap<>(usedRenames)));
+                    }
+                }
+
+                compareClasses(chunkDifferences, original, pair[1], moveCandidates);
+            }
+
+            taskDifferences.add(chunkDifferences);
+        });
+
+        replaceMovedMethods(moveCandidates, taskDifferences);
+    }
+
+    private static Map<String, String> renames(List<ClassMatch> matches) {
+        Map<String, String> renames = new HashMap<>();
+
+        for (ClassMatch match : matches) {
+            if (!match.getOriginalClass().name.equals(match.getNewClass().name)) {
+                renames.put(match.getOriginalClass().name, match.getNewClass().name);
+            }
+        }
+
+        return renames;
+    }
+
+    /**
+     * Checks the attributes no difference can change, the inner classes and the parameters of the methods both classes
+     * have. A class that is compared with a class of the same name loses changes of them as well, but a renamed class
+     * would take them from an unrelated class.
+     */
+    private static boolean hasSameUnmodelledAttributes(ClassNode original, ClassNode updated, Map<String, String> renames) {
+        Remapper remapper = new SimpleRemapper(renames);
+
+        if (original.innerClasses.size() != updated.innerClasses.size()) {
             return false;
-        };
+        }
 
-        Scheduler scheduler = new Scheduler(runnable);
+        for (int i = 0; i < original.innerClasses.size(); i++) {
+            InnerClassNode originalInner = original.innerClasses.get(i);
+            InnerClassNode updatedInner = updated.innerClasses.get(i);
 
-        scheduler.run(threadCount);
-        scheduler.waitFor();
+            if (!Objects.equals(remapper.mapType(originalInner.name), updatedInner.name)
+                    || !Objects.equals(remapper.mapType(originalInner.outerName), updatedInner.outerName)
+                    || !Objects.equals(originalInner.innerName, updatedInner.innerName)
+                    || originalInner.access != updatedInner.access) {
+                return false;
+            }
+        }
 
-        return differences;
+        Map<String, MethodNode> updatedMethods = new HashMap<>();
+
+        for (MethodNode method : updated.methods) {
+            updatedMethods.put(method.name + method.desc, method);
+        }
+
+        for (MethodNode method : original.methods) {
+            MethodNode updatedMethod = updatedMethods.get(method.name + remapper.mapMethodDesc(method.desc));
+
+            if (updatedMethod != null && !isSameParameters(method.parameters, updatedMethod.parameters)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isSameParameters(List<ParameterNode> a, List<ParameterNode> b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        if (a.size() != b.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < a.size(); i++) {
+            if (!Objects.equals(a.get(i).name, b.get(i).name) || a.get(i).access != b.get(i).access) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Replaces a method that was removed from one class and added to another one with the same body by a
+     * {@link MoveMethodDifference}. Only identical bodies are paired, similar ones would have to be compared against
+     * every added method of the jar. Methods are looked up by the hash of their body.
+     */
+    private static void replaceMovedMethods(MoveCandidates candidates, Queue<List<AbstractDifference>> taskDifferences) {
+        Comparator<MovableMethod> order = Comparator.comparing((MovableMethod movable) -> movable.className)
+                .thenComparing(movable -> movable.method.name)
+                .thenComparing(movable -> movable.method.desc);
+
+        Map<String, Deque<MovableMethod>> addedByBody = new HashMap<>();
+
+        candidates.addedMethods.stream()
+                .filter(movable -> movable.method.instructions.size() != 0)
+                .sorted(order)
+                .forEach(movable -> addedByBody.computeIfAbsent(movable.method.desc + movable.bodyHash, key -> new ArrayDeque<>()).add(movable));
+
+        if (addedByBody.isEmpty()) {
+            return;
+        }
+
+        Set<AbstractDifference> replaced = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<AbstractDifference> moveDifferences = new ArrayList<>();
+
+        candidates.removedMethods.stream()
+                .filter(movable -> movable.method.instructions.size() != 0)
+                .sorted(order)
+                .forEach(removed -> {
+                    Deque<MovableMethod> sameBody = addedByBody.get(removed.method.desc + removed.bodyHash);
+
+                    if (sameBody == null) {
+                        return;
+                    }
+
+                    MovableMethod added = sameBody.stream()
+                            .filter(movable -> !movable.className.equals(removed.className))
+                            .findFirst()
+                            .orElse(null);
+
+                    if (added == null) {
+                        return;
+                    }
+
+                    sameBody.remove(added);
+
+                    replaced.add(removed.difference);
+                    replaced.add(added.difference);
+
+                    moveDifferences.add(new MoveMethodDifference(removed.className, removed.method.name, added.className, added.method.name, added.method.desc));
+                    compareMethod(moveDifferences, added.className, removed.method, added.method, true);
+                });
+
+        if (!replaced.isEmpty()) {
+            taskDifferences.forEach(differences -> differences.removeIf(replaced::contains));
+            taskDifferences.add(moveDifferences);
+        }
     }
 
-    private static void compareClasses(List<AbstractDifference> differences, ClassNode oldClass, ClassNode newClass) {
+    /**
+     * @param moveCandidates Detects renamed members and collects the removed and added methods for
+     *                       {@link #replaceMovedMethods(MoveCandidates, Queue)} if not <code>null</code>
+     */
+    private static void compareClasses(List<AbstractDifference> differences, ClassNode oldClass, ClassNode newClass, MoveCandidates moveCandidates) {
         if (oldClass.access != newClass.access) {
             differences.add(new ClassAccessDifference(oldClass.name, oldClass.access, newClass.access));
         }
@@ -109,8 +520,24 @@ public class ASMDelta {
                 }
             }
 
-            oldFields.keySet().stream().filter(key -> !newFields.containsKey(key)).map(key -> new RemoveFieldDifference(oldClass.name, key)).forEach(differences::add); // Removed fields
-            newFields.keySet().stream().filter(key -> !oldFields.containsKey(key)).map(key -> new AddFieldDifference(oldClass.name, newFields.get(key))).forEach(differences::add); // Added fields
+            List<FieldNode> removedFields = new ArrayList<>();
+            List<FieldNode> addedFields = new ArrayList<>();
+
+            oldFields.values().stream().filter(field -> !newFields.containsKey(field.name)).forEach(removedFields::add);
+            newFields.values().stream().filter(field -> !oldFields.containsKey(field.name)).forEach(addedFields::add);
+
+            if (moveCandidates != null) { // Renamed fields are only changed instead of being removed and added
+                MemberMatcher.matchFields(removedFields, addedFields).forEach((oldField, newField) -> {
+                    removedFields.remove(oldField);
+                    addedFields.remove(newField);
+
+                    differences.add(new RenameFieldDifference(oldClass.name, oldField.name, newField.name));
+                    compareField(differences, oldClass.name, oldField, newField);
+                });
+            }
+
+            removedFields.stream().map(field -> new RemoveFieldDifference(oldClass.name, field.name)).forEach(differences::add); // Removed fields
+            addedFields.stream().map(field -> new AddFieldDifference(oldClass.name, field)).forEach(differences::add); // Added fields
 
             oldFields.keySet().stream().filter(newFields::containsKey).forEach(key -> compareField(differences, oldClass.name, oldFields.get(key), newFields.get(key)));
         }
@@ -135,15 +562,46 @@ public class ASMDelta {
                 }
             }
 
-            oldMethods.keySet().stream().filter(key -> !newMethods.containsKey(key)).map(key -> {
-                MethodNode methodNode = oldMethods.get(key);
+            // Every body is hashed at most once, renamed, moved and changed methods are all found by their hash
+            Map<MethodNode, MethodBodyHash> bodyHashes = new IdentityHashMap<>();
+            Function<MethodNode, MethodBodyHash> bodyHash = method -> bodyHashes.computeIfAbsent(method, MethodBodyHash::of);
+
+            List<MethodNode> removedMethods = new ArrayList<>();
+            List<MethodNode> addedMethods = new ArrayList<>();
 
-                return new RemoveMethodDifference(oldClass.name, methodNode.name, methodNode.desc);
-            }).forEach(differences::add); // Removed fields
+            oldMethods.values().stream().filter(method -> !newMethods.containsKey(method.name + method.desc)).forEach(removedMethods::add);
+            newMethods.values().stream().filter(method -> !oldMethods.containsKey(method.name + method.desc)).forEach(addedMethods::add);
 
-            newMethods.keySet().stream().filter(key -> !oldMethods.containsKey(key)).map(key -> new AddMethodDifference(oldClass.name, newMethods.get(key))).forEach(differences::add); // Added fields
+            if (moveCandidates != null) { // Renamed methods are only changed instead of being removed and added
+                MemberMatcher.matchMethods(removedMethods, addedMethods, bodyHash).forEach((oldMethod, newMethod) -> {
+                    removedMethods.remove(oldMethod);
+                    addedMethods.remove(newMethod);
 
-            oldMethods.keySet().stream().filter(newMethods::containsKey).forEach(key -> compareMethod(differences, oldClass.name, oldMethods.get(key), newMethods.get(key)));
+                    differences.add(new RenameMethodDifference(oldClass.name, oldMethod.name, newMethod.name, oldMethod.desc));
+                    compareMethod(differences, oldClass.name, oldMethod, newMethod, bodyHash);
+                });
+            }
+
+            for (MethodNode method : removedMethods) { // Removed methods
+                RemoveMethodDifference difference = new RemoveMethodDifference(oldClass.name, method.name, method.desc);
+
+                differences.add(difference);
+
+                if (moveCandidates != null) {
+                    moveCandidates.removedMethods.add(new MovableMethod(oldClass.name, method, bodyHash.apply(method), difference));
+                }
+            }
+            for (MethodNode method : addedMethods) { // Added methods
+                AddMethodDifference difference = new AddMethodDifference(oldClass.name, method);
+
+                differences.add(difference);
+
+                if (moveCandidates != null) {
+                    moveCandidates.addedMethods.add(new MovableMethod(oldClass.name, method, bodyHash.apply(method), difference));
+                }
+            }
+
+            oldMethods.keySet().stream().filter(newMethods::containsKey).forEach(key -> compareMethod(differences, oldClass.name, oldMethods.get(key), newMethods.get(key), bodyHash));
         }
 
         //</editor-fold>
@@ -151,96 +609,254 @@ public class ASMDelta {
 
     }
 
-    private static void compareMethod(List<AbstractDifference> differences, String className, MethodNode oldMethod, MethodNode newMethod) {
+    private static void compareMethod(List<AbstractDifference> differences, String className, MethodNode oldMethod, MethodNode newMethod, Function<MethodNode, MethodBodyHash> bodyHash) {
+        compareMethod(differences, className, oldMethod, newMethod, bodyHash.apply(oldMethod).equals(bodyHash.apply(newMethod)));
+    }
+
+    /**
+     * @param sameBody Whether both methods have the same instructions and try-catch blocks
+     */
+    private static void compareMethod(List<AbstractDifference> differences, String className, MethodNode oldMethod, MethodNode newMethod, boolean sameBody) {
         if (oldMethod.access != newMethod.access) {
-            differences.add(new MethodAccessDifference(className, oldMethod.name, oldMethod.desc, oldMethod.access, newMethod.access));
+            differences.add(new MethodAccessDifference(className, newMethod.name, newMethod.desc, oldMethod.access, newMethod.access));
         }
         if (!Objects.equals(oldMethod.signature, newMethod.signature)) { // FieldNode.signature might be null
-            differences.add(new MethodSignatureDifference(className, oldMethod.name, oldMethod.desc, newMethod.signature));
+            differences.add(new MethodSignatureDifference(className, newMethod.name, newMethod.desc, newMethod.signature));
         }
         if (!(oldMethod.exceptions == null ? Collections.emptyList() : oldMethod.exceptions).equals(newMethod.exceptions == null ? Collections.emptyList() : newMethod.exceptions)) {
-            differences.add(new MethodExceptionDifference(className, oldMethod.name, oldMethod.desc, newMethod.exceptions));
+            differences.add(new MethodExceptionDifference(className, newMethod.name, newMethod.desc, newMethod.exceptions));
         }
         if (oldMethod.annotationDefault != newMethod.annotationDefault) {
-            differences.add(new MethodAnnotationDefaultDifference(className, oldMethod.name, oldMethod.desc, newMethod.annotationDefault));
+            differences.add(new MethodAnnotationDefaultDifference(className, newMethod.name, newMethod.desc, newMethod.annotationDefault));
         }
         if (oldMethod.maxLocals != newMethod.maxLocals || oldMethod.maxStack != newMethod.maxStack) {
-            differences.add(new MethodMaxsDifference(className, oldMethod.name, oldMethod.desc, newMethod.maxStack, newMethod.maxLocals));
+            differences.add(new MethodMaxsDifference(className, newMethod.name, newMethod.desc, newMethod.maxStack, newMethod.maxLocals));
         }
-        if (!InstructionComparator.isSame(oldMethod.instructions, newMethod.instructions, oldMethod.tryCatchBlocks, newMethod.tryCatchBlocks)) {
-            differences.add(new MethodInstructionDifference(className, oldMethod.name, oldMethod.desc, newMethod));
+        if (!sameBody) {
+            byte[] script = InstructionEditScript.create(oldMethod, newMethod);
+
+            if (script != null) {
+                differences.add(new MethodInstructionEditDifference(className, newMethod.name, newMethod.desc, script));
+            } else {
+                differences.add(new MethodInstructionDifference(className, newMethod.name, newMethod.desc, newMethod));
+            }
         }
     }
 
     private static void compareField(List<AbstractDifference> differences, String className, FieldNode oldField, FieldNode newField) {
         if (oldField.access != newField.access) {
-            differences.add(new FieldAccessDifference(className, oldField.name, oldField.access, newField.access));
+            differences.add(new FieldAccessDifference(className, newField.name, oldField.access, newField.access));
         }
         if (!oldField.desc.equals(newField.desc)) {
-            differences.add(new FieldDescriptionDifference(className, oldField.name, newField.desc));
+            differences.add(new FieldDescriptionDifference(className, newField.name, newField.desc));
         }
         if (!Objects.equals(oldField.signature, newField.signature)) { // FieldNode.signature might be null
-            differences.add(new FieldSignatureDifference(className, oldField.name, newField.signature));
+            differences.add(new FieldSignatureDifference(className, newField.name, newField.signature));
         }
         if (!Objects.equals(oldField.value, newField.value)) {
-            differences.add(new FieldValueDifference(className, oldField.name, newField.value));
+            differences.add(new FieldValueDifference(className, newField.name, newField.value));
         }
         // TODO Implement annotation stuff
     }
 
-    public static HashMap<String, ClassNode> loadJar(int threadCount, List<byte[]> bytes1) {
-        LinkedList<byte[]> byteList = new LinkedList<>(bytes1);
+    /**
+     * Parses the given entries, each chunk inflates into its own {@link MappedZipFile.ReadBuffer} and passes it
+     * directly to the {@link ClassReader}, so no per-entry <code>byte[]</code> is allocated.
+     */
+    public static HashMap<String, ClassNode> loadEntries(TaskExecutor executor, List<MappedZipFile.Entry> entries) throws IOException, InterruptedException {
         HashMap<String, ClassNode> loaded = new HashMap<>();
 
-        ScheduledRunnable runnable = () -> {
-            Map<String, ClassNode> map = new HashMap<>();
-
-            while (true) {
-                byte[] bytes;
+        try (MappedZipFile.ReadBufferPool readBuffers = new MappedZipFile.ReadBufferPool()) {
+            executor.forEachChunk(entries, executor.chunkSize(entries.size()), chunk -> {
+                Map<String, ClassNode> map = new HashMap<>();
+                MappedZipFile.ReadBuffer readBuffer = readBuffers.borrow();
+
+                try {
+                    for (MappedZipFile.Entry entry : chunk) {
+                        ClassNode node = parseClass(classReader(entry, readBuffer));
+                        map.put(node.name, node);
+                    }
+                } finally {
+                    readBuffers.release(readBuffer);
+                }
 
-                synchronized (byteList) {
-                    bytes = byteList.poll();
+                synchronized (loaded) {
+                    loaded.putAll(map);
                 }
+            });
+        }
 
-                if (bytes == null) break;
+        return loaded;
+    }
 
-                ClassReader reader = new ClassReader(bytes);
-                ClassNode node = new ClassNode();
-//                reader.accept(node, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
-                reader.accept(node, ClassReader.SKIP_DEBUG);
+    public static HashMap<String, ClassNode> loadJar(int threadCount, List<byte[]> bytes1) {
+        try (TaskExecutor executor = new TaskExecutor(threadCount)) {
+            return loadJar(executor, bytes1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Loading the classes was interrupted");
+        }
+    }
+
+    public static HashMap<String, ClassNode> loadJar(TaskExecutor executor, List<byte[]> bytes1) throws InterruptedException {
+        HashMap<String, ClassNode> loaded = new HashMap<>();
+
+        executor.forEachChunk(bytes1, executor.chunkSize(bytes1.size()), chunk -> {
+            Map<String, ClassNode> map = new HashMap<>();
+
+            for (byte[] bytes : chunk) {
+                ClassNode node = parseClass(new ClassReader(bytes));
                 map.put(node.name, node);
             }
 
             synchronized (loaded) {
                 loaded.putAll(map);
             }
+        });
 
-            return true;
-        };
+        return loaded;
+    }
 
-        Scheduler scheduler = new Scheduler(runnable);
+    /**
+     * @return A reader for the entry's content, which is only valid until <code>readBuffer</code> is used again
+     */
+    private static ClassReader classReader(MappedZipFile.Entry entry, MappedZipFile.ReadBuffer readBuffer) throws IOException {
+        ByteBuffer content = entry.getHeapContent(readBuffer);
 
-        scheduler.run(threadCount);
-        scheduler.waitFor();
-        return loaded;
+        return new ClassReader(content.array(), content.arrayOffset() + content.position(), content.remaining());
+    }
+
+    /**
+     * Parses an entry like the classes differences are calculated from
+     */
+    static ClassNode loadEntry(MappedZipFile.Entry entry, MappedZipFile.ReadBuffer readBuffer) throws IOException {
+        return parseClass(classReader(entry, readBuffer));
+    }
+
+    /**
+     * Parses a class file like the classes differences are calculated from, patches only fit classes parsed this way
+     */
+    public static ClassNode parseClass(byte[] classFile) {
+        return parseClass(new ClassReader(classFile));
+    }
+
+    private static ClassNode parseClass(ClassReader reader) {
+        ClassNode node = new ClassNode();
+//                reader.accept(node, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        reader.accept(node, ClassReader.SKIP_DEBUG);
+        return node;
+    }
+
+    /**
+     * Checks if two entries have the same uncompressed content. The sizes and CRCs from the central directory reject
+     * almost all changed entries and identical compressed data accepts almost all unchanged ones, so entries are
+     * only inflated if they were compressed differently.
+     */
+    private static boolean isSameContent(MappedZipFile.Entry a, MappedZipFile.Entry b, MappedZipFile.ReadBuffer bufferA, MappedZipFile.ReadBuffer bufferB) throws IOException {
+        if (a.getSize() != b.getSize() || a.getCrc() != b.getCrc()) {
+            return false;
+        }
+        if (a.getMethod() == b.getMethod() && a.getRawData().equals(b.getRawData())) {
+            return true;
+        }
+
+        return a.getContent(bufferA).equals(b.getContent(bufferB));
     }
 
     public static List<byte[]> loadClasspathFile(File file) throws IOException {
-        ZipFile zipIn = new ZipFile(file);
-        Enumeration<? extends ZipEntry> entries = zipIn.entries();
-        boolean isJmod = file.getName().endsWith(".jmod");
+        try (MappedZipFile zipFile = new MappedZipFile(file); MappedZipFile.ReadBuffer readBuffer = new MappedZipFile.ReadBuffer()) {
+            List<byte[]> byteList = new ArrayList<>();
+
+            for (MappedZipFile.Entry entry : classEntries(zipFile).values()) {
+                byteList.add(entry.readAllBytes(readBuffer));
+            }
+
+            return byteList;
+        }
+    }
+
+    /**
+     * Differences are keyed by the class name, so the versioned classes of a multi-release jar can't be told apart from
+     * the classes they replace. They are left out and copied unchanged when a patch is applied.
+     *
+     * @return The class entries of the jar/jmod, keyed by their name
+     */
+    public static Map<String, MappedZipFile.Entry> classEntries(MappedZipFile zipFile) {
+        boolean isJmod = !classEntryPrefix(zipFile).isEmpty();
 
-        List<byte[]> byteList = new ArrayList<>(zipIn.size());
+        Map<String, MappedZipFile.Entry> entryMap = new LinkedHashMap<>();
 
-        while (entries.hasMoreElements()) {
-            ZipEntry ent = entries.nextElement();
-            if (ent.getName().endsWith(".class") && (!isJmod || !ent.getName().endsWith("module-info.class") && ent.getName().startsWith("classes/"))) {
-                byteList.add(zipIn.getInputStream(ent).readAllBytes());
+        for (MappedZipFile.Entry ent : zipFile.getEntries()) {
+            if (ent.getName().endsWith(".class") && !ent.getName().startsWith(VERSIONS_DIRECTORY) && (!isJmod || !ent.getName().endsWith("module-info.class") && ent.getName().startsWith("classes/"))) {
+                entryMap.put(ent.getName(), ent);
             }
         }
-        zipIn.close();
 
-        return byteList;
+        return entryMap;
+    }
+
+    /**
+     * @return The directory the classes of the jar/jmod are stored in, {@code classes/} for jmods
+     */
+    public static String classEntryPrefix(MappedZipFile zipFile) {
+        return zipFile.getFile().getName().endsWith(".jmod") ? "classes/" : "";
+    }
+
+    /**
+     * The changed classes of both jars, filled concurrently by the comparing tasks
+     */
+    private static class RenameCandidates {
+        private final Queue<ClassNode> originalClasses = new ConcurrentLinkedQueue<>();
+        private final Queue<ClassNode> newClasses = new ConcurrentLinkedQueue<>();
+        /**
+         * The entries of the new classes by class name, added classes are written from them
+         */
+        private final Map<String, MappedZipFile.Entry> newEntries = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * The methods that were removed from or added to a class while rename detection is enabled, filled concurrently
+     * by the comparing tasks
+     */
+    private static class MoveCandidates {
+        private final Queue<MovableMethod> removedMethods = new ConcurrentLinkedQueue<>();
+        private final Queue<MovableMethod> addedMethods = new ConcurrentLinkedQueue<>();
+    }
+
+    private static class MovableMethod {
+        private final String className;
+        private final MethodNode method;
+        /**
+         * The {@link RemoveMethodDifference} or {@link AddMethodDifference} which is replaced if the method was moved
+         */
+        private final AbstractDifference difference;
+        /**
+         * Calculated once by the comparing task, moved methods are looked up by it
+         */
+        private final MethodBodyHash bodyHash;
+
+        private MovableMethod(String className, MethodNode method, MethodBodyHash bodyHash, AbstractDifference difference) {
+            this.className = className;
+            this.method = method;
+            this.bodyHash = bodyHash;
+            this.difference = difference;
+        }
+    }
+
+    private static class ClassPair {
+        /**
+         * <code>null</code> if the class was added
+         */
+        private final MappedZipFile.Entry originalEntry;
+        /**
+         * <code>null</code> if the class was removed
+         */
+        private final MappedZipFile.Entry newEntry;
+
+        private ClassPair(MappedZipFile.Entry originalEntry, MappedZipFile.Entry newEntry) {
+            this.originalEntry = originalEntry;
+            this.newEntry = newEntry;
+        }
     }
 
 }
@@ -11,17 +11,44 @@
 package net.superblaubeere27.asmdelta;
 
 import net.superblaubeere27.asmdelta.difference.AbstractDifference;
-import net.superblaubeere27.asmdelta.utils.Utils;
+import net.superblaubeere27.asmdelta.difference.CompiledPatch;
+import net.superblaubeere27.asmdelta.difference.VerificationException;
+import net.superblaubeere27.asmdelta.utils.TaskExecutor;
+import net.superblaubeere27.asmdelta.utils.binary.BinaryPatchFormat;
+import net.superblaubeere27.asmdelta.utils.binary.IndexedPatch;
+import net.superblaubeere27.asmdelta.utils.binary.PatchDictionary;
 
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 public class ASMDeltaPatch {
+    /**
+     * GZIP'd JSON
+     */
+    public static final int JSON_VERSION = 1;
+    /**
+     * @see BinaryPatchFormat
+     */
+    public static final int BINARY_VERSION = 2;
+    /**
+     * The binary format with an index for random access by class
+     *
+     * @see net.superblaubeere27.asmdelta.utils.binary.IndexedPatch
+     */
+    public static final int INDEXED_VERSION = 3;
+    /**
+     * The indexed format compressed against the original classes, it can only be read with them
+     *
+     * @see net.superblaubeere27.asmdelta.utils.binary.IndexedPatch#open(java.io.File, PatchDictionary)
+     */
+    public static final int DICTIONARY_VERSION = 4;
+
     private String patchName;
     private int asmDeltaVersion;
     private List<AbstractDifference> differenceList;
@@ -32,9 +59,36 @@ public class ASMDeltaPatch {
         this.differenceList = differenceList;
     }
 
+    /**
+     * Reads a patch in either format
+     *
+     * @see PatchReader
+     */
     public static ASMDeltaPatch read(InputStream inputStream) throws IOException {
-        try (var gz = new GZIPInputStream(inputStream)) {
-            return Utils.GSON.fromJson(new String(gz.readAllBytes(), StandardCharsets.UTF_8), ASMDeltaPatch.class);
+        try (PatchReader reader = PatchReader.open(inputStream)) {
+            List<AbstractDifference> differences = new ArrayList<>();
+
+            reader.accept(differences::add);
+
+            return new ASMDeltaPatch(reader.getPatchName(), reader.getAsmDeltaVersion(), differences);
+        }
+    }
+
+    /**
+     * Reads a patch in any format
+     *
+     * @param dictionary The original classes, only needed for {@link #DICTIONARY_VERSION}. May be <code>null</code>.
+     */
+    public static ASMDeltaPatch read(File file, PatchDictionary dictionary) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file))) {
+            if (dictionary == null || BinaryPatchFormat.peekVersion(inputStream) != DICTIONARY_VERSION) {
+                return read(inputStream);
+            }
+        }
+
+        // The blocks can only be decompressed with the classes listed in the index at the end of the patch
+        try (IndexedPatch patch = IndexedPatch.open(file, dictionary)) {
+            return new ASMDeltaPatch(patch.getPatchName(), DICTIONARY_VERSION, patch.getDifferences());
         }
     }
 
@@ -50,9 +104,41 @@ public class ASMDeltaPatch {
         return differenceList;
     }
 
+    /**
+     * Prepares the differences for being applied, the compiled patch can be applied any number of times. Later changes
+     * to {@link #getDifferenceList()} don't affect it.
+     *
+     * @throws VerificationException If the differences conflict
+     */
+    public CompiledPatch compile() throws VerificationException {
+        return CompiledPatch.compile(differenceList);
+    }
+
+    /**
+     * Writes the patch in the format selected by {@link #getAsmDeltaVersion()}
+     *
+     * @see PatchWriter
+     */
     public void write(OutputStream outputStream) throws IOException {
-        try (var gz = new GZIPOutputStream(outputStream)) {
-            gz.write(Utils.GSON.toJson(this).getBytes(StandardCharsets.UTF_8));
+        write(outputStream, null);
+    }
+
+    /**
+     * @param dictionary The original classes, only needed for {@link #DICTIONARY_VERSION}
+     */
+    public void write(OutputStream outputStream, PatchDictionary dictionary) throws IOException {
+        write(outputStream, dictionary, null);
+    }
+
+    /**
+     * @param executor Encodes and compresses the patch in parallel, may be <code>null</code>
+     * @see PatchWriter#create(OutputStream, String, int, PatchDictionary, TaskExecutor)
+     */
+    public void write(OutputStream outputStream, PatchDictionary dictionary, TaskExecutor executor) throws IOException {
+        try (PatchWriter writer = PatchWriter.create(outputStream, patchName, asmDeltaVersion, dictionary, executor)) {
+            for (AbstractDifference difference : differenceList) {
+                writer.visitDifference(difference);
+            }
         }
     }
 }
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta;
+
+/**
+ * Optional analyses of {@link ASMDelta#calculateDifference(net.superblaubeere27.asmdelta.utils.TaskExecutor, java.io.File, java.io.File, DeltaOptions)}
+ */
+public class DeltaOptions {
+    private boolean detectRenames;
+
+    public boolean isDetectRenames() {
+        return detectRenames;
+    }
+
+    /**
+     * Pairs up removed and added classes that are similar enough to be the same class under another name (e.g. after
+     * re-obfuscation) and patches them with a rename and a delta instead of the whole new class. Fields and methods
+     * are renamed the same way, methods which moved to another class with an unchanged body are moved there.
+     */
+    public DeltaOptions setDetectRenames(boolean detectRenames) {
+        this.detectRenames = detectRenames;
+        return this;
+    }
+}
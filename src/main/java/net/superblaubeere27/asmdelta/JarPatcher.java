@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta;
+
+import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.ClassPool;
+import net.superblaubeere27.asmdelta.difference.CompiledPatch;
+import net.superblaubeere27.asmdelta.difference.VerificationException;
+import net.superblaubeere27.asmdelta.difference.clazz.AddClassDifference;
+import net.superblaubeere27.asmdelta.utils.ClassFiles;
+import net.superblaubeere27.asmdelta.utils.MappedZipFile;
+import net.superblaubeere27.asmdelta.utils.TaskExecutor;
+import net.superblaubeere27.asmdelta.utils.ZipWriter;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Applies a patch to a jar without loading the whole jar. Only the classes the patch touches are parsed, patched and
+ * written again, every other entry is copied as it is compressed in the original jar, so patching takes time
+ * proportional to the patch instead of the jar.
+ * <p>
+ * The touched classes are parsed without debug information like the classes a patch is calculated from, so the
+ * patched classes lose it. Classes that are only added are written as they are stored in the patch. Patched classes
+ * stay where they were in the jar, added and renamed classes are appended in the order of their names.
+ * <p>
+ * A jmod is patched into a jmod, its classes are looked up and added in its <code>classes/</code> directory.
+ */
+public class JarPatcher {
+    private static final String CLASS_SUFFIX = ".class";
+    /**
+     * Precedes the zip data of a jmod ("JM", major version 1, minor version 0)
+     */
+    private static final byte[] JMOD_HEADER = {'J', 'M', 1, 0};
+
+    /**
+     * @param differences The differences in the order of the patch
+     * @return The number of classes that were written from the patch, the rest of the jar was copied
+     * @throws VerificationException If the patch doesn't fit the jar
+     */
+    public static int patch(File originalJar, List<AbstractDifference> differences, File outputJar) throws IOException, VerificationException {
+        return patch(originalJar, differences, outputJar, null);
+    }
+
+    /**
+     * @param differences The differences in the order of the patch
+     * @param executor    The executor to patch the classes on, <code>null</code> to patch them on the calling thread
+     * @return The number of classes that were written from the patch, the rest of the jar was copied
+     * @throws VerificationException If the patch doesn't fit the jar
+     */
+    public static int patch(File originalJar, List<AbstractDifference> differences, File outputJar, TaskExecutor executor) throws IOException, VerificationException {
+        return patch(originalJar, CompiledPatch.compile(differences), outputJar, executor);
+    }
+
+    /**
+     * @param patch    The patch, it can be used for further jars afterwards
+     * @param executor The executor to patch the classes on, <code>null</code> to patch them on the calling thread
+     * @return The number of classes that were written from the patch, the rest of the jar was copied
+     * @throws VerificationException If the patch doesn't fit the jar
+     * @see CompiledPatch#apply(ClassPool, Predicate, TaskExecutor)
+     */
+    public static int patch(File originalJar, CompiledPatch patch, File outputJar, TaskExecutor executor) throws IOException, VerificationException {
+        List<AbstractDifference> differences = patch.getDifferences();
+        Map<String, Integer> differenceCounts = new HashMap<>();
+
+        for (AbstractDifference difference : differences) {
+            differenceCounts.merge(difference.getClassName(), 1, Integer::sum);
+
+            for (String className : difference.getRelatedClassNames()) {
+                differenceCounts.merge(className, 1, Integer::sum);
+            }
+        }
+
+        try (MappedZipFile jar = new MappedZipFile(originalJar)) {
+            // Keyed by class name, the same entries a patch is calculated from
+            String prefix = ASMDelta.classEntryPrefix(jar);
+            Map<String, MappedZipFile.Entry> classEntries = new HashMap<>();
+
+            for (MappedZipFile.Entry entry : ASMDelta.classEntries(jar).values()) {
+                String name = entry.getName();
+
+                classEntries.put(name.substring(prefix.length(), name.length() - CLASS_SUFFIX.length()), entry);
+            }
+
+            ClassPool classes = new ClassPool();
+
+            try (MappedZipFile.ReadBuffer readBuffer = new MappedZipFile.ReadBuffer()) {
+                for (String className : differenceCounts.keySet()) {
+                    MappedZipFile.Entry entry = classEntries.get(className);
+
+                    if (entry != null) {
+                        classes.put(className, ASMDelta.loadEntry(entry, readBuffer));
+                    }
+                }
+            }
+
+            Set<String> loadedClasses = new HashSet<>(classes.getClassNames());
+            Map<String, AddClassDifference> addedClasses = new HashMap<>();
+
+            for (AbstractDifference difference : differences) {
+                String className = difference.getClassName();
+
+                // Added classes that aren't patched any further don't have to be parsed
+                if (difference instanceof AddClassDifference && differenceCounts.get(className) == 1 && !classEntries.containsKey(className)) {
+                    addedClasses.put(className, (AddClassDifference) difference);
+                }
+            }
+
+            try {
+                patch.apply(classes, difference -> addedClasses.get(difference.getClassName()) != difference, executor);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Patching the classes was interrupted");
+            }
+
+            int written = 0;
+
+            try (ZipWriter zipWriter = new ZipWriter(new FileOutputStream(outputJar))) {
+                if (!prefix.isEmpty()) {
+                    zipWriter.writePreamble(JMOD_HEADER);
+                }
+
+                for (MappedZipFile.Entry entry : jar.getEntries()) {
+                    String name = entry.getName();
+                    String className = name.startsWith(prefix) && name.endsWith(CLASS_SUFFIX) ? name.substring(prefix.length(), name.length() - CLASS_SUFFIX.length()) : null;
+
+                    if (className == null || classEntries.get(className) != entry || !loadedClasses.contains(className)) {
+                        zipWriter.copyEntry(entry);
+                        continue;
+                    }
+
+                    ClassNode classNode = classes.get(className);
+
+                    // Removed and renamed classes are dropped
+                    if (classNode != null) {
+                        zipWriter.writeEntry(name, ClassFiles.toBytes(classNode), entry.getDosTime());
+                        written++;
+                    }
+                }
+
+                Map<String, byte[]> newClasses = new TreeMap<>();
+
+                for (String className : classes.getClassNames()) {
+                    if (!loadedClasses.contains(className)) {
+                        newClasses.put(className, ClassFiles.toBytes(classes.get(className)));
+                    }
+                }
+
+                addedClasses.forEach((className, difference) -> newClasses.put(className, difference.getNewBytes()));
+
+                int now = ZipWriter.dosTime(LocalDateTime.now());
+
+                for (Map.Entry<String, byte[]> newClass : newClasses.entrySet()) {
+                    zipWriter.writeEntry(prefix + newClass.getKey() + CLASS_SUFFIX, newClass.getValue(), now);
+                    written++;
+                }
+            } catch (IOException | RuntimeException e) {
+                outputJar.delete(); // Don't leave a truncated jar behind
+
+                throw e;
+            }
+
+            return written;
+        }
+    }
+}
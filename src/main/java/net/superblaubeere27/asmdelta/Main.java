@@ -14,8 +14,11 @@ import joptsimple.OptionException;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.VerificationException;
 import net.superblaubeere27.asmdelta.difference.clazz.AddClassDifference;
-import org.objectweb.asm.ClassWriter;
+import net.superblaubeere27.asmdelta.utils.MappedZipFile;
+import net.superblaubeere27.asmdelta.utils.TaskExecutor;
+import net.superblaubeere27.asmdelta.utils.binary.PatchDictionary;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -33,15 +36,26 @@ public class Main {
         OptionParser parser = new OptionParser(true);
 
         var jar1Option = parser.accepts("jar1", "The original file").withRequiredArg().ofType(File.class).required();
-        var jar2Option = parser.accepts("jar2", "The new file").withRequiredArg().ofType(File.class).required();
+        var applyPatch = parser.accepts("apply", "Applies the given patch to jar1 instead of creating one, only the classes it touches are rewritten").withRequiredArg().ofType(File.class);
+        var jar2Option = parser.accepts("jar2", "The new file").requiredUnless(applyPatch).withRequiredArg().ofType(File.class);
 
-        var patchFile = parser.accepts("o", "The generated patch location").withRequiredArg().ofType(File.class).required();
+        var patchFile = parser.accepts("o", "The generated patch location (the patched jar with --apply)").withRequiredArg().ofType(File.class).required();
 
         var forJavaAgent = parser.accepts("forAgent", "Creates a patch for a java agent & dumps the additional classes needed at runtime.").withOptionalArg();
         var additionalClasses = parser.accepts("added-classes", "Where to output additional classes").requiredIf(forJavaAgent).withRequiredArg().ofType(File.class);
 
         var patchName = parser.accepts("name", "The patch name").withOptionalArg().defaultsTo("N/A").ofType(String.class);
 
+        var detectRenames = parser.accepts("detect-renames", "Patches classes and members that were renamed or moved (e.g. by re-obfuscation) with a rename and a delta instead of removing and adding them");
+
+        var json = parser.accepts("json", "Writes the patch as GZIP'd JSON instead of the binary format");
+
+        var indexed = parser.accepts("indexed", "Adds an index to the binary patch, so the differences of a class can be loaded on their own (e.g. by a java agent)");
+
+        var dictionary = parser.accepts("dictionary", "Compresses the indexed patch against the classes of jar1, which makes it smaller but requires jar1 to read it (implies --indexed)");
+
+        var virtualThreads = parser.accepts("virtual-threads", "Uses virtual threads instead of a work-stealing pool (Java 21+)");
+
         var help = parser.accepts("help", "Prints a help page").forHelp();
         var version = parser.accepts("version", "Prints the version on sysout").forHelp();
 
@@ -71,98 +85,122 @@ public class Main {
             System.err.println("Jar 1 doesn't exist");
             return;
         }
-        if (jar2 == null || !jar2.exists()) {
-            System.err.println("Jar 2 doesn't exist");
+
+        var executorMode = parse.has(virtualThreads) ? TaskExecutor.Mode.VIRTUAL_THREADS : TaskExecutor.Mode.WORK_STEALING;
+
+        if (!executorMode.isSupported()) {
+            System.err.println("Virtual threads require Java 21 or newer");
             return;
         }
 
-        System.out.println("Calculating delta...");
+        if (parse.has(applyPatch)) {
+            File patchInput = parse.valueOf(applyPatch);
 
-        var l = System.currentTimeMillis();
+            if (!patchInput.exists()) {
+                System.err.println("The patch doesn't exist");
+                return;
+            }
 
-        List<AbstractDifference> differences = ASMDelta.calculateDifference(Runtime.getRuntime().availableProcessors(),
-                jar1,
-                jar2);
+            var l = System.currentTimeMillis();
+            ASMDeltaPatch patch;
 
-        System.out.println("Finished in " + (System.currentTimeMillis() - l) + "ms");
+            // Dictionary patches are read with the classes of jar1
+            try (MappedZipFile originalJar = new MappedZipFile(jar1); MappedZipFile.ReadBufferPool readBuffers = new MappedZipFile.ReadBufferPool()) {
+                patch = ASMDeltaPatch.read(patchInput, PatchDictionary.of(originalJar, readBuffers));
+            }
 
-        if (parse.has(forJavaAgent)) {
-            var illegalChanges = differences.stream().filter(e -> !e.canBeAppliedAtRuntime()).collect(Collectors.toSet());
+            int written;
 
-            if (illegalChanges.size() > 0) {
-                System.err.println("There are " + illegalChanges.size() + " illegal patches (for java agent):");
+            outputFile.getAbsoluteFile().getParentFile().mkdirs();
 
-                for (AbstractDifference abstractDifference : illegalChanges) {
-                    System.err.println(abstractDifference);
-                }
-            } else {
-                System.out.println("Patch is valid (for Java agent).");
+            try (TaskExecutor executor = new TaskExecutor(Runtime.getRuntime().availableProcessors(), executorMode)) {
+                written = JarPatcher.patch(jar1, patch.compile(), outputFile, executor);
+            } catch (VerificationException e) {
+                System.err.println("The patch doesn't fit " + jar1 + ": " + e.getMessage());
+                return;
             }
 
-            System.out.println("Writing added classes...");
+            System.out.println("Patched " + written + " classes in " + (System.currentTimeMillis() - l) + "ms");
+            System.out.println("Wrote patched jar to " + outputFile.getAbsolutePath());
+            return;
+        }
+        if (jar2 == null || !jar2.exists()) {
+            System.err.println("Jar 2 doesn't exist");
+            return;
+        }
+
+        try (TaskExecutor executor = new TaskExecutor(Runtime.getRuntime().availableProcessors(), executorMode)) {
+            System.out.println("Calculating delta...");
+
+            var l = System.currentTimeMillis();
 
-            var newClasses = differences.stream().filter(e -> e instanceof AddClassDifference).map(e -> (AddClassDifference) e).collect(Collectors.toSet());
+            List<AbstractDifference> differences;
 
-            try (ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(parse.valueOf(additionalClasses)))) {
-                for (AddClassDifference newClass : newClasses) {
-                    zipOutputStream.putNextEntry(new ZipEntry(newClass.getNewNode().name + ".class"));
+            differences = ASMDelta.calculateDifference(executor,
+                    jar1,
+                    jar2,
+                    new DeltaOptions().setDetectRenames(parse.has(detectRenames)));
 
-                    ClassWriter classWriter = new ClassWriter(0);
+            System.out.println("Finished in " + (System.currentTimeMillis() - l) + "ms");
 
-                    newClass.getNewNode().accept(classWriter);
+            if (parse.has(forJavaAgent)) {
+                var illegalChanges = differences.stream().filter(e -> !e.canBeAppliedAtRuntime()).collect(Collectors.toSet());
 
-                    zipOutputStream.write(classWriter.toByteArray());
+                if (illegalChanges.size() > 0) {
+                    System.err.println("There are " + illegalChanges.size() + " illegal patches (for java agent), they can only be applied while the class is loaded, not after attaching the agent:");
 
-                    zipOutputStream.closeEntry();
+                    for (AbstractDifference abstractDifference : illegalChanges) {
+                        System.err.println(abstractDifference);
+                    }
+                } else {
+                    System.out.println("Patch is valid (for Java agent).");
                 }
-            }
 
-            differences.removeAll(newClasses);
+                System.out.println("Writing added classes...");
 
-        }
+                var newClasses = differences.stream().filter(e -> e instanceof AddClassDifference).map(e -> (AddClassDifference) e).collect(Collectors.toSet());
 
-        ASMDeltaPatch patch = new ASMDeltaPatch(parse.valueOf(patchName), 1, differences);
+                try (ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(parse.valueOf(additionalClasses)))) {
+                    for (AddClassDifference newClass : newClasses) {
+                        zipOutputStream.putNextEntry(new ZipEntry(newClass.getClassName() + ".class"));
+                        zipOutputStream.write(newClass.getNewBytes());
 
-        outputFile.getParentFile().mkdirs();
+                        zipOutputStream.closeEntry();
+                    }
+                }
 
-        try (FileOutputStream outputStream = new FileOutputStream(outputFile)) {
-            patch.write(outputStream);
-        }
+                differences.removeAll(newClasses);
 
-        System.out.println("Wrote patch to " + outputFile.getAbsolutePath());
-
-//        HashMap<String, ClassNode> newClasses = ASMDelta.loadJar(16, ASMDelta.loadClasspathFile(new File("F:\\Projects\\vid\\mcp918\\jars\\versions\\1.8.8\\1.8.8.jar")));
-//
-//        File outputDir = new File("F:\\Projects\\vid\\mcp918\\reobf\\minecraft");
-
-//        differences.removeAll(differences.stream().filter(e -> !(e instanceof AddClassDifference || e instanceof MethodInstructionDifference && e.getClassName().equals("ave") && ((MethodInstructionDifference) e).getMethodName().equals("av"))).collect(Collectors.toSet()));
-
-//        for (AbstractDifference difference : differences) {
-//            difference.apply(newClasses);
-//        }
-//
-//        var collect = differences.stream().map(AbstractDifference::getClassName).filter(newClasses::containsKey).collect(Collectors.toSet());
-//
-//        for (String className : collect) {
-//            var classNode = newClasses.get(className);
-//            File outputFile = new File(outputDir, classNode.name + ".class");
-//
-//            outputFile.getParentFile().mkdirs();
-//
-//            try (FileOutputStream outputStream = new FileOutputStream(outputFile)) {
-//                ClassWriter classWriter = new ClassWriter(0);
-//
-//                classNode.accept(classWriter);
-//
-//                outputStream.write(classWriter.toByteArray());
-//            }
-//
-//            System.out.println("Writing " + className);
-//
-//
-//        }
+            }
 
+            int patchVersion;
 
+            if (parse.has(json)) {
+                patchVersion = ASMDeltaPatch.JSON_VERSION;
+            } else if (parse.has(dictionary)) {
+                patchVersion = ASMDeltaPatch.DICTIONARY_VERSION;
+            } else if (parse.has(indexed)) {
+                patchVersion = ASMDeltaPatch.INDEXED_VERSION;
+            } else {
+                patchVersion = ASMDeltaPatch.BINARY_VERSION;
+            }
+
+            ASMDeltaPatch patch = new ASMDeltaPatch(parse.valueOf(patchName), patchVersion, differences);
+
+            outputFile.getParentFile().mkdirs();
+
+            try (FileOutputStream outputStream = new FileOutputStream(outputFile)) {
+                if (patchVersion == ASMDeltaPatch.DICTIONARY_VERSION) {
+                    try (MappedZipFile originalJar = new MappedZipFile(jar1); MappedZipFile.ReadBufferPool readBuffers = new MappedZipFile.ReadBufferPool()) {
+                        patch.write(outputStream, PatchDictionary.of(originalJar, readBuffers), executor);
+                    }
+                } else {
+                    patch.write(outputStream, null, executor);
+                }
+            }
+
+            System.out.println("Wrote patch to " + outputFile.getAbsolutePath());
+        }
     }
 
 }
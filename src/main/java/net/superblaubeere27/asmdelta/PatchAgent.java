@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta;
+
+import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.CompiledPatch;
+import net.superblaubeere27.asmdelta.difference.DifferenceLookup;
+import net.superblaubeere27.asmdelta.difference.DifferenceRegistry;
+import net.superblaubeere27.asmdelta.difference.VerificationException;
+import net.superblaubeere27.asmdelta.difference.clazz.RemapClassDifference;
+import net.superblaubeere27.asmdelta.utils.ClassFiles;
+import net.superblaubeere27.asmdelta.utils.binary.IndexedPatch;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Java agent which patches the classes of an application while they are loaded:
+ * <code>java -javaagent:asm-delta.jar=&lt;patch&gt; ...</code>
+ * <p>
+ * Indexed patches ({@link ASMDeltaPatch#INDEXED_VERSION}) are only decoded for the classes that are actually loaded,
+ * other patches are read completely when the agent starts. Classes a patch adds aren't defined by the agent, they
+ * have to be on the class path (see <code>--forAgent --added-classes</code>).
+ * <p>
+ * <code>-javaagent</code> doesn't put the dependencies of the agent on the class path, use the agent jar which bundles
+ * them (<code>asm-delta-&lt;version&gt;-agent.jar</code>, built by <code>mvn package</code>).
+ * <p>
+ * The agent reads the JSON, binary and indexed formats. Dictionary patches ({@link ASMDeltaPatch#DICTIONARY_VERSION})
+ * can only be read with the original jar, which the agent doesn't have, so they are rejected.
+ *
+ * @see PatchTransformer
+ */
+public class PatchAgent {
+
+    public static void premain(String agentArgs, Instrumentation instrumentation) throws IOException, VerificationException {
+        instrumentation.addTransformer(new PatchTransformer(load(agentArgs)));
+    }
+
+    /**
+     * Attaches to a running application, patched classes which are already loaded are retransformed, so only
+     * differences which {@link AbstractDifference#canBeAppliedAtRuntime()} are allowed for them
+     */
+    public static void agentmain(String agentArgs, Instrumentation instrumentation) throws IOException, VerificationException, UnmodifiableClassException {
+        DifferenceLookup patch = load(agentArgs);
+
+        instrumentation.addTransformer(new PatchTransformer(patch), true);
+
+        List<Class<?>> loadedClasses = new ArrayList<>();
+
+        for (Class<?> loadedClass : instrumentation.getAllLoadedClasses()) {
+            if (patch.contains(loadedClass.getName().replace('.', '/')) && instrumentation.isModifiableClass(loadedClass)) {
+                loadedClasses.add(loadedClass);
+            }
+        }
+
+        if (!loadedClasses.isEmpty()) {
+            instrumentation.retransformClasses(loadedClasses.toArray(new Class<?>[0]));
+        }
+    }
+
+    private static DifferenceLookup load(String agentArgs) throws IOException, VerificationException {
+        if (agentArgs == null || agentArgs.isEmpty()) {
+            throw new IllegalArgumentException("No patch given, use -javaagent:asm-delta.jar=<patch>");
+        }
+
+        checkDependencies();
+
+        File patchFile = new File(agentArgs);
+        List<AbstractDifference> differences = new ArrayList<>();
+        boolean indexed;
+
+        try (PatchReader reader = PatchReader.open(new FileInputStream(patchFile))) {
+            indexed = reader.getAsmDeltaVersion() == ASMDeltaPatch.INDEXED_VERSION;
+
+            if (!indexed) {
+                reader.accept(differences::add);
+            }
+        } catch (IOException e) {
+            throw new IOException("Failed to read the patch " + patchFile + " (" + e.getMessage() + "), the agent reads JSON, binary and indexed patches", e);
+        }
+
+        // The indexed patch stays open as long as the application runs
+        return indexed ? IndexedPatch.open(patchFile) : CompiledPatch.compile(differences);
+    }
+
+    /**
+     * Runs the code the transformer needs once, so a missing dependency stops the agent right away. Indexed patches
+     * are only decoded by the transformer, where the JVM would ignore the error for every patched class.
+     */
+    private static void checkDependencies() {
+        try {
+            DifferenceRegistry.getTag(RemapClassDifference.class);
+            ClassFiles.toMethodNode(ClassFiles.methodToBytes(new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "check", "()V", null, null)));
+        } catch (IOException | LinkageError e) {
+            throw new IllegalStateException("The agent is missing its dependencies (" + e + "), use asm-delta-<version>-agent.jar which bundles them", e);
+        }
+    }
+}
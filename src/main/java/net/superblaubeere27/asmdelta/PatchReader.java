@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta;
+
+import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.utils.binary.BinaryPatchFormat;
+import net.superblaubeere27.asmdelta.utils.binary.BinaryPatchReader;
+import net.superblaubeere27.asmdelta.utils.json.JsonPatchReader;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a patch difference by difference, differences that were handed out aren't referenced by the reader anymore.
+ */
+public abstract class PatchReader implements Closeable {
+
+    /**
+     * Opens a patch in either format
+     */
+    public static PatchReader open(InputStream inputStream) throws IOException {
+        var in = new BufferedInputStream(inputStream);
+
+        if (BinaryPatchFormat.isBinaryPatch(in)) {
+            return new BinaryPatchReader(in);
+        }
+
+        return new JsonPatchReader(in);
+    }
+
+    /**
+     * @return The name of the patch, JSON patches might only know it after the last difference was read
+     */
+    public abstract String getPatchName();
+
+    public abstract int getAsmDeltaVersion();
+
+    /**
+     * @return The next difference, <code>null</code> if there are no differences left
+     */
+    public abstract AbstractDifference read() throws IOException;
+
+    /**
+     * Passes every remaining difference to the visitor
+     */
+    public void accept(PatchVisitor visitor) throws IOException {
+        AbstractDifference difference;
+
+        while ((difference = read()) != null) {
+            visitor.visitDifference(difference);
+        }
+
+        visitor.visitEnd();
+    }
+
+    /**
+     * @return An iterator over the remaining differences, it throws {@link UncheckedIOException}s
+     */
+    public Iterator<AbstractDifference> iterator() {
+        return new Iterator<>() {
+            private AbstractDifference next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = read();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+
+                return next != null;
+            }
+
+            @Override
+            public AbstractDifference next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                AbstractDifference difference = next;
+
+                next = null;
+
+                return difference;
+            }
+        };
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta;
+
+import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.ClassPool;
+import net.superblaubeere27.asmdelta.difference.DifferenceLookup;
+import net.superblaubeere27.asmdelta.difference.VerificationException;
+import net.superblaubeere27.asmdelta.difference.clazz.AddClassDifference;
+import net.superblaubeere27.asmdelta.difference.clazz.RemoveClassDifference;
+import net.superblaubeere27.asmdelta.utils.ClassFiles;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.IOException;
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Patches classes while they are loaded. Only the classes the patch has differences for are parsed, every other class
+ * is passed through after a single lookup.
+ * <p>
+ * A class is patched completely or not at all. Classes that are loaded for the first time can take every difference
+ * which only changes the class itself, classes that are retransformed only the ones that
+ * {@link AbstractDifference#canBeAppliedAtRuntime()}. Differences which need other classes (renamed classes, moved
+ * methods) can't be applied while a single class is loaded. Like {@link JarPatcher}, patched classes lose their debug
+ * information.
+ */
+public class PatchTransformer implements ClassFileTransformer {
+    private final DifferenceLookup patch;
+
+    public PatchTransformer(DifferenceLookup patch) {
+        this.patch = patch;
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        if (className == null || !patch.contains(className)) {
+            return null;
+        }
+
+        try {
+            return patch(className, classfileBuffer, classBeingRedefined != null);
+        } catch (IOException | VerificationException | RuntimeException | LinkageError e) {
+            // The JVM ignores exceptions thrown by transformers, the class is loaded as it is. Linkage errors (e.g. a
+            // missing dependency) would be ignored just as silently.
+            System.err.println("Failed to patch " + className + ": " + e);
+            return null;
+        }
+    }
+
+    private byte[] patch(String className, byte[] classFile, boolean redefined) throws IOException, VerificationException {
+        List<AbstractDifference> differences = new ArrayList<>();
+
+        for (AbstractDifference difference : patch.getDifferences(className)) {
+            // The class is loaded, so it was added from another jar. Loaded classes can't be removed.
+            if (difference instanceof AddClassDifference || difference instanceof RemoveClassDifference) {
+                continue;
+            }
+
+            if (redefined ? !difference.canBeAppliedAtRuntime() : !difference.getRelatedClassNames().isEmpty()) {
+                throw new VerificationException(difference + " can't be applied while the class is " + (redefined ? "redefined" : "loaded"));
+            }
+
+            differences.add(difference);
+        }
+
+        if (differences.isEmpty()) {
+            return null;
+        }
+
+        ClassPool classes = new ClassPool();
+
+        classes.put(className, ASMDelta.parseClass(classFile));
+        classes.apply(differences);
+
+        ClassNode classNode = classes.get(className);
+
+        if (classNode == null) {
+            throw new VerificationException("The patch doesn't leave a class named " + className);
+        }
+
+        return ClassFiles.toBytes(classNode);
+    }
+}
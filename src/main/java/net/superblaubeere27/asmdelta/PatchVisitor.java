@@ -8,13 +8,25 @@
  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
-package net.superblaubeere27.asmdelta.utils;
 
-public interface ScheduledRunnable {
+package net.superblaubeere27.asmdelta;
+
+import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+
+import java.io.IOException;
+
+/**
+ * Visits the differences of a patch one at a time.
+ *
+ * @see PatchReader#accept(PatchVisitor)
+ * @see PatchWriter
+ */
+public interface PatchVisitor {
+    void visitDifference(AbstractDifference difference) throws IOException;
 
     /**
-     * @return Returns true if the thread is ready to exit
+     * Called after the last difference
      */
-    boolean runTick();
-
+    default void visitEnd() throws IOException {
+    }
 }
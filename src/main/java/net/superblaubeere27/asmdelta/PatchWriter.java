@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta;
+
+import net.superblaubeere27.asmdelta.utils.TaskExecutor;
+import net.superblaubeere27.asmdelta.utils.binary.BinaryPatchWriter;
+import net.superblaubeere27.asmdelta.utils.binary.PatchDictionary;
+import net.superblaubeere27.asmdelta.utils.json.JsonPatchWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a patch difference by difference, only the difference that is written at the moment has to be encoded in
+ * memory. {@link #visitEnd()} finishes the patch, {@link #close()} also closes the stream.
+ */
+public abstract class PatchWriter implements PatchVisitor, Closeable {
+
+    /**
+     * @param asmDeltaVersion Selects the format, see {@link ASMDeltaPatch#JSON_VERSION} and
+     *                        {@link ASMDeltaPatch#BINARY_VERSION}
+     */
+    public static PatchWriter create(OutputStream outputStream, String patchName, int asmDeltaVersion) throws IOException {
+        return create(outputStream, patchName, asmDeltaVersion, null);
+    }
+
+    /**
+     * @param dictionary The original classes, only needed for {@link ASMDeltaPatch#DICTIONARY_VERSION}
+     */
+    public static PatchWriter create(OutputStream outputStream, String patchName, int asmDeltaVersion, PatchDictionary dictionary) throws IOException {
+        return create(outputStream, patchName, asmDeltaVersion, dictionary, null);
+    }
+
+    /**
+     * @param executor Encodes and compresses binary patches in parallel, may be <code>null</code>. The JSON format is
+     *                 always written on the calling thread.
+     */
+    public static PatchWriter create(OutputStream outputStream, String patchName, int asmDeltaVersion, PatchDictionary dictionary, TaskExecutor executor) throws IOException {
+        if (asmDeltaVersion >= ASMDeltaPatch.BINARY_VERSION) {
+            return new BinaryPatchWriter(outputStream, patchName, asmDeltaVersion, dictionary, executor);
+        }
+
+        return new JsonPatchWriter(outputStream, patchName, asmDeltaVersion);
+    }
+
+    /**
+     * Finishes the patch if {@link #visitEnd()} wasn't called yet and closes the stream
+     */
+    @Override
+    public abstract void close() throws IOException;
+}
@@ -10,18 +10,71 @@
 
 package net.superblaubeere27.asmdelta.difference;
 
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput;
 import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.objectweb.asm.tree.ClassNode;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 
 public abstract class AbstractDifference {
+    /**
+     * Replacing the references to renamed classes, after the classes were moved to their new names
+     */
+    protected static final int PHASE_REMAP_CLASSES = -2;
+    /**
+     * Renaming and moving members, after their classes were remapped
+     */
+    protected static final int PHASE_RENAME_MEMBERS = -1;
+
+    /**
+     * The canonical order of differences: by phase, then by class, then by member (class-level differences first),
+     * then by type.
+     * Differences are emitted in this order, which makes patches reproducible no matter how the work was scheduled.
+     */
+    public static final Comparator<AbstractDifference> ORDER = Comparator
+            .comparingInt(AbstractDifference::getPhase)
+            .thenComparing(AbstractDifference::getClassName)
+            .thenComparing(AbstractDifference::getMemberKey, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(difference -> difference.getClass().getName());
+
     public abstract void apply(HashMap<String, ClassNode> classes) throws VerificationException;
 
     public abstract boolean canBeAppliedAtRuntime();
 
     public abstract String getClassName();
 
+    /**
+     * Writes the fields of this difference into a binary record, they are read back by the reader registered in
+     * {@link DifferenceRegistry}
+     */
+    public abstract void write(DifferenceOutput out);
+
+    /**
+     * @return The member this difference targets (the name of a field or the name + descriptor of a method),
+     * <code>null</code> if it targets the class itself
+     */
+    public String getMemberKey() {
+        return null;
+    }
+
+    /**
+     * @return The classes besides {@link #getClassName()} which {@link #apply(HashMap)} reads or changes
+     */
+    public Collection<String> getRelatedClassNames() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Differences are applied in ascending order of their phase, almost all of them are in phase 0. Differences which
+     * change the identity of classes (like renames) have to run before the ones that rely on the new identity.
+     */
+    protected int getPhase() {
+        return 0;
+    }
+
 
     protected <T> T verifyNotNull(T value, String errorMessage) throws VerificationException {
         if (value == null) {
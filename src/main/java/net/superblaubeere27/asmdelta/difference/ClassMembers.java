@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.difference;
+
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The methods and fields of a class, looked up by name (and descriptor). Differences add, remove and rename members
+ * through this class, so an index of the members stays valid.
+ * <p>
+ * A {@link ClassPool} keeps one indexed instance per class, which looks members up in constant time. The index is
+ * built on the first lookup. Without a pool every lookup scans the members of the class.
+ * <p>
+ * Members with the same name (and descriptor) are invalid anyway, the index only knows the first one.
+ */
+public class ClassMembers {
+    private final ClassNode classNode;
+    private final boolean indexed;
+    /**
+     * The methods by name + descriptor, <code>null</code> until the first lookup
+     */
+    private Map<String, MethodNode> methodIndex;
+    /**
+     * The fields by name, <code>null</code> until the first lookup
+     */
+    private Map<String, FieldNode> fieldIndex;
+
+    ClassMembers(ClassNode classNode, boolean indexed) {
+        this.classNode = classNode;
+        this.indexed = indexed;
+    }
+
+    /**
+     * @return The members of the class, indexed if <code>classes</code> are the classes of a {@link ClassPool}
+     * @throws VerificationException If the class isn't in the class pool
+     */
+    public static ClassMembers of(HashMap<String, ClassNode> classes, String className) throws VerificationException {
+        ClassNode classNode = classes.get(className);
+
+        if (classNode == null) {
+            throw new VerificationException("Class " + className + " wasn't found");
+        }
+
+        return classes instanceof ClassPool.IndexedClasses ? ((ClassPool.IndexedClasses) classes).members(classNode) : new ClassMembers(classNode, false);
+    }
+
+    public ClassNode getClassNode() {
+        return classNode;
+    }
+
+    /**
+     * @return The method, <code>null</code> if the class has no such method
+     */
+    public MethodNode findMethod(String name, String desc) {
+        if (indexed) {
+            return methodIndex().get(name + desc);
+        }
+        if (classNode.methods == null) { // According to the documentation, methods might be null
+            return null;
+        }
+
+        for (MethodNode method : classNode.methods) {
+            if (method.name.equals(name) && method.desc.equals(desc)) {
+                return method;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @throws VerificationException If the class has no such method
+     */
+    public MethodNode getMethod(String name, String desc) throws VerificationException {
+        MethodNode method = findMethod(name, desc);
+
+        if (method == null) {
+            throw new VerificationException(classNode.name + "." + name + desc + " wasn't found");
+        }
+
+        return method;
+    }
+
+    /**
+     * @return The field, <code>null</code> if the class has no such field
+     */
+    public FieldNode findField(String name) {
+        if (indexed) {
+            return fieldIndex().get(name);
+        }
+        if (classNode.fields == null) { // According to the documentation, fields might be null
+            return null;
+        }
+
+        for (FieldNode field : classNode.fields) {
+            if (field.name.equals(name)) {
+                return field;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @throws VerificationException If the class has no such field
+     */
+    public FieldNode getField(String name) throws VerificationException {
+        FieldNode field = findField(name);
+
+        if (field == null) {
+            throw new VerificationException(classNode.name + "." + name + " wasn't found");
+        }
+
+        return field;
+    }
+
+    public void addMethod(MethodNode method) {
+        if (classNode.methods == null) {
+            classNode.methods = new ArrayList<>();
+        }
+
+        classNode.methods.add(method);
+
+        if (methodIndex != null) {
+            methodIndex.putIfAbsent(method.name + method.desc, method);
+        }
+    }
+
+    /**
+     * Removes every method with the name and descriptor
+     *
+     * @throws VerificationException If the class has no methods at all
+     */
+    public void removeMethods(String name, String desc) throws VerificationException {
+        if (classNode.methods == null) {
+            throw new VerificationException("Class has no methods to remove");
+        }
+
+        classNode.methods.removeIf(method -> method.name.equals(name) && method.desc.equals(desc));
+
+        if (methodIndex != null) {
+            methodIndex.remove(name + desc);
+        }
+    }
+
+    public void removeMethod(MethodNode method) {
+        if (classNode.methods != null && classNode.methods.remove(method) && methodIndex != null) {
+            methodIndex.remove(method.name + method.desc, method);
+        }
+    }
+
+    /**
+     * @throws VerificationException If the class already has a method with the new name and the same descriptor
+     */
+    public void renameMethod(MethodNode method, String newName) throws VerificationException {
+        if (findMethod(newName, method.desc) != null) {
+            throw new VerificationException(classNode.name + "." + newName + method.desc + " already exists");
+        }
+
+        if (methodIndex != null) {
+            methodIndex.remove(method.name + method.desc, method);
+            methodIndex.put(newName + method.desc, method);
+        }
+
+        method.name = newName;
+    }
+
+    public void addField(FieldNode field) {
+        if (classNode.fields == null) {
+            classNode.fields = new ArrayList<>();
+        }
+
+        classNode.fields.add(field);
+
+        if (fieldIndex != null) {
+            fieldIndex.putIfAbsent(field.name, field);
+        }
+    }
+
+    /**
+     * Removes every field with the name
+     *
+     * @throws VerificationException If the class has no fields at all
+     */
+    public void removeFields(String name) throws VerificationException {
+        if (classNode.fields == null) {
+            throw new VerificationException("Class has no fields to remove");
+        }
+
+        classNode.fields.removeIf(field -> field.name.equals(name));
+
+        if (fieldIndex != null) {
+            fieldIndex.remove(name);
+        }
+    }
+
+    /**
+     * @throws VerificationException If the class already has a field with the new name
+     */
+    public void renameField(FieldNode field, String newName) throws VerificationException {
+        if (findField(newName) != null) {
+            throw new VerificationException(classNode.name + "." + newName + " already exists");
+        }
+
+        if (fieldIndex != null) {
+            fieldIndex.remove(field.name, field);
+            fieldIndex.put(newName, field);
+        }
+
+        field.name = newName;
+    }
+
+    private Map<String, MethodNode> methodIndex() {
+        if (methodIndex == null) {
+            methodIndex = new HashMap<>();
+
+            if (classNode.methods != null) {
+                for (MethodNode method : classNode.methods) {
+                    methodIndex.putIfAbsent(method.name + method.desc, method);
+                }
+            }
+        }
+
+        return methodIndex;
+    }
+
+    private Map<String, FieldNode> fieldIndex() {
+        if (fieldIndex == null) {
+            fieldIndex = new HashMap<>();
+
+            if (classNode.fields != null) {
+                for (FieldNode field : classNode.fields) {
+                    fieldIndex.putIfAbsent(field.name, field);
+                }
+            }
+        }
+
+        return fieldIndex;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.difference;
+
+import net.superblaubeere27.asmdelta.utils.TaskExecutor;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A class pool which indexes the members of its classes, so the differences of a patch find their targets in constant
+ * time instead of scanning the members of the class. The index of a class is built once, when the first difference
+ * looks up one of its members, and reused by every following difference of the class.
+ * <p>
+ * The classes can only be replaced through {@link #put(String, ClassNode)} and changed by differences, while the pool is
+ * used members must only be added, removed and renamed through {@link ClassMembers}.
+ */
+public class ClassPool {
+    /**
+     * The map the differences are applied to
+     */
+    private final IndexedClasses classes = new IndexedClasses();
+
+    public ClassPool() {
+    }
+
+    public ClassPool(Map<String, ClassNode> classes) {
+        classes.forEach(this::put);
+    }
+
+    /**
+     * @return The class with the given name, <code>null</code> if the pool doesn't contain it
+     */
+    public ClassNode get(String className) {
+        return classes.get(className);
+    }
+
+    /**
+     * Adds a class or replaces the class with the same name
+     *
+     * @return The class that was replaced, <code>null</code> if there was none
+     */
+    public ClassNode put(String className, ClassNode classNode) {
+        ClassNode replaced = classes.put(className, classNode);
+
+        if (replaced != null && replaced != classNode) {
+            classes.members.remove(replaced);
+        }
+
+        return replaced;
+    }
+
+    /**
+     * @return The names of the classes in the pool, an unmodifiable view
+     */
+    public Set<String> getClassNames() {
+        return Collections.unmodifiableSet(classes.keySet());
+    }
+
+    /**
+     * Applies the differences in the given order
+     *
+     * @throws VerificationException If the differences conflict or a difference doesn't fit the classes
+     * @see CompiledPatch#apply(ClassPool)
+     */
+    public void apply(Collection<? extends AbstractDifference> differences) throws VerificationException {
+        CompiledPatch.compile(differences).apply(this);
+    }
+
+    /**
+     * Applies the differences in the given order, classes are patched in parallel
+     *
+     * @param executor The executor to patch the classes on, the differences are applied on the calling thread if
+     *                 <code>null</code>
+     * @throws VerificationException If the differences conflict or a difference doesn't fit the classes
+     * @throws InterruptedException  If the calling thread was interrupted while waiting for the classes
+     * @see CompiledPatch#apply(ClassPool, TaskExecutor)
+     */
+    public void apply(Collection<? extends AbstractDifference> differences, TaskExecutor executor) throws VerificationException, InterruptedException {
+        CompiledPatch.compile(differences).apply(this, executor);
+    }
+
+    /**
+     * Replaces the given classes by the classes of a pool which only contains (a subset of) them
+     */
+    void merge(Set<String> classNames, ClassPool other) {
+        for (String className : classNames) {
+            ClassNode classNode = classes.remove(className);
+
+            if (classNode != null) { // The other pool changed the class without this pool's index
+                classes.members.remove(classNode);
+            }
+        }
+
+        classes.putAll(other.classes);
+    }
+
+    static void applyInOrder(ClassPool pool, Collection<? extends AbstractDifference> differences) throws VerificationException {
+        for (AbstractDifference difference : differences) {
+            try {
+                difference.apply(pool.classes);
+            } catch (RuntimeException e) { // Class level differences don't always check whether their target exists
+                throw new VerificationException("Failed to apply " + difference, e);
+            }
+        }
+    }
+
+    /**
+     * The classes of a pool as the differences see them, {@link ClassMembers#of(HashMap, String)} finds the index of a
+     * class through it
+     */
+    static class IndexedClasses extends HashMap<String, ClassNode> {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The members by class node, a class that is replaced (e.g. remapped) gets a new index
+         */
+        private final transient Map<ClassNode, ClassMembers> members = new IdentityHashMap<>();
+
+        ClassMembers members(ClassNode classNode) {
+            return members.computeIfAbsent(classNode, node -> new ClassMembers(node, true));
+        }
+    }
+}
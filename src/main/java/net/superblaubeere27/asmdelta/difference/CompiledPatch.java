@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.difference;
+
+import net.superblaubeere27.asmdelta.difference.clazz.RemoveClassDifference;
+import net.superblaubeere27.asmdelta.difference.fields.RemoveFieldDifference;
+import net.superblaubeere27.asmdelta.difference.methods.RemoveMethodDifference;
+import net.superblaubeere27.asmdelta.utils.TaskExecutor;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * A patch prepared for being applied. Its differences are checked for conflicts and split into partitions of classes
+ * which can be patched independently once, when the patch is compiled.
+ * <p>
+ * Applying a patch doesn't change it. Every application gets its own copies of the nodes the differences carry (added
+ * classes, methods and fields, new method bodies), so one compiled patch can be applied to any number of class pools,
+ * also by several threads at the same time.
+ */
+public final class CompiledPatch implements DifferenceLookup {
+    private final List<AbstractDifference> differences;
+    private final List<Partition> partitions;
+    private final Map<String, List<AbstractDifference>> classDifferences;
+
+    private CompiledPatch(List<AbstractDifference> differences, List<Partition> partitions, Map<String, List<AbstractDifference>> classDifferences) {
+        this.differences = differences;
+        this.partitions = partitions;
+        this.classDifferences = classDifferences;
+    }
+
+    /**
+     * @param differences The differences in the order they are applied in
+     * @throws VerificationException If the differences conflict
+     * @see #checkConflicts(Collection)
+     */
+    public static CompiledPatch compile(Collection<? extends AbstractDifference> differences) throws VerificationException {
+        checkConflicts(differences);
+
+        Map<String, List<AbstractDifference>> classDifferences = new HashMap<>();
+
+        for (AbstractDifference difference : differences) {
+            classDifferences.computeIfAbsent(difference.getClassName(), className -> new ArrayList<>()).add(difference);
+        }
+
+        classDifferences.replaceAll((className, list) -> Collections.unmodifiableList(list));
+
+        return new CompiledPatch(Collections.unmodifiableList(new ArrayList<>(differences)), Collections.unmodifiableList(partition(differences)), Collections.unmodifiableMap(classDifferences));
+    }
+
+    /**
+     * @return The differences in the order they are applied in
+     */
+    public List<AbstractDifference> getDifferences() {
+        return differences;
+    }
+
+    @Override
+    public boolean contains(String className) {
+        return classDifferences.containsKey(className);
+    }
+
+    @Override
+    public List<AbstractDifference> getDifferences(String className) {
+        return classDifferences.getOrDefault(className, Collections.emptyList());
+    }
+
+    /**
+     * Applies the differences in order on the calling thread
+     *
+     * @throws VerificationException If a difference doesn't fit the classes
+     */
+    public void apply(ClassPool classes) throws VerificationException {
+        ClassPool.applyInOrder(classes, differences);
+    }
+
+    /**
+     * @see #apply(ClassPool, Predicate, TaskExecutor)
+     */
+    public void apply(ClassPool classes, TaskExecutor executor) throws VerificationException, InterruptedException {
+        apply(classes, difference -> true, executor);
+    }
+
+    /**
+     * Applies the selected differences with the same result as {@link #apply(ClassPool)}, but classes are patched in
+     * parallel.
+     * <p>
+     * A difference only touches {@link AbstractDifference#getClassName()} and
+     * {@link AbstractDifference#getRelatedClassNames()}, so the differences are split into partitions which don't
+     * share a class (a renamed class and the classes its old and new name are shared with end up in one partition).
+     * Every partition is applied in order to its own pool which only contains its classes, so no pool is shared
+     * between threads. Adding, removing and renaming classes only changes the partition's pool, the partitions are
+     * merged back into the given pool one after another once all of them are applied.
+     *
+     * @param filter   Selects the differences that are applied, the others are skipped
+     * @param executor The executor to patch the classes on, the differences are applied on the calling thread if
+     *                 <code>null</code>
+     * @throws VerificationException If a difference doesn't fit the classes
+     * @throws InterruptedException  If the calling thread was interrupted while waiting for the partitions
+     */
+    public void apply(ClassPool classes, Predicate<? super AbstractDifference> filter, TaskExecutor executor) throws VerificationException, InterruptedException {
+        if (executor == null) {
+            ClassPool.applyInOrder(classes, differences.stream().filter(filter).collect(Collectors.toList()));
+            return;
+        }
+
+        Map<Partition, ClassPool> results = new ConcurrentHashMap<>();
+
+        executor.forEachChunk(partitions, executor.chunkSize(partitions.size()), chunk -> {
+            for (Partition partition : chunk) {
+                ClassPool partitionClasses = new ClassPool();
+
+                for (String className : partition.classNames) {
+                    ClassNode classNode = classes.get(className); // Only read while the partitions are applied
+
+                    if (classNode != null) {
+                        partitionClasses.put(className, classNode);
+                    }
+                }
+
+                ClassPool.applyInOrder(partitionClasses, partition.differences.stream().filter(filter).collect(Collectors.toList()));
+
+                results.put(partition, partitionClasses);
+            }
+        });
+
+        for (Partition partition : partitions) {
+            classes.merge(partition.classNames, results.get(partition));
+        }
+    }
+
+    /**
+     * Checks that no two differences fight over the same target: duplicates (two differences of the same type for the
+     * same class or member in the same phase) and differences of a class or member which is removed in the same phase.
+     *
+     * @throws VerificationException Listing every conflict
+     */
+    public static void checkConflicts(Collection<? extends AbstractDifference> differences) throws VerificationException {
+        Map<List<Object>, List<AbstractDifference>> targets = new LinkedHashMap<>();
+        Map<List<Object>, RemoveClassDifference> removedClasses = new HashMap<>();
+
+        for (AbstractDifference difference : differences) {
+            targets.computeIfAbsent(targetOf(difference), key -> new ArrayList<>(1)).add(difference);
+
+            if (difference instanceof RemoveClassDifference) {
+                removedClasses.put(Arrays.asList(difference.getPhase(), difference.getClassName()), (RemoveClassDifference) difference);
+            }
+        }
+
+        List<String> conflicts = new ArrayList<>();
+
+        for (List<AbstractDifference> sameTarget : targets.values()) {
+            for (int i = 1; i < sameTarget.size(); i++) {
+                AbstractDifference difference = sameTarget.get(i);
+
+                for (AbstractDifference other : sameTarget.subList(0, i)) {
+                    if (other.getClass() == difference.getClass()) {
+                        conflicts.add("Duplicate difference " + difference);
+                    } else if (isRemoval(other) || isRemoval(difference)) {
+                        conflicts.add(other + " conflicts with " + difference);
+                    }
+                }
+            }
+        }
+        for (AbstractDifference difference : differences) {
+            RemoveClassDifference removal = removedClasses.get(Arrays.asList(difference.getPhase(), difference.getClassName()));
+
+            // Class level differences of a removed class are already covered above
+            if (removal != null && difference.getMemberKey() != null) {
+                conflicts.add(removal + " conflicts with " + difference);
+            }
+        }
+
+        if (!conflicts.isEmpty()) {
+            throw new VerificationException("The patch contains " + conflicts.size() + " conflicts:\n" + String.join("\n", conflicts));
+        }
+    }
+
+    /**
+     * @return The phase, class and member a difference targets
+     */
+    private static List<Object> targetOf(AbstractDifference difference) {
+        return Arrays.asList(difference.getPhase(), difference.getClassName(), difference.getMemberKey());
+    }
+
+    private static boolean isRemoval(AbstractDifference difference) {
+        return difference instanceof RemoveClassDifference || difference instanceof RemoveMethodDifference || difference instanceof RemoveFieldDifference;
+    }
+
+    /**
+     * Splits the differences into partitions that don't share a class, every partition keeps the given order
+     */
+    private static List<Partition> partition(Collection<? extends AbstractDifference> differences) {
+        // A union-find over the class names, every partition is identified by its root
+        Map<String, String> parents = new HashMap<>();
+
+        for (AbstractDifference difference : differences) {
+            String root = find(parents, difference.getClassName());
+
+            for (String className : difference.getRelatedClassNames()) {
+                String relatedRoot = find(parents, className);
+
+                if (!relatedRoot.equals(root)) {
+                    parents.put(relatedRoot, root);
+                }
+            }
+        }
+
+        Map<String, Partition> partitions = new LinkedHashMap<>();
+
+        for (AbstractDifference difference : differences) {
+            partitions.computeIfAbsent(find(parents, difference.getClassName()), root -> new Partition()).differences.add(difference);
+        }
+        for (String className : parents.keySet()) {
+            partitions.get(find(parents, className)).classNames.add(className);
+        }
+
+        return new ArrayList<>(partitions.values());
+    }
+
+    private static String find(Map<String, String> parents, String className) {
+        String root = className;
+        String parent;
+
+        while (!(parent = parents.getOrDefault(root, root)).equals(root)) {
+            root = parent;
+        }
+
+        // Path compression, so chains of renames don't make lookups slow
+        while (!className.equals(root)) {
+            parent = parents.put(className, root);
+            className = parent == null ? root : parent;
+        }
+
+        parents.putIfAbsent(root, root);
+
+        return root;
+    }
+
+    private static class Partition {
+        private final List<AbstractDifference> differences = new ArrayList<>();
+        private final Set<String> classNames = new HashSet<>();
+    }
+}
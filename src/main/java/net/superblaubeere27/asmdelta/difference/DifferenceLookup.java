@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.difference;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Looks up the differences of a patch by the class they target, so a single class can be patched without going
+ * through the whole patch
+ */
+public interface DifferenceLookup {
+    /**
+     * @return Whether the patch has differences for the given class. This is checked for every class that might be
+     * patched, so it has to be cheap.
+     */
+    boolean contains(String className);
+
+    /**
+     * @return The differences whose {@link AbstractDifference#getClassName()} is the given class, in the order of the
+     * patch. Empty if the patch doesn't change the class.
+     */
+    List<AbstractDifference> getDifferences(String className) throws IOException;
+}
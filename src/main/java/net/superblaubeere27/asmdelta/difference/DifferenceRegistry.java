@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.difference;
+
+import net.superblaubeere27.asmdelta.difference.clazz.*;
+import net.superblaubeere27.asmdelta.difference.fields.*;
+import net.superblaubeere27.asmdelta.difference.methods.*;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceInput;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Every type of difference a patch can contain. Binary patches identify the type of a record by its tag, so tags must
+ * never change or be reused.
+ */
+public class DifferenceRegistry {
+    private static final int MAX_TAG = 25;
+
+    private static final Reader<?>[] READERS = new Reader<?>[MAX_TAG + 1];
+    private static final Map<Class<?>, Integer> TAGS = new HashMap<>();
+    private static final Map<String, Class<? extends AbstractDifference>> TYPES_BY_NAME = new HashMap<>();
+
+    static {
+        register(1, AddClassDifference.class, AddClassDifference::read);
+        register(2, ClassAccessDifference.class, ClassAccessDifference::read);
+        register(3, ClassMetadataDifference.class, ClassMetadataDifference::read);
+        register(4, ClassVersionDifference.class, ClassVersionDifference::read);
+        register(5, RemapClassDifference.class, RemapClassDifference::read);
+        register(6, RemoveClassDifference.class, RemoveClassDifference::read);
+        register(7, RenameClassDifference.class, RenameClassDifference::read);
+
+        register(8, AddFieldDifference.class, AddFieldDifference::read);
+        register(9, FieldAccessDifference.class, FieldAccessDifference::read);
+        register(10, FieldDescriptionDifference.class, FieldDescriptionDifference::read);
+        register(11, FieldSignatureDifference.class, FieldSignatureDifference::read);
+        register(12, FieldValueDifference.class, FieldValueDifference::read);
+        register(13, RemoveFieldDifference.class, RemoveFieldDifference::read);
+        register(14, RenameFieldDifference.class, RenameFieldDifference::read);
+
+        register(15, AddMethodDifference.class, AddMethodDifference::read);
+        register(16, MethodAccessDifference.class, MethodAccessDifference::read);
+        register(17, MethodAnnotationDefaultDifference.class, MethodAnnotationDefaultDifference::read);
+        register(18, MethodExceptionDifference.class, MethodExceptionDifference::read);
+        register(19, MethodInstructionDifference.class, MethodInstructionDifference::read);
+        register(20, MethodInstructionEditDifference.class, MethodInstructionEditDifference::read);
+        register(21, MethodMaxsDifference.class, MethodMaxsDifference::read);
+        register(22, MethodSignatureDifference.class, MethodSignatureDifference::read);
+        register(23, MoveMethodDifference.class, MoveMethodDifference::read);
+        register(24, RemoveMethodDifference.class, RemoveMethodDifference::read);
+        register(25, RenameMethodDifference.class, RenameMethodDifference::read);
+    }
+
+    private static <T extends AbstractDifference> void register(int tag, Class<T> type, Reader<T> reader) {
+        READERS[tag] = reader;
+        TAGS.put(type, tag);
+        TYPES_BY_NAME.put(type.getName(), type);
+    }
+
+    /**
+     * @return The tag of the type, at least 1
+     * @throws IllegalArgumentException If the type isn't registered
+     */
+    public static int getTag(Class<? extends AbstractDifference> type) {
+        Integer tag = TAGS.get(type);
+
+        if (tag == null) {
+            throw new IllegalArgumentException(type.getName() + " isn't a registered difference type");
+        }
+
+        return tag;
+    }
+
+    /**
+     * Reads a difference written by {@link AbstractDifference#write(net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput)}
+     */
+    public static AbstractDifference read(int tag, DifferenceInput in) throws IOException {
+        if (tag < 1 || tag > MAX_TAG) {
+            throw new IOException("Unknown difference type " + tag);
+        }
+
+        return READERS[tag].read(in);
+    }
+
+    /**
+     * @return The type with the given class name, <code>null</code> if there is no such difference type
+     */
+    public static Class<? extends AbstractDifference> forName(String name) {
+        return TYPES_BY_NAME.get(name);
+    }
+
+    @FunctionalInterface
+    public interface Reader<T extends AbstractDifference> {
+        T read(DifferenceInput in) throws IOException;
+    }
+}
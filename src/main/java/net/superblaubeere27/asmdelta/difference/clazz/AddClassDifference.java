@@ -12,33 +12,81 @@ package net.superblaubeere27.asmdelta.difference.clazz;
 
 import net.superblaubeere27.asmdelta.difference.AbstractDifference;
 import net.superblaubeere27.asmdelta.difference.VerificationException;
+import net.superblaubeere27.asmdelta.utils.LazyClassNode;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceInput;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput;
 import org.objectweb.asm.tree.ClassNode;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
 
 public class AddClassDifference extends AbstractDifference {
-    private ClassNode newNode;
+    private LazyClassNode newNode;
 
     public AddClassDifference(ClassNode newNode) {
+        this.newNode = new LazyClassNode(newNode);
+    }
+
+    /**
+     * @param classBytes The class file of the new class, it is stored as it is
+     */
+    public AddClassDifference(byte[] classBytes) {
+        this.newNode = new LazyClassNode(classBytes);
+    }
+
+    private AddClassDifference(LazyClassNode newNode) {
         this.newNode = newNode;
     }
 
+    public static AddClassDifference read(DifferenceInput in) throws IOException {
+        return new AddClassDifference(in.readLazyClassNode());
+    }
+
+    @Override
+    public void write(DifferenceOutput out) {
+        out.writeLazyNode(newNode);
+    }
+
     @Override
     public void apply(HashMap<String, ClassNode> classes) throws VerificationException {
-        if (classes.containsKey(newNode.name)) {
-            throw new VerificationException(newNode.name + " already exists in the class pool");
+        String name = getClassName();
+
+        if (classes.containsKey(name)) {
+            throw new VerificationException(name + " already exists in the class pool");
         }
 
-        classes.put(newNode.name, newNode);
+        try {
+            classes.put(name, newNode.copy());
+        } catch (IOException e) {
+            throw new VerificationException("Failed to read " + name, e);
+        }
     }
 
-    public ClassNode getNewNode() {
-        return newNode;
+    /**
+     * Parses the class if that didn't happen yet, use {@link #getNewBytes()} to write it out
+     */
+    public ClassNode getNewNode() throws IOException {
+        return newNode.get();
     }
 
+    /**
+     * @return The class file of the new class, the returned array must not be modified
+     */
+    public byte[] getNewBytes() {
+        return newNode.getBytes();
+    }
+
+    /**
+     * @throws UncheckedIOException If the stored class file is malformed
+     */
     @Override
     public String getClassName() {
-        return newNode.name;
+        try {
+            return newNode.getName();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     @Override
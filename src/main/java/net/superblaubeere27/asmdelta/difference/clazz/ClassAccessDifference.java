@@ -11,9 +11,12 @@
 package net.superblaubeere27.asmdelta.difference.clazz;
 
 import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceInput;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
 
+import java.io.IOException;
 import java.util.HashMap;
 
 public class ClassAccessDifference extends AbstractDifference {
@@ -27,6 +30,17 @@ public class ClassAccessDifference extends AbstractDifference {
         this.newAccess = newAccess;
     }
 
+    public static ClassAccessDifference read(DifferenceInput in) throws IOException {
+        return new ClassAccessDifference(in.readString(), in.readInt(), in.readInt());
+    }
+
+    @Override
+    public void write(DifferenceOutput out) {
+        out.writeString(className);
+        out.writeInt(oldAccess);
+        out.writeInt(newAccess);
+    }
+
     @Override
     public void apply(HashMap<String, ClassNode> classes) {
         classes.get(className).access = newAccess;
@@ -11,8 +11,11 @@
 package net.superblaubeere27.asmdelta.difference.clazz;
 
 import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceInput;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput;
 import org.objectweb.asm.tree.ClassNode;
 
+import java.io.IOException;
 import java.util.HashMap;
 
 public class ClassMetadataDifference extends AbstractDifference {
@@ -39,6 +42,23 @@ public class ClassMetadataDifference extends AbstractDifference {
         this.superName = superName;
     }
 
+    public static ClassMetadataDifference read(DifferenceInput in) throws IOException {
+        return new ClassMetadataDifference(in.readString(), in.readString(), in.readString(), in.readString(), in.readString(), in.readString(), in.readString(), in.readString(), in.readString());
+    }
+
+    @Override
+    public void write(DifferenceOutput out) {
+        out.writeString(className);
+        out.writeString(outerClass);
+        out.writeString(nestHostClass);
+        out.writeString(outerMethod);
+        out.writeString(outerMethodDesc);
+        out.writeString(signature);
+        out.writeString(sourceDebug);
+        out.writeString(sourceFile);
+        out.writeString(superName);
+    }
+
     public static ClassMetadataDifference createNew(String className, String outerClass, String nestHostClass, String outerMethod, String outerMethodDesc, String signature, String sourceDebug, String sourceFile, String superName) {
         if (outerClass == null
                 && nestHostClass == null
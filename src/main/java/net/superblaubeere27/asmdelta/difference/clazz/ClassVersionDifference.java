@@ -11,8 +11,11 @@
 package net.superblaubeere27.asmdelta.difference.clazz;
 
 import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceInput;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput;
 import org.objectweb.asm.tree.ClassNode;
 
+import java.io.IOException;
 import java.util.HashMap;
 
 public class ClassVersionDifference extends AbstractDifference {
@@ -24,6 +27,16 @@ public class ClassVersionDifference extends AbstractDifference {
         this.newVersion = newVersion;
     }
 
+    public static ClassVersionDifference read(DifferenceInput in) throws IOException {
+        return new ClassVersionDifference(in.readString(), in.readInt());
+    }
+
+    @Override
+    public void write(DifferenceOutput out) {
+        out.writeString(className);
+        out.writeInt(newVersion);
+    }
+
     @Override
     public void apply(HashMap<String, ClassNode> classes) {
         classes.get(className).version = newVersion;
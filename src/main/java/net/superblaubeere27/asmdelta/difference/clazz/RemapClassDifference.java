@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.difference.clazz;
+
+import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.VerificationException;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceInput;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.SimpleRemapper;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replaces the references of a class to classes that were renamed, so the remaining differences of the class only
+ * contain actual changes. Applied after every {@link RenameClassDifference}.
+ */
+public class RemapClassDifference extends AbstractDifference {
+    private String className;
+    /**
+     * Only the renamed classes this class references, old name to new name
+     */
+    private Map<String, String> mapping;
+
+    public RemapClassDifference(String className, Map<String, String> mapping) {
+        this.className = className;
+        this.mapping = mapping;
+    }
+
+    public static RemapClassDifference read(DifferenceInput in) throws IOException {
+        return new RemapClassDifference(in.readString(), in.readStringMap());
+    }
+
+    @Override
+    public void write(DifferenceOutput out) {
+        out.writeString(className);
+        out.writeStringMap(mapping);
+    }
+
+    /**
+     * Remaps a class and records which entries of the mapping were actually used
+     *
+     * @param usedMapping Receives the used entries, which remap the class exactly like the whole mapping
+     */
+    public static ClassNode remap(ClassNode classNode, Map<String, String> mapping, Map<String, String> usedMapping) {
+        ClassNode remapped = new ClassNode();
+
+        classNode.accept(new ClassRemapper(remapped, new SimpleRemapper(mapping) {
+            @Override
+            public String map(String key) {
+                String mapped = super.map(key);
+
+                if (mapped != null) {
+                    usedMapping.put(key, mapped);
+                }
+
+                return mapped;
+            }
+        }));
+
+        return remapped;
+    }
+
+    @Override
+    public void apply(HashMap<String, ClassNode> classes) throws VerificationException {
+        ClassNode classNode = verifyNotNull(classes.get(className), className + " isn't in the class pool");
+        ClassNode remapped = new ClassNode();
+
+        classNode.accept(new ClassRemapper(remapped, new SimpleRemapper(mapping)));
+
+        if (!remapped.name.equals(className)) {
+            throw new VerificationException(className + " was remapped to " + remapped.name);
+        }
+
+        classes.put(className, remapped);
+    }
+
+    @Override
+    public String getClassName() {
+        return className;
+    }
+
+    @Override
+    protected int getPhase() {
+        return PHASE_REMAP_CLASSES;
+    }
+
+    @Override
+    public boolean canBeAppliedAtRuntime() {
+        return false; // Descriptors may change, which class redefinition doesn't allow
+    }
+}
@@ -12,8 +12,11 @@ package net.superblaubeere27.asmdelta.difference.clazz;
 
 import net.superblaubeere27.asmdelta.difference.AbstractDifference;
 import net.superblaubeere27.asmdelta.difference.VerificationException;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceInput;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput;
 import org.objectweb.asm.tree.ClassNode;
 
+import java.io.IOException;
 import java.util.HashMap;
 
 public class RemoveClassDifference extends AbstractDifference {
@@ -23,6 +26,15 @@ public class RemoveClassDifference extends AbstractDifference {
         this.className = className;
     }
 
+    public static RemoveClassDifference read(DifferenceInput in) throws IOException {
+        return new RemoveClassDifference(in.readString());
+    }
+
+    @Override
+    public void write(DifferenceOutput out) {
+        out.writeString(className);
+    }
+
     @Override
     public void apply(HashMap<String, ClassNode> classes) throws VerificationException {
         if (!classes.containsKey(className)) {
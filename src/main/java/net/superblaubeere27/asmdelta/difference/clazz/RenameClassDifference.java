@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.difference.clazz;
+
+import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.VerificationException;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceInput;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Moves a class to another name in the class pool. The class itself is left untouched, the references to renamed
+ * classes (including its own name) are replaced by a {@link RemapClassDifference} afterwards.
+ * <p>
+ * Renames are applied before any other difference, in the order they were planned in. Classes can swap names after
+ * re-obfuscation, so a rename may have to go through a temporary name.
+ */
+public class RenameClassDifference extends AbstractDifference {
+    private static final String TEMPORARY_PREFIX = "asmdelta$renaming$";
+
+    private String oldName;
+    private String newName;
+    private int sequence;
+
+    public RenameClassDifference(String oldName, String newName, int sequence) {
+        this.oldName = oldName;
+        this.newName = newName;
+        this.sequence = sequence;
+    }
+
+    public static RenameClassDifference read(DifferenceInput in) throws IOException {
+        return new RenameClassDifference(in.readString(), in.readString(), in.readInt());
+    }
+
+    @Override
+    public void write(DifferenceOutput out) {
+        out.writeString(oldName);
+        out.writeString(newName);
+        out.writeInt(sequence);
+    }
+
+    /**
+     * Orders the moves of a class pool so no move overwrites a class that didn't move away yet. Cycles are broken up
+     * by moving one of their classes to a temporary name first.
+     *
+     * @param moves   The old name of every class that moves mapped to its new name
+     * @param isTaken Tells which names can't be used as temporary names
+     */
+    public static List<RenameClassDifference> plan(Map<String, String> moves, Predicate<String> isTaken) {
+        TreeMap<String, String> pending = new TreeMap<>(moves);
+        Map<String, String> sourceByTarget = new HashMap<>();
+        Deque<String> ready = new ArrayDeque<>();
+
+        for (Map.Entry<String, String> move : pending.entrySet()) {
+            if (sourceByTarget.put(move.getValue(), move.getKey()) != null) {
+                throw new IllegalArgumentException("Two classes are moved to " + move.getValue());
+            }
+            if (!pending.containsKey(move.getValue())) {
+                ready.add(move.getKey());
+            }
+        }
+
+        List<RenameClassDifference> plan = new ArrayList<>(moves.size());
+        int temporaryNames = 0;
+
+        while (!pending.isEmpty()) {
+            String source;
+            String target;
+
+            if (!ready.isEmpty()) {
+                source = ready.poll();
+                target = pending.remove(source);
+            } else { // Only cycles are left
+                source = pending.firstKey();
+
+                do {
+                    target = TEMPORARY_PREFIX + temporaryNames++;
+                } while (isTaken.test(target) || moves.containsKey(target) || moves.containsValue(target));
+
+                String finalTarget = pending.remove(source);
+
+                pending.put(target, finalTarget);
+                sourceByTarget.put(finalTarget, target);
+            }
+
+            plan.add(new RenameClassDifference(source, target, plan.size()));
+
+            // The move that waited for this name can go now
+            String waiting = sourceByTarget.get(source);
+
+            if (waiting != null && pending.containsKey(waiting)) {
+                ready.add(waiting);
+            }
+        }
+
+        return plan;
+    }
+
+    @Override
+    public void apply(HashMap<String, ClassNode> classes) throws VerificationException {
+        ClassNode classNode = verifyNotNull(classes.get(oldName), oldName + " isn't in the class pool");
+
+        if (classes.containsKey(newName)) {
+            throw new VerificationException(newName + " already exists in the class pool");
+        }
+
+        classes.remove(oldName);
+        classes.put(newName, classNode);
+    }
+
+    @Override
+    public String getClassName() {
+        return newName;
+    }
+
+    @Override
+    public Collection<String> getRelatedClassNames() {
+        return Collections.singletonList(oldName);
+    }
+
+    @Override
+    protected int getPhase() {
+        return Integer.MIN_VALUE + sequence;
+    }
+
+    @Override
+    public boolean canBeAppliedAtRuntime() {
+        return false; // Loaded classes can't be renamed
+    }
+
+    public String getOldName() {
+        return oldName;
+    }
+}
@@ -11,12 +11,16 @@
 package net.superblaubeere27.asmdelta.difference.fields;
 
 import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.ClassMembers;
+import net.superblaubeere27.asmdelta.difference.VerificationException;
+import net.superblaubeere27.asmdelta.utils.ClassFiles;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceInput;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldNode;
 
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.HashMap;
-import java.util.List;
 
 public class AddFieldDifference extends AbstractDifference {
     private String className;
@@ -27,18 +31,19 @@ public class AddFieldDifference extends AbstractDifference {
         this.fieldNode = fieldNode;
     }
 
-    @Override
-    public void apply(HashMap<String, ClassNode> classes) {
-        ClassNode classNode = classes.get(className);
-
-        List<FieldNode> fields = classNode.fields;
-
-        if (fields == null) { // According to the documentation, fields might be null
-            classNode.fields = fields = new ArrayList<>();
-        }
+    public static AddFieldDifference read(DifferenceInput in) throws IOException {
+        return new AddFieldDifference(in.readString(), in.readFieldNode());
+    }
 
-        fields.add(fieldNode);
+    @Override
+    public void write(DifferenceOutput out) {
+        out.writeString(className);
+        out.writeFieldNode(fieldNode);
+    }
 
+    @Override
+    public void apply(HashMap<String, ClassNode> classes) throws VerificationException {
+        ClassMembers.of(classes, className).addField(ClassFiles.copy(fieldNode));
     }
 
     @Override
@@ -46,6 +51,11 @@ public class AddFieldDifference extends AbstractDifference {
         return className;
     }
 
+    @Override
+    public String getMemberKey() {
+        return fieldNode.name;
+    }
+
     @Override
     public boolean canBeAppliedAtRuntime() {
         return false;
@@ -11,9 +11,13 @@
 package net.superblaubeere27.asmdelta.difference.fields;
 
 import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.ClassMembers;
 import net.superblaubeere27.asmdelta.difference.VerificationException;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceInput;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput;
 import org.objectweb.asm.tree.ClassNode;
 
+import java.io.IOException;
 import java.util.HashMap;
 
 public class FieldAccessDifference extends AbstractDifference {
@@ -29,13 +33,21 @@ public class FieldAccessDifference extends AbstractDifference {
         this.newAccess = newAccess;
     }
 
+    public static FieldAccessDifference read(DifferenceInput in) throws IOException {
+        return new FieldAccessDifference(in.readString(), in.readString(), in.readInt(), in.readInt());
+    }
+
+    @Override
+    public void write(DifferenceOutput out) {
+        out.writeString(className);
+        out.writeString(fieldName);
+        out.writeInt(oldAccess);
+        out.writeInt(newAccess);
+    }
+
     @Override
     public void apply(HashMap<String, ClassNode> classes) throws VerificationException {
-        var fieldNode = verifyNotNull(verifyNotNull(classes.get(className), "Class wasn't found").fields, "Field wasn't found")
-                .stream()
-                .filter(f -> f.name.equals(fieldName))
-                .findFirst()
-                .orElseThrow(VerificationException::new);
+        var fieldNode = ClassMembers.of(classes, className).getField(fieldName);
 
         fieldNode.access = newAccess;
     }
@@ -49,4 +61,9 @@ public class FieldAccessDifference extends AbstractDifference {
     public String getClassName() {
         return className;
     }
+
+    @Override
+    public String getMemberKey() {
+        return fieldName;
+    }
 }
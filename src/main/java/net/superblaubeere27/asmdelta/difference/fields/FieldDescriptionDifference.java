@@ -11,9 +11,13 @@
 package net.superblaubeere27.asmdelta.difference.fields;
 
 import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.ClassMembers;
 import net.superblaubeere27.asmdelta.difference.VerificationException;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceInput;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput;
 import org.objectweb.asm.tree.ClassNode;
 
+import java.io.IOException;
 import java.util.HashMap;
 
 public class FieldDescriptionDifference extends AbstractDifference {
@@ -27,13 +31,20 @@ public class FieldDescriptionDifference extends AbstractDifference {
         this.desc = desc;
     }
 
+    public static FieldDescriptionDifference read(DifferenceInput in) throws IOException {
+        return new FieldDescriptionDifference(in.readString(), in.readString(), in.readString());
+    }
+
+    @Override
+    public void write(DifferenceOutput out) {
+        out.writeString(className);
+        out.writeString(fieldName);
+        out.writeString(desc);
+    }
+
     @Override
     public void apply(HashMap<String, ClassNode> classes) throws VerificationException {
-        var fieldNode = verifyNotNull(verifyNotNull(classes.get(className), "Class wasn't found").fields, "Field wasn't found")
-                .stream()
-                .filter(f -> f.name.equals(fieldName))
-                .findFirst()
-                .orElseThrow(VerificationException::new);
+        var fieldNode = ClassMembers.of(classes, className).getField(fieldName);
 
         fieldNode.desc = desc;
     }
@@ -43,6 +54,11 @@ public class FieldDescriptionDifference extends AbstractDifference {
         return className;
     }
 
+    @Override
+    public String getMemberKey() {
+        return fieldName;
+    }
+
     @Override
     public boolean canBeAppliedAtRuntime() {
         return true; // TODO Can changing a field's type at runtime be a problem? (Assuming yes)
@@ -11,9 +11,13 @@
 package net.superblaubeere27.asmdelta.difference.fields;
 
 import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.ClassMembers;
 import net.superblaubeere27.asmdelta.difference.VerificationException;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceInput;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput;
 import org.objectweb.asm.tree.ClassNode;
 
+import java.io.IOException;
 import java.util.HashMap;
 
 public class FieldSignatureDifference extends AbstractDifference {
@@ -27,13 +31,20 @@ public class FieldSignatureDifference extends AbstractDifference {
         this.signature = signature;
     }
 
+    public static FieldSignatureDifference read(DifferenceInput in) throws IOException {
+        return new FieldSignatureDifference(in.readString(), in.readString(), in.readString());
+    }
+
+    @Override
+    public void write(DifferenceOutput out) {
+        out.writeString(className);
+        out.writeString(fieldName);
+        out.writeString(signature);
+    }
+
     @Override
     public void apply(HashMap<String, ClassNode> classes) throws VerificationException {
-        var fieldNode = verifyNotNull(verifyNotNull(classes.get(className), "Class wasn't found").fields, "Field wasn't found")
-                .stream()
-                .filter(f -> f.name.equals(fieldName))
-                .findFirst()
-                .orElseThrow(VerificationException::new);
+        var fieldNode = ClassMembers.of(classes, className).getField(fieldName);
 
         fieldNode.signature = signature;
     }
@@ -43,6 +54,11 @@ public class FieldSignatureDifference extends AbstractDifference {
         return className;
     }
 
+    @Override
+    public String getMemberKey() {
+        return fieldName;
+    }
+
     @Override
     public boolean canBeAppliedAtRuntime() {
         return true; // TODO Can changing a field's signature at runtime be a problem? (Assuming no)
@@ -11,13 +11,14 @@
 package net.superblaubeere27.asmdelta.difference.fields;
 
 import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.ClassMembers;
 import net.superblaubeere27.asmdelta.difference.VerificationException;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceInput;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput;
 import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.tree.FieldNode;
 
+import java.io.IOException;
 import java.util.HashMap;
-import java.util.List;
-import java.util.stream.Collectors;
 
 public class RemoveFieldDifference extends AbstractDifference {
     private String className;
@@ -28,17 +29,19 @@ public class RemoveFieldDifference extends AbstractDifference {
         this.fieldName = fieldName;
     }
 
-    @Override
-    public void apply(HashMap<String, ClassNode> classes) throws VerificationException {
-        ClassNode classNode = classes.get(className);
-
-        List<FieldNode> fields = classNode.fields;
+    public static RemoveFieldDifference read(DifferenceInput in) throws IOException {
+        return new RemoveFieldDifference(in.readString(), in.readString());
+    }
 
-        if (fields == null) { // According to the documentation, fields might be null
-            throw new VerificationException("Class has no fields to remove");
-        }
+    @Override
+    public void write(DifferenceOutput out) {
+        out.writeString(className);
+        out.writeString(fieldName);
+    }
 
-        fields.removeAll(fields.stream().filter(field -> field.name.equals(fieldName)).collect(Collectors.toUnmodifiableList()));
+    @Override
+    public void apply(HashMap<String, ClassNode> classes) throws VerificationException {
+        ClassMembers.of(classes, className).removeFields(fieldName);
     }
 
     @Override
@@ -46,6 +49,11 @@ public class RemoveFieldDifference extends AbstractDifference {
         return className;
     }
 
+    @Override
+    public String getMemberKey() {
+        return fieldName;
+    }
+
     @Override
     public boolean canBeAppliedAtRuntime() {
         return false;
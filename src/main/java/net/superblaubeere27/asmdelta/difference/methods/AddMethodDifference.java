@@ -11,34 +11,51 @@
 package net.superblaubeere27.asmdelta.difference.methods;
 
 import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.ClassMembers;
+import net.superblaubeere27.asmdelta.difference.VerificationException;
+import net.superblaubeere27.asmdelta.utils.LazyMethodNode;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceInput;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
-import java.util.List;
 
 public class AddMethodDifference extends AbstractDifference {
     private String className;
-    private MethodNode methodNode;
+    private LazyMethodNode methodNode;
 
     public AddMethodDifference(String className, MethodNode methodNode) {
+        this.className = className;
+        this.methodNode = new LazyMethodNode(methodNode);
+    }
+
+    private AddMethodDifference(String className, LazyMethodNode methodNode) {
         this.className = className;
         this.methodNode = methodNode;
     }
 
+    public static AddMethodDifference read(DifferenceInput in) throws IOException {
+        return new AddMethodDifference(in.readString(), in.readLazyMethodNode());
+    }
+
     @Override
-    public void apply(HashMap<String, ClassNode> classes) {
-        ClassNode classNode = classes.get(className);
+    public void write(DifferenceOutput out) {
+        out.writeString(className);
+        out.writeLazyNode(methodNode);
+    }
 
-        List<MethodNode> methods = classNode.methods;
+    @Override
+    public void apply(HashMap<String, ClassNode> classes) throws VerificationException {
+        ClassMembers members = ClassMembers.of(classes, className);
 
-        if (methods == null) { // According to the documentation, methods might be null
-            classNode.methods = methods = new ArrayList<>();
+        try {
+            members.addMethod(methodNode.copy());
+        } catch (IOException e) {
+            throw new VerificationException("Failed to read the added method of " + className, e);
         }
-
-        methods.add(methodNode);
-
     }
 
     @Override
@@ -46,6 +63,20 @@ public class AddMethodDifference extends AbstractDifference {
         return className;
     }
 
+    /**
+     * @throws UncheckedIOException If the stored method is malformed
+     */
+    @Override
+    public String getMemberKey() {
+        try {
+            MethodNode node = methodNode.get();
+
+            return node.name + node.desc;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     @Override
     public boolean canBeAppliedAtRuntime() {
         return false;
@@ -11,10 +11,15 @@
 package net.superblaubeere27.asmdelta.difference.methods;
 
 import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.ClassMembers;
 import net.superblaubeere27.asmdelta.difference.VerificationException;
+import net.superblaubeere27.asmdelta.utils.ClassFiles;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceInput;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
 
+import java.io.IOException;
 import java.util.HashMap;
 
 public class MethodAnnotationDefaultDifference extends AbstractDifference {
@@ -30,15 +35,23 @@ public class MethodAnnotationDefaultDifference extends AbstractDifference {
         this.newDefault = newDefault;
     }
 
+    public static MethodAnnotationDefaultDifference read(DifferenceInput in) throws IOException {
+        return new MethodAnnotationDefaultDifference(in.readString(), in.readString(), in.readString(), in.readValue());
+    }
+
+    @Override
+    public void write(DifferenceOutput out) {
+        out.writeString(className);
+        out.writeString(methodName);
+        out.writeString(methodDesc);
+        out.writeValue(newDefault);
+    }
+
     @Override
     public void apply(HashMap<String, ClassNode> classes) throws VerificationException {
-        MethodNode methodNode = verifyNotNull(verifyNotNull(classes.get(className), "Class wasn't found").methods, "Field wasn't found")
-                .stream()
-                .filter(m -> m.name.equals(methodName) && m.desc.equals(methodDesc))
-                .findFirst()
-                .orElseThrow(VerificationException::new);
+        MethodNode methodNode = ClassMembers.of(classes, className).getMethod(methodName, methodDesc);
 
-        methodNode.annotationDefault = newDefault;
+        methodNode.annotationDefault = ClassFiles.copyAnnotationValue(newDefault);
     }
 
     @Override
@@ -46,6 +59,11 @@ public class MethodAnnotationDefaultDifference extends AbstractDifference {
         return className;
     }
 
+    @Override
+    public String getMemberKey() {
+        return methodName + methodDesc;
+    }
+
     @Override
     public boolean canBeAppliedAtRuntime() {
         return true;
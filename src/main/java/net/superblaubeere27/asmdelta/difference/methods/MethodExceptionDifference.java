@@ -11,10 +11,15 @@
 package net.superblaubeere27.asmdelta.difference.methods;
 
 import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.ClassMembers;
 import net.superblaubeere27.asmdelta.difference.VerificationException;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceInput;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
@@ -31,15 +36,23 @@ public class MethodExceptionDifference extends AbstractDifference {
         this.newExceptions = newExceptions;
     }
 
+    public static MethodExceptionDifference read(DifferenceInput in) throws IOException {
+        return new MethodExceptionDifference(in.readString(), in.readString(), in.readString(), in.readStringList());
+    }
+
+    @Override
+    public void write(DifferenceOutput out) {
+        out.writeString(className);
+        out.writeString(methodName);
+        out.writeString(methodDesc);
+        out.writeStringList(newExceptions);
+    }
+
     @Override
     public void apply(HashMap<String, ClassNode> classes) throws VerificationException {
-        MethodNode methodNode = verifyNotNull(verifyNotNull(classes.get(className), "Class wasn't found").methods, "Field wasn't found")
-                .stream()
-                .filter(m -> m.name.equals(methodName) && m.desc.equals(methodDesc))
-                .findFirst()
-                .orElseThrow(VerificationException::new);
+        MethodNode methodNode = ClassMembers.of(classes, className).getMethod(methodName, methodDesc);
 
-        methodNode.exceptions = newExceptions;
+        methodNode.exceptions = newExceptions == null ? null : new ArrayList<>(newExceptions);
     }
 
     @Override
@@ -47,6 +60,11 @@ public class MethodExceptionDifference extends AbstractDifference {
         return className;
     }
 
+    @Override
+    public String getMemberKey() {
+        return methodName + methodDesc;
+    }
+
     @Override
     public boolean canBeAppliedAtRuntime() {
         return true;
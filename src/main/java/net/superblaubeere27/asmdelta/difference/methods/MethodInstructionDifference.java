@@ -11,46 +11,64 @@
 package net.superblaubeere27.asmdelta.difference.methods;
 
 import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.ClassMembers;
 import net.superblaubeere27.asmdelta.difference.VerificationException;
-import org.objectweb.asm.tree.AbstractInsnNode;
+import net.superblaubeere27.asmdelta.utils.LazyMethodNode;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceInput;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput;
 import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.tree.InsnList;
 import org.objectweb.asm.tree.MethodNode;
 
+import java.io.IOException;
 import java.util.HashMap;
 
 public class MethodInstructionDifference extends AbstractDifference {
     private String className;
     private String methodName;
     private String methodDesc;
-    private MethodNode content;
+    private LazyMethodNode content;
 
     public MethodInstructionDifference(String className, String methodName, String methodDesc, MethodNode methodNode) {
         this.className = className;
         this.methodName = methodName;
         this.methodDesc = methodDesc;
-        this.content = new MethodNode();
+        this.content = new LazyMethodNode(methodNode);
+    }
 
-        this.content = methodNode;
+    private MethodInstructionDifference(String className, String methodName, String methodDesc, LazyMethodNode content) {
+        this.className = className;
+        this.methodName = methodName;
+        this.methodDesc = methodDesc;
+        this.content = content;
+    }
+
+    public static MethodInstructionDifference read(DifferenceInput in) throws IOException {
+        return new MethodInstructionDifference(in.readString(), in.readString(), in.readString(), in.readLazyMethodNode());
     }
 
     @Override
-    public void apply(HashMap<String, ClassNode> classes) throws VerificationException {
-        MethodNode methodNode = verifyNotNull(verifyNotNull(classes.get(className), "Class wasn't found").methods, "Field wasn't found")
-                .stream()
-                .filter(m -> m.name.equals(methodName) && m.desc.equals(methodDesc))
-                .findFirst()
-                .orElseThrow(VerificationException::new);
+    public void write(DifferenceOutput out) {
+        out.writeString(className);
+        out.writeString(methodName);
+        out.writeString(methodDesc);
+        out.writeLazyNode(content);
+    }
 
-        methodNode.instructions = new InsnList();
-        var abstractInsnNodes = this.content.instructions.toArray();
+    @Override
+    public void apply(HashMap<String, ClassNode> classes) throws VerificationException {
+        MethodNode methodNode = ClassMembers.of(classes, className).getMethod(methodName, methodDesc);
 
-        this.content.instructions.clear();
+        MethodNode content;
 
-        for (AbstractInsnNode abstractInsnNode : abstractInsnNodes) {
-            methodNode.instructions.add(abstractInsnNode);
+        try {
+            content = this.content.copy();
+        } catch (IOException e) {
+            throw new VerificationException("Failed to read the new body of " + methodName + methodDesc, e);
         }
-        methodNode.tryCatchBlocks = this.content.tryCatchBlocks;
+
+        // The copy belongs to this application only, so its instructions can be taken over as they are
+        methodNode.instructions = content.instructions;
+        methodNode.tryCatchBlocks = content.tryCatchBlocks;
     }
 
     @Override
@@ -58,6 +76,11 @@ public class MethodInstructionDifference extends AbstractDifference {
         return className;
     }
 
+    @Override
+    public String getMemberKey() {
+        return methodName + methodDesc;
+    }
+
     @Override
     public boolean canBeAppliedAtRuntime() {
         return true;
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.difference.methods;
+
+import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.ClassMembers;
+import net.superblaubeere27.asmdelta.difference.VerificationException;
+import net.superblaubeere27.asmdelta.utils.InstructionEditScript;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceInput;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Patches the instructions of a method with an {@link InstructionEditScript} instead of replacing them as a whole
+ * like {@link MethodInstructionDifference}
+ */
+public class MethodInstructionEditDifference extends AbstractDifference {
+    private String className;
+    private String methodName;
+    private String methodDesc;
+    private byte[] script;
+
+    public MethodInstructionEditDifference(String className, String methodName, String methodDesc, byte[] script) {
+        this.className = className;
+        this.methodName = methodName;
+        this.methodDesc = methodDesc;
+        this.script = script;
+    }
+
+    public static MethodInstructionEditDifference read(DifferenceInput in) throws IOException {
+        return new MethodInstructionEditDifference(in.readString(), in.readString(), in.readString(), in.readBytes());
+    }
+
+    @Override
+    public void write(DifferenceOutput out) {
+        out.writeString(className);
+        out.writeString(methodName);
+        out.writeString(methodDesc);
+        out.writeBytes(script);
+    }
+
+    @Override
+    public void apply(HashMap<String, ClassNode> classes) throws VerificationException {
+        MethodNode methodNode = ClassMembers.of(classes, className).getMethod(methodName, methodDesc);
+
+        try {
+            InstructionEditScript.apply(methodNode, script);
+        } catch (IOException e) {
+            throw new VerificationException("Failed to patch " + className + "." + methodName + methodDesc, e);
+        }
+    }
+
+    @Override
+    public String getClassName() {
+        return className;
+    }
+
+    @Override
+    public String getMemberKey() {
+        return methodName + methodDesc;
+    }
+
+    @Override
+    public boolean canBeAppliedAtRuntime() {
+        return true;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+}
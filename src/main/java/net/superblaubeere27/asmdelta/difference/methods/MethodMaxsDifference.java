@@ -11,10 +11,14 @@
 package net.superblaubeere27.asmdelta.difference.methods;
 
 import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.ClassMembers;
 import net.superblaubeere27.asmdelta.difference.VerificationException;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceInput;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
 
+import java.io.IOException;
 import java.util.HashMap;
 
 public class MethodMaxsDifference extends AbstractDifference {
@@ -32,13 +36,22 @@ public class MethodMaxsDifference extends AbstractDifference {
         this.maxLocals = maxLocals;
     }
 
+    public static MethodMaxsDifference read(DifferenceInput in) throws IOException {
+        return new MethodMaxsDifference(in.readString(), in.readString(), in.readString(), in.readInt(), in.readInt());
+    }
+
+    @Override
+    public void write(DifferenceOutput out) {
+        out.writeString(className);
+        out.writeString(methodName);
+        out.writeString(methodDesc);
+        out.writeInt(maxStack);
+        out.writeInt(maxLocals);
+    }
+
     @Override
     public void apply(HashMap<String, ClassNode> classes) throws VerificationException {
-        MethodNode methodNode = verifyNotNull(verifyNotNull(classes.get(className), "Class wasn't found").methods, "Field wasn't found")
-                .stream()
-                .filter(m -> m.name.equals(methodName) && m.desc.equals(methodDesc))
-                .findFirst()
-                .orElseThrow(VerificationException::new);
+        MethodNode methodNode = ClassMembers.of(classes, className).getMethod(methodName, methodDesc);
 
         methodNode.maxStack = maxStack;
         methodNode.maxLocals = maxLocals;
@@ -49,6 +62,11 @@ public class MethodMaxsDifference extends AbstractDifference {
         return className;
     }
 
+    @Override
+    public String getMemberKey() {
+        return methodName + methodDesc;
+    }
+
     @Override
     public boolean canBeAppliedAtRuntime() {
         return true;
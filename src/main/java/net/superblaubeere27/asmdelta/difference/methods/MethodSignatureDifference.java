@@ -11,10 +11,14 @@
 package net.superblaubeere27.asmdelta.difference.methods;
 
 import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.ClassMembers;
 import net.superblaubeere27.asmdelta.difference.VerificationException;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceInput;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
 
+import java.io.IOException;
 import java.util.HashMap;
 
 public class MethodSignatureDifference extends AbstractDifference {
@@ -30,13 +34,21 @@ public class MethodSignatureDifference extends AbstractDifference {
         this.newSignature = newSignature;
     }
 
+    public static MethodSignatureDifference read(DifferenceInput in) throws IOException {
+        return new MethodSignatureDifference(in.readString(), in.readString(), in.readString(), in.readString());
+    }
+
+    @Override
+    public void write(DifferenceOutput out) {
+        out.writeString(className);
+        out.writeString(methodName);
+        out.writeString(methodDesc);
+        out.writeString(newSignature);
+    }
+
     @Override
     public void apply(HashMap<String, ClassNode> classes) throws VerificationException {
-        MethodNode methodNode = verifyNotNull(verifyNotNull(classes.get(className), "Class wasn't found").methods, "Field wasn't found")
-                .stream()
-                .filter(m -> m.name.equals(methodName) && m.desc.equals(methodDesc))
-                .findFirst()
-                .orElseThrow(VerificationException::new);
+        MethodNode methodNode = ClassMembers.of(classes, className).getMethod(methodName, methodDesc);
 
         methodNode.signature = newSignature;
     }
@@ -50,4 +62,9 @@ public class MethodSignatureDifference extends AbstractDifference {
     public String getClassName() {
         return className;
     }
+
+    @Override
+    public String getMemberKey() {
+        return methodName + methodDesc;
+    }
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.difference.methods;
+
+import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.ClassMembers;
+import net.superblaubeere27.asmdelta.difference.VerificationException;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceInput;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+
+/**
+ * Moves a method to another class (optionally renaming it), so its body doesn't have to be part of the patch. The
+ * other changes of the method are separate differences which target the new class and name.
+ */
+public class MoveMethodDifference extends AbstractDifference {
+    private String sourceClassName;
+    private String oldName;
+    private String className;
+    private String newName;
+    private String methodDesc;
+
+    public MoveMethodDifference(String sourceClassName, String oldName, String className, String newName, String methodDesc) {
+        this.sourceClassName = sourceClassName;
+        this.oldName = oldName;
+        this.className = className;
+        this.newName = newName;
+        this.methodDesc = methodDesc;
+    }
+
+    public static MoveMethodDifference read(DifferenceInput in) throws IOException {
+        return new MoveMethodDifference(in.readString(), in.readString(), in.readString(), in.readString(), in.readString());
+    }
+
+    @Override
+    public void write(DifferenceOutput out) {
+        out.writeString(sourceClassName);
+        out.writeString(oldName);
+        out.writeString(className);
+        out.writeString(newName);
+        out.writeString(methodDesc);
+    }
+
+    @Override
+    public void apply(HashMap<String, ClassNode> classes) throws VerificationException {
+        ClassMembers source = ClassMembers.of(classes, sourceClassName);
+        ClassMembers target = ClassMembers.of(classes, className);
+
+        MethodNode methodNode = source.getMethod(oldName, methodDesc);
+
+        if (target.findMethod(newName, methodDesc) != null) {
+            throw new VerificationException(className + "." + newName + methodDesc + " already exists");
+        }
+
+        source.removeMethod(methodNode);
+
+        methodNode.name = newName;
+        target.addMethod(methodNode);
+    }
+
+    @Override
+    public String getClassName() {
+        return className;
+    }
+
+    @Override
+    public String getMemberKey() {
+        return newName + methodDesc;
+    }
+
+    @Override
+    public Collection<String> getRelatedClassNames() {
+        return Collections.singletonList(sourceClassName);
+    }
+
+    @Override
+    protected int getPhase() {
+        return PHASE_RENAME_MEMBERS;
+    }
+
+    @Override
+    public boolean canBeAppliedAtRuntime() {
+        return false;
+    }
+
+    public String getSourceClassName() {
+        return sourceClassName;
+    }
+}
@@ -11,13 +11,14 @@
 package net.superblaubeere27.asmdelta.difference.methods;
 
 import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.ClassMembers;
 import net.superblaubeere27.asmdelta.difference.VerificationException;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceInput;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput;
 import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.tree.MethodNode;
 
+import java.io.IOException;
 import java.util.HashMap;
-import java.util.List;
-import java.util.stream.Collectors;
 
 public class RemoveMethodDifference extends AbstractDifference {
     private String className;
@@ -30,17 +31,20 @@ public class RemoveMethodDifference extends AbstractDifference {
         this.methodDesc = methodDesc;
     }
 
-    @Override
-    public void apply(HashMap<String, ClassNode> classes) throws VerificationException {
-        ClassNode classNode = classes.get(className);
-
-        List<MethodNode> methods = classNode.methods;
+    public static RemoveMethodDifference read(DifferenceInput in) throws IOException {
+        return new RemoveMethodDifference(in.readString(), in.readString(), in.readString());
+    }
 
-        if (methods == null) { // According to the documentation, methods might be null
-            throw new VerificationException("Class has no methods to remove");
-        }
+    @Override
+    public void write(DifferenceOutput out) {
+        out.writeString(className);
+        out.writeString(methodName);
+        out.writeString(methodDesc);
+    }
 
-        methods.removeAll(methods.stream().filter(method -> method.name.equals(methodName) && method.desc.equals(methodName)).collect(Collectors.toUnmodifiableList()));
+    @Override
+    public void apply(HashMap<String, ClassNode> classes) throws VerificationException {
+        ClassMembers.of(classes, className).removeMethods(methodName, methodDesc);
     }
 
     @Override
@@ -48,6 +52,11 @@ public class RemoveMethodDifference extends AbstractDifference {
         return className;
     }
 
+    @Override
+    public String getMemberKey() {
+        return methodName + methodDesc;
+    }
+
     @Override
     public boolean canBeAppliedAtRuntime() {
         return false;
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.difference.methods;
+
+import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.ClassMembers;
+import net.superblaubeere27.asmdelta.difference.VerificationException;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceInput;
+import net.superblaubeere27.asmdelta.utils.binary.DifferenceOutput;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Renames a method, the other changes of the method are separate differences which target the new name
+ */
+public class RenameMethodDifference extends AbstractDifference {
+    private String className;
+    private String oldName;
+    private String newName;
+    private String methodDesc;
+
+    public RenameMethodDifference(String className, String oldName, String newName, String methodDesc) {
+        this.className = className;
+        this.oldName = oldName;
+        this.newName = newName;
+        this.methodDesc = methodDesc;
+    }
+
+    public static RenameMethodDifference read(DifferenceInput in) throws IOException {
+        return new RenameMethodDifference(in.readString(), in.readString(), in.readString(), in.readString());
+    }
+
+    @Override
+    public void write(DifferenceOutput out) {
+        out.writeString(className);
+        out.writeString(oldName);
+        out.writeString(newName);
+        out.writeString(methodDesc);
+    }
+
+    @Override
+    public void apply(HashMap<String, ClassNode> classes) throws VerificationException {
+        ClassMembers members = ClassMembers.of(classes, className);
+
+        members.renameMethod(members.getMethod(oldName, methodDesc), newName);
+    }
+
+    @Override
+    public String getClassName() {
+        return className;
+    }
+
+    @Override
+    public String getMemberKey() {
+        return newName + methodDesc;
+    }
+
+    @Override
+    protected int getPhase() {
+        return PHASE_RENAME_MEMBERS;
+    }
+
+    @Override
+    public boolean canBeAppliedAtRuntime() {
+        return false;
+    }
+
+    public String getOldName() {
+        return oldName;
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.matching;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.tree.*;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Structural features of a class which survive renaming it and the classes it references.
+ * <p>
+ * Names of classes that may have been renamed are replaced by a placeholder before hashing, member names are ignored
+ * unless they belong to a class that wasn't renamed. Every feature is a 64-bit hash, grouped into member shapes
+ * (header, field and method descriptors), referenced strings and shingles of consecutive instructions. A MinHash
+ * signature over all of them allows finding similar classes without comparing every pair.
+ */
+public class ClassFingerprint {
+    static final int SIGNATURE_SIZE = 64;
+    private static final int SHINGLE_SIZE = 3;
+
+    private static final long TAG_HEADER = 1;
+    private static final long TAG_FIELD = 2;
+    private static final long TAG_METHOD = 3;
+    private static final long TAG_STRING = 4;
+    private static final long TAG_INSN = 5;
+
+    /**
+     * One seed per MinHash permutation
+     */
+    private static final long[] SEEDS = new long[SIGNATURE_SIZE];
+
+    static {
+        long seed = 0x2545F4914F6CDD1DL;
+
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            seed = mix(seed + 0x9E3779B97F4A7C15L);
+            SEEDS[i] = seed;
+        }
+    }
+
+    private static final Remapper IDENTITY = new Remapper() {
+    };
+
+    private final long[] shapes;
+    private final long[] strings;
+    private final long[] shingles;
+    private final long[] signature;
+
+    private ClassFingerprint(long[] shapes, long[] strings, long[] shingles) {
+        this.shapes = shapes;
+        this.strings = strings;
+        this.shingles = shingles;
+        this.signature = minHash(shapes, strings, shingles);
+    }
+
+    /**
+     * @param renamable The classes which may have another name on the other side
+     */
+    public static ClassFingerprint of(ClassNode classNode, Set<String> renamable) {
+        Remapper normalizer = new Remapper() {
+            @Override
+            public String map(String internalName) {
+                return renamable.contains(internalName) ? "?" : internalName;
+            }
+        };
+
+        FeatureSet shapes = new FeatureSet();
+        FeatureSet strings = new FeatureSet();
+        FeatureSet shingles = new FeatureSet();
+
+        long header = hash(TAG_HEADER, classNode.access & ~Opcodes.ACC_SUPER);
+
+        header = hash(header, classNode.superName == null ? "" : normalizer.map(classNode.superName));
+
+        for (String itf : classNode.interfaces) {
+            header = hash(header, normalizer.map(itf));
+        }
+
+        shapes.add(header);
+
+        for (FieldNode field : classNode.fields) {
+            shapes.add(hash(hash(TAG_FIELD, field.access), normalizer.mapDesc(field.desc)));
+
+            if (field.value instanceof String) {
+                strings.add(hash(TAG_STRING, (String) field.value));
+            }
+        }
+
+        for (MethodNode method : classNode.methods) {
+            long shape = hash(TAG_METHOD, method.access);
+
+            // Constructors and initializers keep their names through obfuscation
+            if (method.name.startsWith("<")) {
+                shape = hash(shape, method.name);
+            }
+
+            shapes.add(hash(shape, normalizer.mapMethodDesc(method.desc)));
+
+            addInstructionFeatures(method, normalizer, shingles, strings);
+        }
+
+        return new ClassFingerprint(shapes.toCountedArray(), strings.toSetArray(), shingles.toSetArray());
+    }
+
+    /**
+     * @return The sorted, distinct shingles of the instructions of a method, without normalizing any names
+     */
+    static long[] instructionShingles(MethodNode method) {
+        FeatureSet shingles = new FeatureSet();
+
+        addInstructionFeatures(method, IDENTITY, shingles, null);
+
+        return shingles.toSetArray();
+    }
+
+    private static void addInstructionFeatures(MethodNode method, Remapper normalizer, FeatureSet shingles, FeatureSet strings) {
+        long[] tokens = new long[Math.max(16, method.instructions.size())];
+        int tokenCount = 0;
+
+        for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (insn.getOpcode() == -1) { // Labels, frames and line numbers
+                continue;
+            }
+            if (strings != null && insn instanceof LdcInsnNode && ((LdcInsnNode) insn).cst instanceof String) {
+                strings.add(hash(TAG_STRING, (String) ((LdcInsnNode) insn).cst));
+            }
+
+            tokens[tokenCount++] = token(insn, normalizer);
+        }
+
+        for (int i = 0; i + SHINGLE_SIZE <= tokenCount || i == 0 && tokenCount > 0; i++) {
+            long shingle = TAG_INSN;
+
+            for (int j = i; j < Math.min(i + SHINGLE_SIZE, tokenCount); j++) {
+                shingle = mix(shingle * 31 + tokens[j]);
+            }
+
+            shingles.add(shingle);
+        }
+    }
+
+    private static long token(AbstractInsnNode insn, Remapper normalizer) {
+        long token = insn.getOpcode();
+
+        switch (insn.getType()) {
+            case AbstractInsnNode.INT_INSN:
+                return hash(token, ((IntInsnNode) insn).operand);
+            case AbstractInsnNode.TYPE_INSN:
+                return hash(token, normalizer.mapType(((TypeInsnNode) insn).desc));
+            case AbstractInsnNode.FIELD_INSN: {
+                FieldInsnNode fieldInsn = (FieldInsnNode) insn;
+                String owner = normalizer.mapType(fieldInsn.owner);
+
+                token = hash(hash(token, owner), normalizer.mapDesc(fieldInsn.desc));
+
+                return owner.equals(fieldInsn.owner) ? hash(token, fieldInsn.name) : token;
+            }
+            case AbstractInsnNode.METHOD_INSN: {
+                MethodInsnNode methodInsn = (MethodInsnNode) insn;
+                String owner = normalizer.mapType(methodInsn.owner);
+
+                token = hash(hash(token, owner), normalizer.mapMethodDesc(methodInsn.desc));
+
+                return owner.equals(methodInsn.owner) ? hash(token, methodInsn.name) : token;
+            }
+            case AbstractInsnNode.INVOKE_DYNAMIC_INSN:
+                return hash(token, normalizer.mapMethodDesc(((InvokeDynamicInsnNode) insn).desc));
+            case AbstractInsnNode.LDC_INSN: {
+                Object cst = ((LdcInsnNode) insn).cst;
+
+                if (cst instanceof Type) {
+                    return hash(token, normalizer.mapDesc(((Type) cst).getDescriptor()));
+                }
+
+                return cst instanceof String || cst instanceof Number ? hash(token, cst.toString()) : token;
+            }
+            case AbstractInsnNode.IINC_INSN:
+                return hash(token, ((IincInsnNode) insn).incr);
+            case AbstractInsnNode.MULTIANEWARRAY_INSN:
+                return hash(token, normalizer.mapDesc(((MultiANewArrayInsnNode) insn).desc));
+            default: // Local variable indices and jump targets move around with every edit
+                return token;
+        }
+    }
+
+    private static long[] minHash(long[]... featureSets) {
+        long[] signature = new long[SIGNATURE_SIZE];
+
+        Arrays.fill(signature, Long.MAX_VALUE);
+
+        for (long[] features : featureSets) {
+            for (long feature : features) {
+                for (int i = 0; i < SIGNATURE_SIZE; i++) {
+                    long value = mix(feature ^ SEEDS[i]);
+
+                    if (value < signature[i]) {
+                        signature[i] = value;
+                    }
+                }
+            }
+        }
+
+        return signature;
+    }
+
+    /**
+     * @return A weighted Jaccard similarity of the feature groups from 0 to 1. Groups which are empty on both sides
+     * don't count.
+     */
+    public double similarity(ClassFingerprint other) {
+        double score = 0;
+        double weight = 0;
+
+        if (shapes.length + other.shapes.length > 0) {
+            score += 2 * jaccard(shapes, other.shapes);
+            weight += 2;
+        }
+        if (shingles.length + other.shingles.length > 0) {
+            score += 2 * jaccard(shingles, other.shingles);
+            weight += 2;
+        }
+        if (strings.length + other.strings.length > 0) {
+            score += jaccard(strings, other.strings);
+            weight += 1;
+        }
+
+        return weight == 0 ? 1 : score / weight;
+    }
+
+    /**
+     * @param sortedA Sorted and distinct
+     * @param sortedB Sorted and distinct
+     */
+    static double jaccard(long[] sortedA, long[] sortedB) {
+        int shared = 0;
+
+        for (int i = 0, j = 0; i < sortedA.length && j < sortedB.length; ) {
+            if (sortedA[i] == sortedB[j]) {
+                shared++;
+                i++;
+                j++;
+            } else if (sortedA[i] < sortedB[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+
+        return (double) shared / (sortedA.length + sortedB.length - shared);
+    }
+
+    long[] getSignature() {
+        return signature;
+    }
+
+    private static long hash(long seed, long value) {
+        return mix(seed * 0x9E3779B97F4A7C15L + value);
+    }
+
+    private static long hash(long seed, String value) {
+        long h = mix(seed) ^ value.length();
+
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * 0x100000001B3L;
+        }
+
+        return mix(h);
+    }
+
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+
+        return h;
+    }
+
+    private static class FeatureSet {
+        private long[] features = new long[16];
+        private int size;
+
+        void add(long feature) {
+            if (size == features.length) {
+                features = Arrays.copyOf(features, size * 2);
+            }
+
+            features[size++] = feature;
+        }
+
+        long[] toSetArray() {
+            long[] sorted = Arrays.copyOf(features, size);
+
+            Arrays.sort(sorted);
+
+            int distinct = 0;
+
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[distinct++] = sorted[i];
+                }
+            }
+
+            return Arrays.copyOf(sorted, distinct);
+        }
+
+        /**
+         * Keeps duplicates apart by numbering them, so a class with two <code>()V</code> methods doesn't look like
+         * one with a single one
+         */
+        long[] toCountedArray() {
+            long[] sorted = Arrays.copyOf(features, size);
+
+            Arrays.sort(sorted);
+
+            int occurrence = 0;
+            long[] counted = new long[sorted.length];
+
+            for (int i = 0; i < sorted.length; i++) {
+                occurrence = i > 0 && sorted[i] == sorted[i - 1] ? occurrence + 1 : 0;
+                counted[i] = mix(sorted[i] + occurrence);
+            }
+
+            Arrays.sort(counted);
+
+            return counted;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.matching;
+
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * A class of the original jar and the class of the new jar it most likely became
+ */
+public class ClassMatch {
+    private final ClassNode originalClass;
+    private final ClassNode newClass;
+    private final double similarity;
+
+    public ClassMatch(ClassNode originalClass, ClassNode newClass, double similarity) {
+        this.originalClass = originalClass;
+        this.newClass = newClass;
+        this.similarity = similarity;
+    }
+
+    public ClassNode getOriginalClass() {
+        return originalClass;
+    }
+
+    public ClassNode getNewClass() {
+        return newClass;
+    }
+
+    public double getSimilarity() {
+        return similarity;
+    }
+}
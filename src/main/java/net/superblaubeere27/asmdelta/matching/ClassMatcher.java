@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.matching;
+
+import net.superblaubeere27.asmdelta.utils.TaskExecutor;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+/**
+ * Pairs up the classes of two jars which are most likely the same class, no matter whether they kept their name.
+ * <p>
+ * Candidates are found with locality-sensitive hashing on the MinHash signatures of their {@link ClassFingerprint}s,
+ * small inputs just compare every pair. The candidates are then scored by their actual similarity and assigned
+ * greedily, best score first.
+ */
+public class ClassMatcher {
+    /**
+     * Pairs below this similarity are rather a removed and an unrelated added class
+     */
+    private static final double MIN_SIMILARITY = 0.5;
+    /**
+     * Breaks near-ties in favor of keeping a class at its name
+     */
+    private static final double SAME_NAME_BONUS = 0.05;
+    /**
+     * Up to this many pairs are compared without looking for candidates first
+     */
+    private static final long MAX_EXHAUSTIVE_PAIRS = 250_000;
+    private static final int BAND_ROWS = 4;
+    /**
+     * Buckets with more classes than this carry too little information to be worth comparing every class in them
+     */
+    private static final int MAX_BUCKET_SIZE = 64;
+
+    public static List<ClassMatch> match(TaskExecutor executor, List<ClassNode> originalClasses, List<ClassNode> newClasses) throws InterruptedException {
+        if (originalClasses.isEmpty() || newClasses.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // Deterministic input order, the classes are collected by several threads
+        List<ClassNode> originals = new ArrayList<>(originalClasses);
+        List<ClassNode> updated = new ArrayList<>(newClasses);
+
+        originals.sort(Comparator.comparing(classNode -> classNode.name));
+        updated.sort(Comparator.comparing(classNode -> classNode.name));
+
+        ClassFingerprint[] originalFingerprints = fingerprints(executor, originals);
+        ClassFingerprint[] newFingerprints = fingerprints(executor, updated);
+
+        boolean exhaustive = (long) originals.size() * updated.size() <= MAX_EXHAUSTIVE_PAIRS;
+        Map<Long, List<Integer>> buckets = exhaustive ? null : bucketize(originalFingerprints);
+
+        Queue<List<Candidate>> candidateLists = new ConcurrentLinkedQueue<>();
+        List<Integer> newIndices = new ArrayList<>(updated.size());
+
+        for (int i = 0; i < updated.size(); i++) {
+            newIndices.add(i);
+        }
+
+        executor.forEachChunk(newIndices, executor.chunkSize(newIndices.size()), chunk -> {
+            List<Candidate> candidates = new ArrayList<>();
+            BitSet compared = new BitSet(originals.size());
+
+            for (int newIndex : chunk) {
+                ClassFingerprint fingerprint = newFingerprints[newIndex];
+
+                compared.clear();
+
+                if (exhaustive) {
+                    compared.set(0, originals.size());
+                } else {
+                    long[] signature = fingerprint.getSignature();
+
+                    for (int band = 0; band < signature.length / BAND_ROWS; band++) {
+                        List<Integer> bucket = buckets.get(bandKey(signature, band));
+
+                        if (bucket != null && bucket.size() <= MAX_BUCKET_SIZE) {
+                            bucket.forEach(compared::set);
+                        }
+                    }
+                }
+
+                for (int originalIndex = compared.nextSetBit(0); originalIndex >= 0; originalIndex = compared.nextSetBit(originalIndex + 1)) {
+                    double similarity = originalFingerprints[originalIndex].similarity(fingerprint);
+
+                    if (similarity >= MIN_SIMILARITY) {
+                        double score = originals.get(originalIndex).name.equals(updated.get(newIndex).name) ? similarity + SAME_NAME_BONUS : similarity;
+
+                        candidates.add(new Candidate(originalIndex, newIndex, similarity, score));
+                    }
+                }
+            }
+
+            candidateLists.add(candidates);
+        });
+
+        List<Candidate> candidates = candidateLists.stream().flatMap(List::stream).collect(Collectors.toList());
+
+        candidates.sort(Comparator.comparingDouble((Candidate candidate) -> -candidate.score)
+                .thenComparingInt(candidate -> candidate.originalIndex)
+                .thenComparingInt(candidate -> candidate.newIndex));
+
+        boolean[] originalMatched = new boolean[originals.size()];
+        boolean[] newMatched = new boolean[updated.size()];
+        List<ClassMatch> matches = new ArrayList<>();
+
+        for (Candidate candidate : candidates) {
+            if (!originalMatched[candidate.originalIndex] && !newMatched[candidate.newIndex]) {
+                originalMatched[candidate.originalIndex] = true;
+                newMatched[candidate.newIndex] = true;
+
+                matches.add(new ClassMatch(originals.get(candidate.originalIndex), updated.get(candidate.newIndex), candidate.similarity));
+            }
+        }
+
+        matches.sort(Comparator.comparing(match -> match.getNewClass().name));
+
+        return matches;
+    }
+
+    private static ClassFingerprint[] fingerprints(TaskExecutor executor, List<ClassNode> classes) throws InterruptedException {
+        Set<String> names = classes.stream().map(classNode -> classNode.name).collect(Collectors.toSet());
+        ClassFingerprint[] fingerprints = new ClassFingerprint[classes.size()];
+        List<Integer> indices = new ArrayList<>(classes.size());
+
+        for (int i = 0; i < classes.size(); i++) {
+            indices.add(i);
+        }
+
+        executor.forEachChunk(indices, executor.chunkSize(indices.size()), chunk -> {
+            for (int index : chunk) {
+                fingerprints[index] = ClassFingerprint.of(classes.get(index), names);
+            }
+        });
+
+        return fingerprints;
+    }
+
+    private static Map<Long, List<Integer>> bucketize(ClassFingerprint[] fingerprints) {
+        Map<Long, List<Integer>> buckets = new HashMap<>();
+
+        for (int i = 0; i < fingerprints.length; i++) {
+            long[] signature = fingerprints[i].getSignature();
+
+            for (int band = 0; band < signature.length / BAND_ROWS; band++) {
+                buckets.computeIfAbsent(bandKey(signature, band), key -> new ArrayList<>()).add(i);
+            }
+        }
+
+        return buckets;
+    }
+
+    private static long bandKey(long[] signature, int band) {
+        long key = band;
+
+        for (int row = band * BAND_ROWS; row < (band + 1) * BAND_ROWS; row++) {
+            key = ClassFingerprint.mix(key * 31 + signature[row]);
+        }
+
+        return key;
+    }
+
+    private static class Candidate {
+        private final int originalIndex;
+        private final int newIndex;
+        private final double similarity;
+        private final double score;
+
+        Candidate(int originalIndex, int newIndex, double similarity, double score) {
+            this.originalIndex = originalIndex;
+            this.newIndex = newIndex;
+            this.similarity = similarity;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.matching;
+
+import net.superblaubeere27.asmdelta.utils.MethodBodyHash;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Pairs up the removed and added members of a class which are most likely the same member under another name.
+ * <p>
+ * Only members with the same descriptor are paired. Methods with the same body are paired first, the remaining ones
+ * if their instructions are similar enough. Fields are paired if their access and constant value are the same.
+ */
+public class MemberMatcher {
+    /**
+     * Methods with less similar instructions are rather a removed and an unrelated added method
+     */
+    private static final double MIN_METHOD_SIMILARITY = 0.7;
+
+    /**
+     * @param bodyHash The hash of a method's body, usually cached by the caller since it is needed again later
+     * @return The matched methods, removed method mapped to added method
+     */
+    public static Map<MethodNode, MethodNode> matchMethods(List<MethodNode> removedMethods, List<MethodNode> addedMethods, Function<MethodNode, MethodBodyHash> bodyHash) {
+        Map<MethodNode, MethodNode> matches = new LinkedHashMap<>();
+
+        if (removedMethods.isEmpty() || addedMethods.isEmpty()) {
+            return matches;
+        }
+
+        Set<MethodNode> matchedAdded = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<String, List<MethodNode>> addedByBody = new HashMap<>();
+
+        for (MethodNode added : addedMethods) {
+            addedByBody.computeIfAbsent(added.desc + bodyHash.apply(added), key -> new ArrayList<>()).add(added);
+        }
+
+        List<MethodNode> unmatchedRemoved = new ArrayList<>();
+
+        for (MethodNode removed : removedMethods) {
+            List<MethodNode> sameBody = addedByBody.get(removed.desc + bodyHash.apply(removed));
+            MethodNode match = sameBody == null ? null : sameBody.stream().filter(added -> !matchedAdded.contains(added) && added.access == removed.access).findFirst().orElse(null);
+
+            if (match == null && sameBody != null) {
+                match = sameBody.stream().filter(added -> !matchedAdded.contains(added)).findFirst().orElse(null);
+            }
+
+            if (match != null) {
+                matches.put(removed, match);
+                matchedAdded.add(match);
+            } else {
+                unmatchedRemoved.add(removed);
+            }
+        }
+
+        List<Candidate<MethodNode>> candidates = new ArrayList<>();
+        Map<MethodNode, long[]> shingles = new IdentityHashMap<>();
+
+        for (int i = 0; i < unmatchedRemoved.size(); i++) {
+            MethodNode removed = unmatchedRemoved.get(i);
+
+            for (int j = 0; j < addedMethods.size(); j++) {
+                MethodNode added = addedMethods.get(j);
+
+                if (matchedAdded.contains(added) || !removed.desc.equals(added.desc)) {
+                    continue;
+                }
+
+                long[] removedShingles = shingles.computeIfAbsent(removed, ClassFingerprint::instructionShingles);
+                long[] addedShingles = shingles.computeIfAbsent(added, ClassFingerprint::instructionShingles);
+
+                if (removedShingles.length == 0 || addedShingles.length == 0) {
+                    continue;
+                }
+
+                double similarity = ClassFingerprint.jaccard(removedShingles, addedShingles);
+
+                if (similarity >= MIN_METHOD_SIMILARITY) {
+                    candidates.add(new Candidate<>(removed, added, i, j, similarity));
+                }
+            }
+        }
+
+        assign(candidates, matches);
+
+        return matches;
+    }
+
+    /**
+     * @return The matched fields, removed field mapped to added field
+     */
+    public static Map<FieldNode, FieldNode> matchFields(List<FieldNode> removedFields, List<FieldNode> addedFields) {
+        Map<FieldNode, FieldNode> matches = new LinkedHashMap<>();
+        List<Candidate<FieldNode>> candidates = new ArrayList<>();
+
+        for (int i = 0; i < removedFields.size(); i++) {
+            FieldNode removed = removedFields.get(i);
+
+            for (int j = 0; j < addedFields.size(); j++) {
+                FieldNode added = addedFields.get(j);
+
+                if (removed.desc.equals(added.desc) && removed.access == added.access && Objects.equals(removed.value, added.value)) {
+                    candidates.add(new Candidate<>(removed, added, i, j, Objects.equals(removed.signature, added.signature) ? 1 : 0.5));
+                }
+            }
+        }
+
+        assign(candidates, matches);
+
+        return matches;
+    }
+
+    /**
+     * Assigns the candidates greedily, best first. Ties go to the pair that is closest to the declaration order.
+     */
+    private static <T> void assign(List<Candidate<T>> candidates, Map<T, T> matches) {
+        candidates.sort(Comparator.comparingDouble((Candidate<T> candidate) -> -candidate.similarity)
+                .thenComparingInt(candidate -> Math.abs(candidate.removedIndex - candidate.addedIndex))
+                .thenComparingInt(candidate -> candidate.removedIndex)
+                .thenComparingInt(candidate -> candidate.addedIndex));
+
+        Set<T> matched = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        matched.addAll(matches.keySet());
+        matched.addAll(matches.values());
+
+        for (Candidate<T> candidate : candidates) {
+            if (!matched.contains(candidate.removed) && !matched.contains(candidate.added)) {
+                matched.add(candidate.removed);
+                matched.add(candidate.added);
+                matches.put(candidate.removed, candidate.added);
+            }
+        }
+    }
+
+    private static class Candidate<T> {
+        private final T removed;
+        private final T added;
+        private final int removedIndex;
+        private final int addedIndex;
+        private final double similarity;
+
+        Candidate(T removed, T added, int removedIndex, int addedIndex, double similarity) {
+            this.removed = removed;
+            this.added = added;
+            this.removedIndex = removedIndex;
+            this.addedIndex = addedIndex;
+            this.similarity = similarity;
+        }
+    }
+}
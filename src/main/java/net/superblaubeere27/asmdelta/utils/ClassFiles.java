@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.utils;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Converts tree nodes to class files and back. Members are stored in a class that contains nothing else, so
+ * everything ASM can write for them (annotations, attributes, ...) survives.
+ */
+public class ClassFiles {
+    private static final String CONTAINER_NAME = "asdf";
+    private static final String ANNOTATION_DEFAULT_NAME = "value";
+
+    public static byte[] toBytes(ClassNode classNode) {
+        ClassWriter classWriter = new ClassWriter(0);
+
+        classNode.accept(classWriter);
+
+        return classWriter.toByteArray();
+    }
+
+    public static ClassNode toClassNode(byte[] bytes) throws IOException {
+        ClassNode classNode = new ClassNode();
+
+        try {
+            new ClassReader(bytes).accept(classNode, 0);
+        } catch (RuntimeException e) { // ClassReader doesn't verify its input
+            throw new IOException("Malformed class file", e);
+        }
+
+        return classNode;
+    }
+
+    public static byte[] methodToBytes(MethodNode methodNode) {
+        ClassNode container = createContainer();
+
+        methodNode.accept(container);
+
+        return toBytes(container);
+    }
+
+    public static MethodNode toMethodNode(byte[] bytes) throws IOException {
+        return single(toClassNode(bytes).methods, "method");
+    }
+
+    public static byte[] fieldToBytes(FieldNode fieldNode) {
+        ClassNode container = createContainer();
+
+        fieldNode.accept(container);
+
+        return toBytes(container);
+    }
+
+    public static FieldNode toFieldNode(byte[] bytes) throws IOException {
+        return single(toClassNode(bytes).fields, "field");
+    }
+
+    /**
+     * Stores an annotation value (a primitive wrapper, {@link String}, {@link org.objectweb.asm.Type}, enum, nested
+     * annotation or a list of them) as the default value of an annotation method.
+     */
+    public static byte[] annotationValueToBytes(Object value) {
+        ClassNode container = createContainer();
+        MethodNode methodNode = new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, ANNOTATION_DEFAULT_NAME, "()V", null, null);
+
+        methodNode.annotationDefault = value;
+        methodNode.accept(container);
+
+        return toBytes(container);
+    }
+
+    public static Object toAnnotationValue(byte[] bytes) throws IOException {
+        return single(toClassNode(bytes).methods, "method").annotationDefault;
+    }
+
+    /**
+     * @return A deep copy of the field, the given field is only read
+     */
+    public static FieldNode copy(FieldNode fieldNode) {
+        ClassNode container = createContainer();
+
+        fieldNode.accept(container);
+
+        return container.fields.get(0);
+    }
+
+    /**
+     * @return A deep copy of an annotation value (see {@link #annotationValueToBytes(Object)}), the given value is only
+     * read
+     */
+    public static Object copyAnnotationValue(Object value) {
+        if (value == null) {
+            return null;
+        }
+
+        AnnotationNode source = new AnnotationNode(CONTAINER_NAME);
+        AnnotationNode copy = new AnnotationNode(CONTAINER_NAME);
+
+        source.values = Arrays.asList(ANNOTATION_DEFAULT_NAME, value);
+        source.accept(copy);
+
+        return copy.values.get(1);
+    }
+
+    private static ClassNode createContainer() {
+        ClassNode classNode = new ClassNode();
+
+        classNode.version = Opcodes.V1_8;
+        classNode.access = Opcodes.ACC_PRIVATE;
+        classNode.name = CONTAINER_NAME;
+        classNode.signature = null;
+        classNode.superName = "java/lang/Object";
+        classNode.interfaces = Collections.emptyList();
+
+        return classNode;
+    }
+
+    private static <T> T single(List<T> members, String kind) throws IOException {
+        if (members == null || members.size() != 1) {
+            throw new IOException("Expected exactly one " + kind);
+        }
+
+        return members.get(0);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package net.superblaubeere27.asmdelta.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads data written by a {@link DataWriter}
+ */
+public class DataReader {
+    private final byte[] data;
+    private final int limit;
+    private int position;
+
+    public DataReader(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    public DataReader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    private void require(int length) throws EOFException {
+        if (length < 0 || limit - position < length) {
+            throw new EOFException("Unexpected end of data");
+        }
+    }
+
+    public int readByte() throws IOException {
+        require(1);
+        return data[position++] & 0xFF;
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public int readVarInt() throws IOException {
+        int value = 0;
+
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+
+            value |= (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed varint");
+    }
+
+    public int readSignedVarInt() throws IOException {
+        int value = readVarInt();
+
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public long readVarLong() throws IOException {
+        long value = 0;
+
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = readByte();
+
+            value |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed varlong");
+    }
+
+    public int readInt() throws IOException {
+        require(4);
+
+        int value = (data[position] & 0xFF) << 24
+                | (data[position + 1] & 0xFF) << 16
+                | (data[position + 2] & 0xFF) << 8
+                | data[position + 3] & 0xFF;
+
+        position += 4;
+
+        return value;
+    }
+
+    public long readLong() throws IOException {
+        return (long) readInt() << 32 | readInt() & 0xFFFFFFFFL;
+    }
+
+    public String readString() throws IOException {
+        int length = readVarInt() - 1;
+
+        if (length == -1) {
+            return null;
+        }
+
+        require(length);
+
+        String value = new String(data, position, length, StandardCharsets.UTF_8);
+
+        position += length;
+
+        return value;
+    }
+
+    public byte[] readByteArray() throws IOException {
+        return readBytes(readVarInt());
+    }
+
+    public byte[] readBytes(int length) throws IOException {
+        require(length);
+
+        byte[] bytes = new byte[length];
+
+        System.arraycopy(data, position, bytes, 0, length);
+        position += length;
+
+        return bytes;
+    }
+
+    /**
+     * @return A reader for the next <code>length</code> bytes, this reader skips them
+     */
+    public DataReader slice(int length) throws IOException {
+        require(length);
+
+        DataReader slice = new DataReader(data, position, length);
+
+        position += length;
+
+        return slice;
+    }
+
+    public int position() {
+        return position;
+    }
+
+    public int remaining() {
+        return limit - position;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package net.superblaubeere27.asmdelta.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A growable byte array with helpers for compact binary encodings (unsigned LEB128 varints, nullable strings).
+ *
+ * @see DataReader
+ */
+public class DataWriter {
+    private byte[] data;
+    private int size;
+
+    public DataWriter() {
+        this(256);
+    }
+
+    public DataWriter(int initialCapacity) {
+        this.data = new byte[Math.max(16, initialCapacity)];
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > data.length) {
+            data = Arrays.copyOf(data, Math.max(size + additional, data.length * 2));
+        }
+    }
+
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        data[size++] = (byte) value;
+    }
+
+    public void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * Writes an unsigned varint, negative values take 5 bytes
+     */
+    public void writeVarInt(int value) {
+        ensureCapacity(5);
+
+        while ((value & ~0x7F) != 0) {
+            data[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        data[size++] = (byte) value;
+    }
+
+    /**
+     * Writes a signed value as zigzag varint, so small negative values stay small
+     */
+    public void writeSignedVarInt(int value) {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    public void writeVarLong(long value) {
+        ensureCapacity(10);
+
+        while ((value & ~0x7FL) != 0) {
+            data[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        data[size++] = (byte) value;
+    }
+
+    public void writeInt(int value) {
+        ensureCapacity(4);
+        data[size++] = (byte) (value >>> 24);
+        data[size++] = (byte) (value >>> 16);
+        data[size++] = (byte) (value >>> 8);
+        data[size++] = (byte) value;
+    }
+
+    public void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    /**
+     * Writes a UTF-8 string prefixed by its length + 1, <code>null</code> is encoded as length 0
+     */
+    public void writeString(String value) {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        writeVarInt(bytes.length + 1);
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes a byte array prefixed by its length
+     */
+    public void writeByteArray(byte[] bytes) {
+        writeVarInt(bytes.length);
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    public void writeBytes(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, data, size, length);
+        size += length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Discards everything after the first <code>size</code> bytes
+     */
+    public void truncate(int size) {
+        if (size < 0 || size > this.size) {
+            throw new IllegalArgumentException("Invalid size " + size);
+        }
+
+        this.size = size;
+    }
+
+    /**
+     * @return The internal buffer, only the first {@link #size()} bytes are valid
+     */
+    public byte[] getBuffer() {
+        return data;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
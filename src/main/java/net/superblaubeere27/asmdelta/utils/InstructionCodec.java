@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package net.superblaubeere27.asmdelta.utils;
+
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Encodes single instruction nodes into a compact binary form. Unlike a class file, the encoding doesn't need a
+ * complete method: labels are written as ordinals which are resolved by the caller, so any slice of an instruction
+ * list can be encoded.
+ */
+public class InstructionCodec {
+    private static final int CONSTANT_INTEGER = 0;
+    private static final int CONSTANT_FLOAT = 1;
+    private static final int CONSTANT_LONG = 2;
+    private static final int CONSTANT_DOUBLE = 3;
+    private static final int CONSTANT_STRING = 4;
+    private static final int CONSTANT_TYPE = 5;
+    private static final int CONSTANT_HANDLE = 6;
+    private static final int CONSTANT_DYNAMIC = 7;
+
+    private static final int FRAME_PRIMITIVE = 0;
+    private static final int FRAME_TYPE = 1;
+    private static final int FRAME_UNINITIALIZED = 2;
+    private static final int FRAME_NULL = 3;
+
+    /**
+     * @param labels Maps every label the instruction references to its ordinal
+     */
+    public static void write(DataWriter out, AbstractInsnNode insn, ToIntFunction<LabelNode> labels) {
+        int type = insn.getType();
+
+        out.writeByte(type);
+
+        switch (type) {
+            case AbstractInsnNode.INSN:
+                out.writeByte(insn.getOpcode());
+                break;
+            case AbstractInsnNode.INT_INSN:
+                out.writeByte(insn.getOpcode());
+                out.writeSignedVarInt(((IntInsnNode) insn).operand);
+                break;
+            case AbstractInsnNode.VAR_INSN:
+                out.writeByte(insn.getOpcode());
+                out.writeVarInt(((VarInsnNode) insn).var);
+                break;
+            case AbstractInsnNode.TYPE_INSN:
+                out.writeByte(insn.getOpcode());
+                out.writeString(((TypeInsnNode) insn).desc);
+                break;
+            case AbstractInsnNode.FIELD_INSN: {
+                FieldInsnNode fieldInsn = (FieldInsnNode) insn;
+
+                out.writeByte(insn.getOpcode());
+                out.writeString(fieldInsn.owner);
+                out.writeString(fieldInsn.name);
+                out.writeString(fieldInsn.desc);
+                break;
+            }
+            case AbstractInsnNode.METHOD_INSN: {
+                MethodInsnNode methodInsn = (MethodInsnNode) insn;
+
+                out.writeByte(insn.getOpcode());
+                out.writeString(methodInsn.owner);
+                out.writeString(methodInsn.name);
+                out.writeString(methodInsn.desc);
+                out.writeBoolean(methodInsn.itf);
+                break;
+            }
+            case AbstractInsnNode.INVOKE_DYNAMIC_INSN: {
+                InvokeDynamicInsnNode indy = (InvokeDynamicInsnNode) insn;
+
+                out.writeString(indy.name);
+                out.writeString(indy.desc);
+                writeHandle(out, indy.bsm);
+                writeConstants(out, indy.bsmArgs);
+                break;
+            }
+            case AbstractInsnNode.JUMP_INSN:
+                out.writeByte(insn.getOpcode());
+                out.writeVarInt(labels.applyAsInt(((JumpInsnNode) insn).label));
+                break;
+            case AbstractInsnNode.LABEL:
+                break;
+            case AbstractInsnNode.LDC_INSN:
+                writeConstant(out, ((LdcInsnNode) insn).cst);
+                break;
+            case AbstractInsnNode.IINC_INSN:
+                out.writeVarInt(((IincInsnNode) insn).var);
+                out.writeSignedVarInt(((IincInsnNode) insn).incr);
+                break;
+            case AbstractInsnNode.TABLESWITCH_INSN: {
+                TableSwitchInsnNode tableSwitch = (TableSwitchInsnNode) insn;
+
+                out.writeSignedVarInt(tableSwitch.min);
+                out.writeSignedVarInt(tableSwitch.max);
+                out.writeVarInt(labels.applyAsInt(tableSwitch.dflt));
+                writeLabels(out, tableSwitch.labels, labels);
+                break;
+            }
+            case AbstractInsnNode.LOOKUPSWITCH_INSN: {
+                LookupSwitchInsnNode lookupSwitch = (LookupSwitchInsnNode) insn;
+
+                out.writeVarInt(labels.applyAsInt(lookupSwitch.dflt));
+                out.writeVarInt(lookupSwitch.keys.size());
+
+                for (Integer key : lookupSwitch.keys) {
+                    out.writeSignedVarInt(key);
+                }
+
+                writeLabels(out, lookupSwitch.labels, labels);
+                break;
+            }
+            case AbstractInsnNode.MULTIANEWARRAY_INSN:
+                out.writeString(((MultiANewArrayInsnNode) insn).desc);
+                out.writeVarInt(((MultiANewArrayInsnNode) insn).dims);
+                break;
+            case AbstractInsnNode.FRAME: {
+                FrameNode frame = (FrameNode) insn;
+
+                out.writeSignedVarInt(frame.type);
+                writeFrameElements(out, frame.local, labels);
+                writeFrameElements(out, frame.stack, labels);
+                break;
+            }
+            case AbstractInsnNode.LINE:
+                out.writeVarInt(((LineNumberNode) insn).line);
+                out.writeVarInt(labels.applyAsInt(((LineNumberNode) insn).start));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown instruction type " + type);
+        }
+    }
+
+    /**
+     * @param labels Resolves label ordinals. {@link AbstractInsnNode#LABEL} nodes themselves are always read as new
+     *               {@link LabelNode}s.
+     */
+    public static AbstractInsnNode read(DataReader in, IntFunction<LabelNode> labels) throws IOException {
+        int type = in.readByte();
+
+        switch (type) {
+            case AbstractInsnNode.INSN:
+                return new InsnNode(in.readByte());
+            case AbstractInsnNode.INT_INSN:
+                return new IntInsnNode(in.readByte(), in.readSignedVarInt());
+            case AbstractInsnNode.VAR_INSN:
+                return new VarInsnNode(in.readByte(), in.readVarInt());
+            case AbstractInsnNode.TYPE_INSN:
+                return new TypeInsnNode(in.readByte(), in.readString());
+            case AbstractInsnNode.FIELD_INSN:
+                return new FieldInsnNode(in.readByte(), in.readString(), in.readString(), in.readString());
+            case AbstractInsnNode.METHOD_INSN:
+                return new MethodInsnNode(in.readByte(), in.readString(), in.readString(), in.readString(), in.readBoolean());
+            case AbstractInsnNode.INVOKE_DYNAMIC_INSN:
+                return new InvokeDynamicInsnNode(in.readString(), in.readString(), readHandle(in), readConstants(in));
+            case AbstractInsnNode.JUMP_INSN:
+                return new JumpInsnNode(in.readByte(), labels.apply(in.readVarInt()));
+            case AbstractInsnNode.LABEL:
+                return new LabelNode();
+            case AbstractInsnNode.LDC_INSN:
+                return new LdcInsnNode(readConstant(in));
+            case AbstractInsnNode.IINC_INSN:
+                return new IincInsnNode(in.readVarInt(), in.readSignedVarInt());
+            case AbstractInsnNode.TABLESWITCH_INSN: {
+                int min = in.readSignedVarInt();
+                int max = in.readSignedVarInt();
+                LabelNode dflt = labels.apply(in.readVarInt());
+
+                return new TableSwitchInsnNode(min, max, dflt, readLabels(in, labels));
+            }
+            case AbstractInsnNode.LOOKUPSWITCH_INSN: {
+                LabelNode dflt = labels.apply(in.readVarInt());
+                int[] keys = new int[in.readVarInt()];
+
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = in.readSignedVarInt();
+                }
+
+                return new LookupSwitchInsnNode(dflt, keys, readLabels(in, labels));
+            }
+            case AbstractInsnNode.MULTIANEWARRAY_INSN:
+                return new MultiANewArrayInsnNode(in.readString(), in.readVarInt());
+            case AbstractInsnNode.FRAME: {
+                int frameType = in.readSignedVarInt();
+                List<Object> local = readFrameElements(in, labels);
+                List<Object> stack = readFrameElements(in, labels);
+
+                // F_SAME doesn't touch the lists, the constructor would copy them from arrays depending on the type
+                FrameNode frame = new FrameNode(Opcodes.F_SAME, 0, null, 0, null);
+
+                frame.type = frameType;
+                frame.local = local;
+                frame.stack = stack;
+
+                return frame;
+            }
+            case AbstractInsnNode.LINE:
+                return new LineNumberNode(in.readVarInt(), labels.apply(in.readVarInt()));
+            default:
+                throw new IOException("Unknown instruction type " + type);
+        }
+    }
+
+    /**
+     * Writes a constant as used by {@link LdcInsnNode}, {@link InvokeDynamicInsnNode} and {@link FieldNode#value}
+     */
+    public static void writeConstant(DataWriter out, Object cst) {
+        if (cst instanceof Integer) {
+            out.writeByte(CONSTANT_INTEGER);
+            out.writeSignedVarInt((Integer) cst);
+        } else if (cst instanceof Float) {
+            out.writeByte(CONSTANT_FLOAT);
+            out.writeInt(Float.floatToRawIntBits((Float) cst));
+        } else if (cst instanceof Long) {
+            out.writeByte(CONSTANT_LONG);
+            out.writeLong((Long) cst);
+        } else if (cst instanceof Double) {
+            out.writeByte(CONSTANT_DOUBLE);
+            out.writeLong(Double.doubleToRawLongBits((Double) cst));
+        } else if (cst instanceof String) {
+            out.writeByte(CONSTANT_STRING);
+            out.writeString((String) cst);
+        } else if (cst instanceof Type) {
+            out.writeByte(CONSTANT_TYPE);
+            out.writeString(((Type) cst).getDescriptor());
+        } else if (cst instanceof Handle) {
+            out.writeByte(CONSTANT_HANDLE);
+            writeHandle(out, (Handle) cst);
+        } else if (cst instanceof ConstantDynamic) {
+            ConstantDynamic condy = (ConstantDynamic) cst;
+            Object[] arguments = new Object[condy.getBootstrapMethodArgumentCount()];
+
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = condy.getBootstrapMethodArgument(i);
+            }
+
+            out.writeByte(CONSTANT_DYNAMIC);
+            out.writeString(condy.getName());
+            out.writeString(condy.getDescriptor());
+            writeHandle(out, condy.getBootstrapMethod());
+            writeConstants(out, arguments);
+        } else {
+            throw new IllegalArgumentException("Unsupported constant " + cst);
+        }
+    }
+
+    public static Object readConstant(DataReader in) throws IOException {
+        int tag = in.readByte();
+
+        switch (tag) {
+            case CONSTANT_INTEGER:
+                return in.readSignedVarInt();
+            case CONSTANT_FLOAT:
+                return Float.intBitsToFloat(in.readInt());
+            case CONSTANT_LONG:
+                return in.readLong();
+            case CONSTANT_DOUBLE:
+                return Double.longBitsToDouble(in.readLong());
+            case CONSTANT_STRING:
+                return in.readString();
+            case CONSTANT_TYPE:
+                return Type.getType(in.readString());
+            case CONSTANT_HANDLE:
+                return readHandle(in);
+            case CONSTANT_DYNAMIC:
+                return new ConstantDynamic(in.readString(), in.readString(), readHandle(in), readConstants(in));
+            default:
+                throw new IOException("Unknown constant tag " + tag);
+        }
+    }
+
+    private static void writeConstants(DataWriter out, Object[] constants) {
+        out.writeVarInt(constants.length);
+
+        for (Object constant : constants) {
+            writeConstant(out, constant);
+        }
+    }
+
+    private static Object[] readConstants(DataReader in) throws IOException {
+        Object[] constants = new Object[in.readVarInt()];
+
+        for (int i = 0; i < constants.length; i++) {
+            constants[i] = readConstant(in);
+        }
+
+        return constants;
+    }
+
+    private static void writeHandle(DataWriter out, Handle handle) {
+        out.writeByte(handle.getTag());
+        out.writeString(handle.getOwner());
+        out.writeString(handle.getName());
+        out.writeString(handle.getDesc());
+        out.writeBoolean(handle.isInterface());
+    }
+
+    private static Handle readHandle(DataReader in) throws IOException {
+        return new Handle(in.readByte(), in.readString(), in.readString(), in.readString(), in.readBoolean());
+    }
+
+    private static void writeLabels(DataWriter out, List<LabelNode> labelNodes, ToIntFunction<LabelNode> labels) {
+        out.writeVarInt(labelNodes.size());
+
+        for (LabelNode labelNode : labelNodes) {
+            out.writeVarInt(labels.applyAsInt(labelNode));
+        }
+    }
+
+    private static LabelNode[] readLabels(DataReader in, IntFunction<LabelNode> labels) throws IOException {
+        LabelNode[] labelNodes = new LabelNode[in.readVarInt()];
+
+        for (int i = 0; i < labelNodes.length; i++) {
+            labelNodes[i] = labels.apply(in.readVarInt());
+        }
+
+        return labelNodes;
+    }
+
+    private static void writeFrameElements(DataWriter out, List<Object> elements, ToIntFunction<LabelNode> labels) {
+        if (elements == null) {
+            out.writeVarInt(0);
+            return;
+        }
+
+        out.writeVarInt(elements.size() + 1);
+
+        for (Object element : elements) {
+            if (element instanceof Integer) { // Opcodes.TOP, Opcodes.INTEGER, ...
+                out.writeByte(FRAME_PRIMITIVE);
+                out.writeByte((Integer) element);
+            } else if (element instanceof String) {
+                out.writeByte(FRAME_TYPE);
+                out.writeString((String) element);
+            } else if (element instanceof LabelNode) { // The NEW instruction of an uninitialized value
+                out.writeByte(FRAME_UNINITIALIZED);
+                out.writeVarInt(labels.applyAsInt((LabelNode) element));
+            } else if (element == null) { // F_CHOP frames only store the amount of removed locals
+                out.writeByte(FRAME_NULL);
+            } else {
+                throw new IllegalArgumentException("Unsupported frame element " + element);
+            }
+        }
+    }
+
+    private static List<Object> readFrameElements(DataReader in, IntFunction<LabelNode> labels) throws IOException {
+        int size = in.readVarInt() - 1;
+
+        if (size == -1) {
+            return null;
+        }
+
+        List<Object> elements = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            int tag = in.readByte();
+
+            switch (tag) {
+                case FRAME_PRIMITIVE:
+                    int primitive = in.readByte();
+
+                    if (primitive > Opcodes.UNINITIALIZED_THIS.intValue()) {
+                        throw new IOException("Unknown frame element " + primitive);
+                    }
+
+                    elements.add(primitive);
+                    break;
+                case FRAME_TYPE:
+                    elements.add(in.readString());
+                    break;
+                case FRAME_UNINITIALIZED:
+                    elements.add(labels.apply(in.readVarInt()));
+                    break;
+                case FRAME_NULL:
+                    elements.add(null);
+                    break;
+                default:
+                    throw new IOException("Unknown frame element tag " + tag);
+            }
+        }
+
+        return elements;
+    }
+
+    /**
+     * Adds every label <code>insn</code> references to <code>out</code>, in the order they are encoded
+     */
+    public static void collectLabels(AbstractInsnNode insn, List<LabelNode> out) {
+        switch (insn.getType()) {
+            case AbstractInsnNode.JUMP_INSN:
+                out.add(((JumpInsnNode) insn).label);
+                break;
+            case AbstractInsnNode.TABLESWITCH_INSN:
+                out.add(((TableSwitchInsnNode) insn).dflt);
+                out.addAll(((TableSwitchInsnNode) insn).labels);
+                break;
+            case AbstractInsnNode.LOOKUPSWITCH_INSN:
+                out.add(((LookupSwitchInsnNode) insn).dflt);
+                out.addAll(((LookupSwitchInsnNode) insn).labels);
+                break;
+            case AbstractInsnNode.LINE:
+                out.add(((LineNumberNode) insn).start);
+                break;
+            case AbstractInsnNode.FRAME:
+                collectFrameLabels(((FrameNode) insn).local, out);
+                collectFrameLabels(((FrameNode) insn).stack, out);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void collectFrameLabels(List<Object> elements, List<LabelNode> out) {
+        if (elements == null) return;
+
+        for (Object element : elements) {
+            if (element instanceof LabelNode) {
+                out.add((LabelNode) element);
+            }
+        }
+    }
+}
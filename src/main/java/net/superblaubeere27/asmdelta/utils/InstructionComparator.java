@@ -8,177 +8,150 @@
  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
+
 package net.superblaubeere27.asmdelta.utils;
 
 import org.objectweb.asm.tree.*;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Objects;
-import java.util.stream.Collectors;
 
+/**
+ * Compares two method bodies instruction by instruction, labels are compared by their index in the instruction list.
+ * <p>
+ * This is the exact equality that {@link MethodBodyHash} stands in for when method bodies are compared by their hash.
+ */
 public class InstructionComparator {
+    /**
+     * Reused by every comparison on the same thread, so comparing doesn't allocate once the table is large enough
+     */
+    private static final ThreadLocal<LabelIndexTable> LABEL_INDICES = ThreadLocal.withInitial(LabelIndexTable::new);
 
     public static boolean isSame(InsnList insnListA, InsnList insnListB, List<TryCatchBlockNode> tryCatchA, List<TryCatchBlockNode> tryCatchB) {
         if (insnListA.size() != insnListB.size() || tryCatchA.size() != tryCatchB.size()) {
             return false;
         }
 
-        HashMap<LabelNode, Integer> labelIndexMap = calulateLabelIdecies(insnListA);
-        labelIndexMap.putAll(calulateLabelIdecies(insnListB));
+        LabelIndexTable labelIndices = LABEL_INDICES.get();
 
-        var abstractInsnNodesA = insnListA.toArray();
-        var abstractInsnNodesB = insnListB.toArray();
+        labelIndices.reset(LabelIndexTable.countLabels(insnListA) + LabelIndexTable.countLabels(insnListB));
+        labelIndices.putAll(insnListA);
+        labelIndices.putAll(insnListB);
 
-        for (int i = 0; i < abstractInsnNodesA.length; i++) {
-            AbstractInsnNode a = abstractInsnNodesA[i];
-            AbstractInsnNode b = abstractInsnNodesB[i];
+        try {
+            AbstractInsnNode a = insnListA.getFirst();
+            AbstractInsnNode b = insnListB.getFirst();
 
-            if (!isSame(labelIndexMap, a, b))
-                return false;
-        }
+            for (; a != null; a = a.getNext(), b = b.getNext()) {
+                if (!isSame(labelIndices, a, b))
+                    return false;
+            }
 
-        for (int i = 0; i < tryCatchA.size(); i++) {
-            TryCatchBlockNode a = tryCatchA.get(i);
-            TryCatchBlockNode b = tryCatchB.get(i);
+            for (int i = 0; i < tryCatchA.size(); i++) {
+                TryCatchBlockNode tryCatchBlockA = tryCatchA.get(i);
+                TryCatchBlockNode tryCatchBlockB = tryCatchB.get(i);
 
-            if (!Objects.equals(a.type, b.type)
-                    || !labelIndexMap.get(a.start).equals(labelIndexMap.get(b.start))
-                    || !labelIndexMap.get(a.end).equals(labelIndexMap.get(b.end))
-                    || !labelIndexMap.get(a.handler).equals(labelIndexMap.get(b.handler))) {
-                return false;
+                if (!Objects.equals(tryCatchBlockA.type, tryCatchBlockB.type)
+                        || !labelIndices.isSame(tryCatchBlockA.start, tryCatchBlockB.start)
+                        || !labelIndices.isSame(tryCatchBlockA.end, tryCatchBlockB.end)
+                        || !labelIndices.isSame(tryCatchBlockA.handler, tryCatchBlockB.handler)) {
+                    return false;
+                }
             }
-        }
 
-        return true;
+            return true;
+        } finally {
+            labelIndices.clear();
+        }
     }
 
-    private static boolean isSame(HashMap<LabelNode, Integer> labelIndexMap, AbstractInsnNode a, AbstractInsnNode b) {
+    private static boolean isSame(LabelIndexTable labelIndices, AbstractInsnNode a, AbstractInsnNode b) {
         if (a.getOpcode() != b.getOpcode() || a.getType() != b.getType() || a.getClass() != b.getClass()) {
             return false;
         }
 
-        if (a instanceof FieldInsnNode) {
-            FieldInsnNode fieldInsnNodeA = (FieldInsnNode) a;
-            FieldInsnNode fieldInsnNodeB = (FieldInsnNode) b;
-
-            return fieldInsnNodeA.owner.equals(fieldInsnNodeB.owner)
-                    && fieldInsnNodeA.name.equals(fieldInsnNodeB.name)
-                    && fieldInsnNodeA.desc.equals(fieldInsnNodeB.desc);
-        }
-        if (a instanceof MethodInsnNode) {
-            MethodInsnNode methodInsnNodeA = (MethodInsnNode) a;
-            MethodInsnNode methodInsnNodeB = (MethodInsnNode) b;
-
-            return methodInsnNodeA.owner.equals(methodInsnNodeB.owner)
-                    && methodInsnNodeA.name.equals(methodInsnNodeB.name)
-                    && methodInsnNodeA.desc.equals(methodInsnNodeB.desc)
-                    && methodInsnNodeA.itf == methodInsnNodeB.itf;
-        }
-        if (a instanceof TableSwitchInsnNode) {
-            TableSwitchInsnNode switchA = (TableSwitchInsnNode) a;
-            TableSwitchInsnNode switchB = (TableSwitchInsnNode) b;
+        switch (a.getType()) {
+            case AbstractInsnNode.FIELD_INSN: {
+                FieldInsnNode fieldInsnNodeA = (FieldInsnNode) a;
+                FieldInsnNode fieldInsnNodeB = (FieldInsnNode) b;
 
-            if (!labelIndexMap.get(switchA.dflt).equals(labelIndexMap.get(switchB.dflt))) {
-                return false;
+                return fieldInsnNodeA.owner.equals(fieldInsnNodeB.owner)
+                        && fieldInsnNodeA.name.equals(fieldInsnNodeB.name)
+                        && fieldInsnNodeA.desc.equals(fieldInsnNodeB.desc);
             }
-
-            if (switchA.min != switchB.min || switchA.max != switchB.max) {
-                return false;
+            case AbstractInsnNode.METHOD_INSN: {
+                MethodInsnNode methodInsnNodeA = (MethodInsnNode) a;
+                MethodInsnNode methodInsnNodeB = (MethodInsnNode) b;
+
+                return methodInsnNodeA.owner.equals(methodInsnNodeB.owner)
+                        && methodInsnNodeA.name.equals(methodInsnNodeB.name)
+                        && methodInsnNodeA.desc.equals(methodInsnNodeB.desc)
+                        && methodInsnNodeA.itf == methodInsnNodeB.itf;
             }
+            case AbstractInsnNode.TABLESWITCH_INSN: {
+                TableSwitchInsnNode switchA = (TableSwitchInsnNode) a;
+                TableSwitchInsnNode switchB = (TableSwitchInsnNode) b;
+
+                return switchA.min == switchB.min
+                        && switchA.max == switchB.max
+                        && labelIndices.isSame(switchA.dflt, switchB.dflt)
+                        && labelIndices.isSame(switchA.labels, switchB.labels);
+            }
+            case AbstractInsnNode.LOOKUPSWITCH_INSN: {
+                LookupSwitchInsnNode switchA = (LookupSwitchInsnNode) a;
+                LookupSwitchInsnNode switchB = (LookupSwitchInsnNode) b;
 
-            return switchA.labels
-                    .stream()
-                    .map(labelIndexMap::get)
-                    .collect(Collectors.toUnmodifiableList())
-                    .equals(switchB.labels
-                            .stream()
-                            .map(labelIndexMap::get)
-                            .collect(Collectors.toUnmodifiableList()));
-
-
-        }
-        if (a instanceof LineNumberNode) return true;
-        if (a instanceof IincInsnNode) {
-            IincInsnNode incA = (IincInsnNode) a;
-            IincInsnNode incB = (IincInsnNode) b;
-
-            return incA.incr == incB.incr && incA.var == incB.var;
-        }
-        if (a instanceof IntInsnNode) {
-            return ((IntInsnNode) a).operand == ((IntInsnNode) b).operand;
-        }
-        if (a instanceof LabelNode) {
-            return true;
-        }
-        if (a instanceof MultiANewArrayInsnNode) {
-            MultiANewArrayInsnNode incA = (MultiANewArrayInsnNode) a;
-            MultiANewArrayInsnNode incB = (MultiANewArrayInsnNode) b;
-
-            return incA.desc.equals(incB.desc) && incA.dims == incB.dims;
-        }
-        if (a instanceof LdcInsnNode) {
-            return ((LdcInsnNode) a).cst.equals(((LdcInsnNode) b).cst);
-        }
-        if (a instanceof TypeInsnNode) {
-            return ((TypeInsnNode) a).desc.equals(((TypeInsnNode) b).desc);
-        }
-        if (a instanceof VarInsnNode) {
-            return ((VarInsnNode) a).var == ((VarInsnNode) b).var;
-        }
-        if (a instanceof InvokeDynamicInsnNode) {
-            InvokeDynamicInsnNode incA = (InvokeDynamicInsnNode) a;
-            InvokeDynamicInsnNode incB = (InvokeDynamicInsnNode) b;
-
-            return incA.bsm.equals(incB.bsm) && Arrays.equals(incA.bsmArgs, incB.bsmArgs) && incA.desc.equals(incB.desc) && incA.name.equals(incB.name);
-        }
-        if (a instanceof FrameNode) {
-            return true; // Assuming true since if all instructions are the same, the frame can't be different
-        }
-        if (a instanceof JumpInsnNode) {
-            JumpInsnNode incA = (JumpInsnNode) a;
-            JumpInsnNode incB = (JumpInsnNode) b;
-
-            return labelIndexMap.get(incA.label).equals(labelIndexMap.get(incB.label));
-        }
-        if (a instanceof LookupSwitchInsnNode) {
-            LookupSwitchInsnNode switchA = (LookupSwitchInsnNode) a;
-            LookupSwitchInsnNode switchB = (LookupSwitchInsnNode) b;
-
-            if (!labelIndexMap.get(switchA.dflt).equals(labelIndexMap.get(switchB.dflt))) {
-                return false;
+                return labelIndices.isSame(switchA.dflt, switchB.dflt)
+                        && isSame(switchA.keys, switchB.keys)
+                        && labelIndices.isSame(switchA.labels, switchB.labels);
             }
+            case AbstractInsnNode.IINC_INSN: {
+                IincInsnNode incA = (IincInsnNode) a;
+                IincInsnNode incB = (IincInsnNode) b;
 
-            if (!switchA.keys.equals(switchB.keys)) {
-                return false;
+                return incA.incr == incB.incr && incA.var == incB.var;
             }
+            case AbstractInsnNode.INT_INSN:
+                return ((IntInsnNode) a).operand == ((IntInsnNode) b).operand;
+            case AbstractInsnNode.MULTIANEWARRAY_INSN: {
+                MultiANewArrayInsnNode multiANewArrayA = (MultiANewArrayInsnNode) a;
+                MultiANewArrayInsnNode multiANewArrayB = (MultiANewArrayInsnNode) b;
 
-            return switchA.labels
-                    .stream()
-                    .map(labelIndexMap::get)
-                    .collect(Collectors.toUnmodifiableList())
-                    .equals(switchB.labels
-                            .stream()
-                            .map(labelIndexMap::get)
-                            .collect(Collectors.toUnmodifiableList()));
+                return multiANewArrayA.desc.equals(multiANewArrayB.desc) && multiANewArrayA.dims == multiANewArrayB.dims;
+            }
+            case AbstractInsnNode.LDC_INSN:
+                return ((LdcInsnNode) a).cst.equals(((LdcInsnNode) b).cst);
+            case AbstractInsnNode.TYPE_INSN:
+                return ((TypeInsnNode) a).desc.equals(((TypeInsnNode) b).desc);
+            case AbstractInsnNode.VAR_INSN:
+                return ((VarInsnNode) a).var == ((VarInsnNode) b).var;
+            case AbstractInsnNode.INVOKE_DYNAMIC_INSN: {
+                InvokeDynamicInsnNode indyA = (InvokeDynamicInsnNode) a;
+                InvokeDynamicInsnNode indyB = (InvokeDynamicInsnNode) b;
+
+                return indyA.bsm.equals(indyB.bsm) && Arrays.equals(indyA.bsmArgs, indyB.bsmArgs) && indyA.desc.equals(indyB.desc) && indyA.name.equals(indyB.name);
+            }
+            case AbstractInsnNode.JUMP_INSN:
+                return labelIndices.isSame(((JumpInsnNode) a).label, ((JumpInsnNode) b).label);
+            case AbstractInsnNode.FRAME:
+                return true; // Assuming true since if all instructions are the same, the frame can't be different
+            default: // INSN, LABEL, LINE
+                return true;
         }
-
-        return true;
     }
 
-    private static HashMap<LabelNode, Integer> calulateLabelIdecies(InsnList insnListA) {
-        HashMap<LabelNode, Integer> ret = new HashMap<>();
-
-        var abstractInsnNodes = insnListA.toArray();
+    private static boolean isSame(List<Integer> keysA, List<Integer> keysB) {
+        if (keysA.size() != keysB.size()) {
+            return false;
+        }
 
-        for (int i = 0; i < abstractInsnNodes.length; i++) {
-            if (abstractInsnNodes[i] instanceof LabelNode) {
-                ret.put((LabelNode) abstractInsnNodes[i], i);
+        for (int i = 0; i < keysA.size(); i++) {
+            if (keysA.get(i).intValue() != keysB.get(i).intValue()) {
+                return false;
             }
         }
 
-        return ret;
+        return true;
     }
-
 }
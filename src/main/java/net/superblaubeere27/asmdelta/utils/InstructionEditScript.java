@@ -0,0 +1,449 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package net.superblaubeere27.asmdelta.utils;
+
+import org.objectweb.asm.tree.*;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Computes and applies edit scripts which transform the instructions of a method into the instructions of a newer
+ * version of it.
+ * <p>
+ * The instructions are compared with their labels replaced by placeholders, the alignment is computed with Myers'
+ * O(ND) difference algorithm. Instructions are only kept if the labels they reference are kept too, so kept
+ * instructions never need to be touched when the script is applied. Inserted instructions and try-catch blocks
+ * reference labels by their ordinal in the new method.
+ * <p>
+ * Format: <code>oldSize oldChecksum hunkCount (keep delete insert insn*)* tryCatchCount (start end handler type)*</code>
+ */
+public class InstructionEditScript {
+    /**
+     * Methods which differ in more instructions than this are replaced as a whole
+     */
+    private static final int MAX_EDIT_DISTANCE = 1000;
+    private static final int MASKED_LABEL = 0;
+
+    /**
+     * @return The script or <code>null</code> if it wouldn't be smaller than replacing the whole method
+     */
+    public static byte[] create(MethodNode oldMethod, MethodNode newMethod) {
+        AbstractInsnNode[] oldInsns = oldMethod.instructions.toArray();
+        AbstractInsnNode[] newInsns = newMethod.instructions.toArray();
+
+        Shape oldShape = new Shape(oldInsns);
+        Shape newShape = new Shape(newInsns);
+
+        int[] matches = align(oldShape, newShape);
+
+        if (matches == null) {
+            return null;
+        }
+
+        unmatchInconsistentLabels(oldMethod.instructions, newMethod.instructions, oldInsns, newInsns, matches);
+
+        DataWriter out = new DataWriter();
+        LabelOrdinals newLabels = new LabelOrdinals(newInsns);
+
+        out.writeVarInt(oldInsns.length);
+        out.writeInt((int) oldShape.checksum());
+
+        writeHunks(out, oldInsns.length, newInsns, matches, newLabels);
+        writeTryCatchBlocks(out, newMethod.tryCatchBlocks, newLabels);
+
+        if (out.size() >= fullSize(newInsns, newMethod.tryCatchBlocks, newLabels)) {
+            return null;
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Applies a script to a method which must have the exact instructions the script was created from
+     *
+     * @throws IOException If the script is malformed or doesn't match the method
+     */
+    public static void apply(MethodNode method, byte[] script) throws IOException {
+        DataReader in = new DataReader(script);
+        AbstractInsnNode[] oldInsns = method.instructions.toArray();
+
+        if (in.readVarInt() != oldInsns.length || in.readInt() != (int) new Shape(oldInsns).checksum()) {
+            throw new IOException("The method doesn't match the script");
+        }
+
+        List<AbstractInsnNode> sequence = new ArrayList<>(oldInsns.length);
+        Set<AbstractInsnNode> inserted = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<Integer, LabelNode> placeholders = new HashMap<>();
+
+        int oldIndex = 0;
+        int hunkCount = in.readVarInt();
+
+        for (int i = 0; i < hunkCount; i++) {
+            int keep = in.readVarInt();
+            int delete = in.readVarInt();
+            int insert = in.readVarInt();
+
+            if (keep < 0 || delete < 0 || oldIndex + keep + delete > oldInsns.length || insert < 0) {
+                throw new IOException("Invalid hunk");
+            }
+
+            sequence.addAll(Arrays.asList(oldInsns).subList(oldIndex, oldIndex + keep));
+            oldIndex += keep + delete;
+
+            for (int j = 0; j < insert; j++) {
+                AbstractInsnNode insn = InstructionCodec.read(in, ordinal -> placeholders.computeIfAbsent(ordinal, k -> new LabelNode()));
+
+                sequence.add(insn);
+                inserted.add(insn);
+            }
+        }
+
+        sequence.addAll(Arrays.asList(oldInsns).subList(oldIndex, oldInsns.length));
+
+        List<LabelNode> labels = new ArrayList<>();
+
+        for (AbstractInsnNode insn : sequence) {
+            if (insn instanceof LabelNode) {
+                labels.add((LabelNode) insn);
+            }
+        }
+
+        Map<LabelNode, LabelNode> labelMap = new HashMap<>();
+
+        for (Map.Entry<Integer, LabelNode> entry : placeholders.entrySet()) {
+            labelMap.put(entry.getValue(), resolve(labels, entry.getKey()));
+        }
+
+        List<TryCatchBlockNode> tryCatchBlocks = new ArrayList<>();
+        int tryCatchCount = in.readVarInt();
+
+        for (int i = 0; i < tryCatchCount; i++) {
+            tryCatchBlocks.add(new TryCatchBlockNode(resolve(labels, in.readVarInt()), resolve(labels, in.readVarInt()), resolve(labels, in.readVarInt()), in.readString()));
+        }
+
+        if (in.remaining() != 0) {
+            throw new IOException("Trailing data after script");
+        }
+
+        // InsnList.clear() doesn't unlink the nodes, the kept ones have to be removed one by one before they are
+        // added again
+        for (AbstractInsnNode insn : oldInsns) {
+            method.instructions.remove(insn);
+        }
+
+        for (AbstractInsnNode insn : sequence) {
+            if (!labelMap.isEmpty() && referencesLabels(insn) && inserted.contains(insn)) {
+                insn = insn.clone(labelMap);
+            }
+
+            method.instructions.add(insn);
+        }
+
+        method.tryCatchBlocks = tryCatchBlocks;
+    }
+
+    private static boolean referencesLabels(AbstractInsnNode insn) {
+        switch (insn.getType()) {
+            case AbstractInsnNode.JUMP_INSN:
+            case AbstractInsnNode.TABLESWITCH_INSN:
+            case AbstractInsnNode.LOOKUPSWITCH_INSN:
+            case AbstractInsnNode.LINE:
+            case AbstractInsnNode.FRAME:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static LabelNode resolve(List<LabelNode> labels, int ordinal) throws IOException {
+        if (ordinal < 0 || ordinal >= labels.size()) {
+            throw new IOException("Invalid label ordinal " + ordinal);
+        }
+
+        return labels.get(ordinal);
+    }
+
+    /**
+     * @return For every old instruction the index of the new instruction it is kept as or <code>-1</code> if it is
+     * deleted, <code>null</code> if the edit distance exceeds {@link #MAX_EDIT_DISTANCE}
+     */
+    private static int[] align(Shape a, Shape b) {
+        int n = a.size();
+        int m = b.size();
+
+        int[] matches = new int[n];
+
+        Arrays.fill(matches, -1);
+
+        int prefix = 0;
+
+        while (prefix < n && prefix < m && a.equals(prefix, b, prefix)) {
+            matches[prefix] = prefix;
+            prefix++;
+        }
+
+        int suffix = 0;
+
+        while (suffix < n - prefix && suffix < m - prefix && a.equals(n - 1 - suffix, b, m - 1 - suffix)) {
+            matches[n - 1 - suffix] = m - 1 - suffix;
+            suffix++;
+        }
+
+        int aStart = prefix;
+        int bStart = prefix;
+        int aLength = n - prefix - suffix;
+        int bLength = m - prefix - suffix;
+
+        int max = Math.min(aLength + bLength, MAX_EDIT_DISTANCE);
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        List<int[]> trace = new ArrayList<>();
+
+        for (int d = 0; d <= max; d++) {
+            // Only the diagonals the backtracking of this step looks at
+            trace.add(Arrays.copyOfRange(v, offset - d, offset + d + 1));
+
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+
+                if (k == -d || k != d && v[offset + k - 1] < v[offset + k + 1]) {
+                    x = v[offset + k + 1];
+                } else {
+                    x = v[offset + k - 1] + 1;
+                }
+
+                int y = x - k;
+
+                while (x < aLength && y < bLength && a.equals(aStart + x, b, bStart + y)) {
+                    x++;
+                    y++;
+                }
+
+                v[offset + k] = x;
+
+                if (x >= aLength && y >= bLength) {
+                    backtrack(trace, aLength, bLength, d, aStart, bStart, matches);
+                    return matches;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static void backtrack(List<int[]> trace, int x, int y, int d, int aStart, int bStart, int[] matches) {
+        for (; d > 0; d--) {
+            int[] v = trace.get(d);
+            int k = x - y;
+            int previousK = k == -d || k != d && v[d + k - 1] < v[d + k + 1] ? k + 1 : k - 1;
+            int previousX = v[d + previousK];
+            int previousY = previousX - previousK;
+
+            while (x > previousX && y > previousY) {
+                x--;
+                y--;
+                matches[aStart + x] = bStart + y;
+            }
+
+            x = previousX;
+            y = previousY;
+        }
+
+        while (x > 0 && y > 0) {
+            x--;
+            y--;
+            matches[aStart + x] = bStart + y;
+        }
+    }
+
+    /**
+     * Instructions that are only equal because their labels were masked are replaced instead of kept
+     */
+    private static void unmatchInconsistentLabels(InsnList oldList, InsnList newList, AbstractInsnNode[] oldInsns, AbstractInsnNode[] newInsns, int[] matches) {
+        List<LabelNode> oldLabels = new ArrayList<>();
+        List<LabelNode> newLabels = new ArrayList<>();
+
+        for (int i = 0; i < oldInsns.length; i++) {
+            if (matches[i] == -1) {
+                continue;
+            }
+
+            oldLabels.clear();
+            newLabels.clear();
+
+            InstructionCodec.collectLabels(oldInsns[i], oldLabels);
+            InstructionCodec.collectLabels(newInsns[matches[i]], newLabels);
+
+            for (int j = 0; j < oldLabels.size(); j++) {
+                if (matches[oldList.indexOf(oldLabels.get(j))] != newList.indexOf(newLabels.get(j))) {
+                    matches[i] = -1;
+                    break;
+                }
+            }
+        }
+    }
+
+    private static void writeHunks(DataWriter out, int oldSize, AbstractInsnNode[] newInsns, int[] matches, LabelOrdinals newLabels) {
+        DataWriter hunks = new DataWriter();
+        int hunkCount = 0;
+
+        int oldIndex = 0;
+        int newIndex = 0;
+
+        while (oldIndex < oldSize || newIndex < newInsns.length) {
+            int keep = 0;
+
+            while (oldIndex < oldSize && matches[oldIndex] == newIndex) {
+                keep++;
+                oldIndex++;
+                newIndex++;
+            }
+
+            int delete = 0;
+
+            while (oldIndex < oldSize && matches[oldIndex] == -1) {
+                delete++;
+                oldIndex++;
+            }
+
+            int insertEnd = oldIndex < oldSize ? matches[oldIndex] : newInsns.length;
+
+            if (delete == 0 && insertEnd == newIndex) {
+                continue;
+            }
+
+            hunks.writeVarInt(keep);
+            hunks.writeVarInt(delete);
+            hunks.writeVarInt(insertEnd - newIndex);
+
+            for (; newIndex < insertEnd; newIndex++) {
+                InstructionCodec.write(hunks, newInsns[newIndex], newLabels::get);
+            }
+
+            hunkCount++;
+        }
+
+        out.writeVarInt(hunkCount);
+        out.writeBytes(hunks.getBuffer(), 0, hunks.size());
+    }
+
+    private static void writeTryCatchBlocks(DataWriter out, List<TryCatchBlockNode> tryCatchBlocks, LabelOrdinals labels) {
+        out.writeVarInt(tryCatchBlocks.size());
+
+        for (TryCatchBlockNode tryCatchBlock : tryCatchBlocks) {
+            out.writeVarInt(labels.get(tryCatchBlock.start));
+            out.writeVarInt(labels.get(tryCatchBlock.end));
+            out.writeVarInt(labels.get(tryCatchBlock.handler));
+            out.writeString(tryCatchBlock.type);
+        }
+    }
+
+    private static int fullSize(AbstractInsnNode[] insns, List<TryCatchBlockNode> tryCatchBlocks, LabelOrdinals labels) {
+        DataWriter out = new DataWriter();
+
+        for (AbstractInsnNode insn : insns) {
+            InstructionCodec.write(out, insn, labels::get);
+        }
+
+        writeTryCatchBlocks(out, tryCatchBlocks, labels);
+
+        return out.size();
+    }
+
+    /**
+     * The label-masked encoding of every instruction of a method
+     */
+    private static class Shape {
+        private final DataWriter encoded = new DataWriter();
+        private final int[] offsets;
+        private final int[] hashes;
+
+        Shape(AbstractInsnNode[] insns) {
+            offsets = new int[insns.length + 1];
+            hashes = new int[insns.length];
+
+            for (int i = 0; i < insns.length; i++) {
+                offsets[i] = encoded.size();
+
+                InstructionCodec.write(encoded, insns[i], label -> MASKED_LABEL);
+
+                int hash = 1;
+
+                for (int j = offsets[i]; j < encoded.size(); j++) {
+                    hash = 31 * hash + encoded.getBuffer()[j];
+                }
+
+                hashes[i] = hash;
+            }
+
+            offsets[insns.length] = encoded.size();
+        }
+
+        int size() {
+            return hashes.length;
+        }
+
+        boolean equals(int index, Shape other, int otherIndex) {
+            if (hashes[index] != other.hashes[otherIndex]) {
+                return false;
+            }
+
+            int length = offsets[index + 1] - offsets[index];
+
+            if (length != other.offsets[otherIndex + 1] - other.offsets[otherIndex]) {
+                return false;
+            }
+
+            byte[] buffer = encoded.getBuffer();
+            byte[] otherBuffer = other.encoded.getBuffer();
+
+            for (int i = 0; i < length; i++) {
+                if (buffer[offsets[index] + i] != otherBuffer[other.offsets[otherIndex] + i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        long checksum() {
+            CRC32 crc = new CRC32();
+
+            crc.update(encoded.getBuffer(), 0, encoded.size());
+
+            return crc.getValue();
+        }
+    }
+
+    private static class LabelOrdinals {
+        private final Map<LabelNode, Integer> ordinals = new HashMap<>();
+
+        LabelOrdinals(AbstractInsnNode[] insns) {
+            for (AbstractInsnNode insn : insns) {
+                if (insn instanceof LabelNode) {
+                    ordinals.put((LabelNode) insn, ordinals.size());
+                }
+            }
+        }
+
+        int get(LabelNode label) {
+            Integer ordinal = ordinals.get(label);
+
+            if (ordinal == null) {
+                throw new IllegalArgumentException("Label is not part of the method");
+            }
+
+            return ordinal;
+        }
+    }
+}
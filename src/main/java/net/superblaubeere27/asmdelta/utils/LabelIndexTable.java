@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.utils;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.LabelNode;
+
+import java.util.List;
+
+/**
+ * An identity hash table (open addressing, linear probing) from labels to their index in their instruction list. It is
+ * reused for every method on a thread and has to be cleared after each one.
+ */
+class LabelIndexTable {
+    /**
+     * Large enough for almost every method, a larger table is only kept until it is cleared
+     */
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private LabelNode[] keys = new LabelNode[DEFAULT_CAPACITY];
+    private int[] indices = new int[DEFAULT_CAPACITY];
+    /**
+     * The slots that are in use, so clearing only touches them instead of the whole table
+     */
+    private int[] usedSlots = new int[DEFAULT_CAPACITY / 2];
+    private int mask = keys.length - 1;
+    private int size;
+
+    static int countLabels(InsnList insnList) {
+        int count = 0;
+
+        for (AbstractInsnNode insn = insnList.getFirst(); insn != null; insn = insn.getNext()) {
+            if (insn instanceof LabelNode) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Makes sure <code>labelCount</code> labels fit into the table while it is at most half full
+     */
+    void reset(int labelCount) {
+        if (labelCount * 2 > keys.length) {
+            resize(Integer.highestOneBit(labelCount * 2 - 1) << 1);
+        }
+    }
+
+    private void resize(int capacity) {
+        keys = new LabelNode[capacity];
+        indices = new int[capacity];
+        usedSlots = new int[capacity / 2];
+        mask = capacity - 1;
+    }
+
+    void putAll(InsnList insnList) {
+        int index = 0;
+
+        for (AbstractInsnNode insn = insnList.getFirst(); insn != null; insn = insn.getNext(), index++) {
+            if (insn instanceof LabelNode) {
+                int slot = slot((LabelNode) insn);
+
+                if (keys[slot] == null) {
+                    usedSlots[size++] = slot;
+                }
+
+                keys[slot] = (LabelNode) insn;
+                indices[slot] = index;
+            }
+        }
+    }
+
+    private int slot(LabelNode label) {
+        int slot = System.identityHashCode(label) & mask;
+
+        while (keys[slot] != null && keys[slot] != label) {
+            slot = slot + 1 & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * @return The index of the label or <code>-1</code> if it isn't part of either instruction list
+     */
+    int get(LabelNode label) {
+        int slot = slot(label);
+
+        return keys[slot] == null ? -1 : indices[slot];
+    }
+
+    boolean isSame(LabelNode a, LabelNode b) {
+        return get(a) == get(b);
+    }
+
+    boolean isSame(List<LabelNode> a, List<LabelNode> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < a.size(); i++) {
+            if (!isSame(a.get(i), b.get(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Drops the references to the labels, so the table doesn't keep old instruction lists alive. A table that was
+     * grown for a large method shrinks back to the default capacity.
+     */
+    void clear() {
+        if (keys.length > DEFAULT_CAPACITY) {
+            resize(DEFAULT_CAPACITY);
+        } else {
+            for (int i = 0; i < size; i++) {
+                keys[usedSlots[i]] = null;
+            }
+        }
+
+        size = 0;
+    }
+}
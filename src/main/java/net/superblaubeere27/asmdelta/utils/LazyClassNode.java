@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.utils;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.IOException;
+
+/**
+ * A {@link ClassNode} stored as class file
+ */
+public class LazyClassNode extends LazyNode<ClassNode> {
+    private String name;
+
+    public LazyClassNode(ClassNode node) {
+        super(node);
+
+        this.name = node.name;
+    }
+
+    public LazyClassNode(byte[] bytes) {
+        super(bytes);
+    }
+
+    /**
+     * @return The internal name of the class, only the constant pool is read to find it
+     */
+    public synchronized String getName() throws IOException {
+        if (name == null) {
+            try {
+                name = new ClassReader(getBytes()).getClassName();
+            } catch (RuntimeException e) { // ClassReader doesn't verify its input
+                throw new IOException("Malformed class file", e);
+            }
+        }
+
+        return name;
+    }
+
+    @Override
+    protected ClassNode parse(byte[] bytes) throws IOException {
+        return ClassFiles.toClassNode(bytes);
+    }
+
+    @Override
+    protected byte[] toBytes(ClassNode node) {
+        return ClassFiles.toBytes(node);
+    }
+}
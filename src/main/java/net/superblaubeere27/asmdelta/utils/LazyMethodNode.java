@@ -8,40 +8,35 @@
  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
-package net.superblaubeere27.asmdelta.utils;
 
-import java.util.ArrayList;
-import java.util.List;
+package net.superblaubeere27.asmdelta.utils;
 
-public class Scheduler {
-    private final List<Thread> runningThreads = new ArrayList<>();
-    private ScheduledRunnable runnable;
+import org.objectweb.asm.tree.MethodNode;
 
-    public Scheduler(ScheduledRunnable runnable) {
-        this.runnable = runnable;
-    }
+import java.io.IOException;
 
+/**
+ * A {@link MethodNode} stored as class file containing only that method
+ *
+ * @see ClassFiles#methodToBytes(MethodNode)
+ */
+public class LazyMethodNode extends LazyNode<MethodNode> {
 
-    public void run(int threads) {
-        for (int i = 0; i < threads; i++) {
-            runningThreads.add(new Thread(() -> {
-                while (true) {
-                    if (runnable.runTick()) break;
-                }
-            }, "Thread-" + i));
-        }
+    public LazyMethodNode(MethodNode node) {
+        super(node);
+    }
 
-        runningThreads.forEach(Thread::start);
+    public LazyMethodNode(byte[] bytes) {
+        super(bytes);
     }
 
-    public void waitFor() {
-        for (Thread runningThread : runningThreads) {
-            try {
-                runningThread.join();
-            } catch (InterruptedException ignored) {
-                break;
-            }
-        }
+    @Override
+    protected MethodNode parse(byte[] bytes) throws IOException {
+        return ClassFiles.toMethodNode(bytes);
     }
 
+    @Override
+    protected byte[] toBytes(MethodNode node) {
+        return ClassFiles.methodToBytes(node);
+    }
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.utils;
+
+import java.io.IOException;
+
+/**
+ * Holds a tree node as the bytes it was read from and only parses them once the node is requested. Writing the node
+ * out again reuses the bytes, so differences that are just read and written never build a tree.
+ *
+ * @param <T> The type of the node
+ */
+public abstract class LazyNode<T> {
+    private byte[] bytes;
+    private T node;
+
+    protected LazyNode(T node) {
+        this.node = node;
+    }
+
+    protected LazyNode(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    protected abstract T parse(byte[] bytes) throws IOException;
+
+    protected abstract byte[] toBytes(T node);
+
+    /**
+     * Parses the node if that didn't happen yet. Changes to the returned node aren't reflected by {@link #getBytes()}
+     * once the bytes are known.
+     */
+    public synchronized T get() throws IOException {
+        if (node == null) {
+            node = parse(bytes);
+        }
+
+        return node;
+    }
+
+    /**
+     * @return The encoded node, the returned array must not be modified
+     */
+    public synchronized byte[] getBytes() {
+        if (bytes == null) {
+            bytes = toBytes(node);
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Parses a new node from the bytes on every call, so the caller owns the returned node. Unlike {@link #get()} this
+     * is safe to use while other threads do the same.
+     */
+    public T copy() throws IOException {
+        return parse(getBytes());
+    }
+
+    public synchronized boolean isParsed() {
+        return node != null;
+    }
+}
@@ -0,0 +1,475 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package net.superblaubeere27.asmdelta.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * A read-only zip file (jar, jmod) which is memory-mapped instead of being read into the heap.
+ * <p>
+ * The central directory is parsed once when the file is opened. Entry contents are handed out as {@link ByteBuffer}s:
+ * stored entries are views of the mapping, deflated entries are inflated into a reusable {@link ReadBuffer}.
+ * <p>
+ * The entries can be read by multiple threads as long as every thread uses its own {@link ReadBuffer}.
+ */
+public class MappedZipFile implements Closeable {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_HEADER_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_HEADER_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private final File file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final List<Entry> entries;
+
+    public MappedZipFile(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new ZipException(file + " is too large to be mapped (> 2GB)");
+            }
+
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            this.buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+            this.entries = Collections.unmodifiableList(readCentralDirectory());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private List<Entry> readCentralDirectory() throws ZipException {
+        int endPosition = findEndHeader();
+
+        long entryCount = u16(endPosition + 10);
+        long centralSize = u32(endPosition + 12);
+        long centralOffset = u32(endPosition + 16);
+        long centralEnd = endPosition;
+
+        // ZIP64: One of the values didn't fit and the real ones are stored in the ZIP64 end of central directory record
+        if (entryCount == 0xFFFF || centralSize == 0xFFFFFFFFL || centralOffset == 0xFFFFFFFFL) {
+            int locatorPosition = endPosition - ZIP64_LOCATOR_SIZE;
+
+            if (locatorPosition >= 0 && buffer.getInt(locatorPosition) == ZIP64_LOCATOR_SIGNATURE) {
+                int zip64EndPosition = checkedPosition(buffer.getLong(locatorPosition + 8));
+
+                if (buffer.getInt(zip64EndPosition) != ZIP64_END_HEADER_SIGNATURE) {
+                    throw new ZipException("Invalid ZIP64 end header in " + file);
+                }
+
+                entryCount = buffer.getLong(zip64EndPosition + 32);
+                centralSize = buffer.getLong(zip64EndPosition + 40);
+                centralOffset = buffer.getLong(zip64EndPosition + 48);
+                centralEnd = zip64EndPosition;
+            }
+        }
+
+        // Offsets in the central directory are relative to the start of the zip data which isn't necessarily the start
+        // of the file (jmods have a 4 byte header, self-extracting archives have a stub)
+        long prefix = centralEnd - centralSize - centralOffset;
+
+        if (prefix < 0) {
+            throw new ZipException("Invalid central directory offset in " + file);
+        }
+
+        List<Entry> entries = new ArrayList<>((int) Math.min(entryCount, 1 << 16));
+        int position = checkedPosition(centralEnd - centralSize);
+
+        for (long i = 0; i < entryCount; i++) {
+            if (buffer.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory header in " + file);
+            }
+
+            int flags = u16(position + 8);
+            int method = u16(position + 10);
+            int dosTime = buffer.getInt(position + 12);
+            int crc = buffer.getInt(position + 16);
+            long compressedSize = u32(position + 20);
+            long size = u32(position + 24);
+            int nameLength = u16(position + 28);
+            int extraLength = u16(position + 30);
+            int commentLength = u16(position + 32);
+            long localHeaderOffset = u32(position + 42);
+
+            String name = string(position + CENTRAL_HEADER_SIZE, nameLength);
+
+            if (size == 0xFFFFFFFFL || compressedSize == 0xFFFFFFFFL || localHeaderOffset == 0xFFFFFFFFL) {
+                int extra = position + CENTRAL_HEADER_SIZE + nameLength;
+                int extraEnd = extra + extraLength;
+
+                while (extra + 4 <= extraEnd) {
+                    int id = u16(extra);
+                    int length = u16(extra + 2);
+                    int value = extra + 4;
+
+                    if (id == ZIP64_EXTRA_ID) {
+                        // The ZIP64 fields are only present if the corresponding header value overflowed
+                        if (size == 0xFFFFFFFFL) {
+                            size = buffer.getLong(value);
+                            value += 8;
+                        }
+                        if (compressedSize == 0xFFFFFFFFL) {
+                            compressedSize = buffer.getLong(value);
+                            value += 8;
+                        }
+                        if (localHeaderOffset == 0xFFFFFFFFL) {
+                            localHeaderOffset = buffer.getLong(value);
+                        }
+                        break;
+                    }
+
+                    extra += 4 + length;
+                }
+            }
+
+            entries.add(new Entry(name, flags, method, dosTime, crc, compressedSize, size, prefix + localHeaderOffset));
+
+            position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+
+        return entries;
+    }
+
+    private int findEndHeader() throws ZipException {
+        int minPosition = Math.max(0, buffer.limit() - END_HEADER_SIZE - 0xFFFF);
+
+        for (int position = buffer.limit() - END_HEADER_SIZE; position >= minPosition; position--) {
+            // The comment length check makes sure that the signature isn't just a part of the archive comment
+            if (buffer.getInt(position) == END_HEADER_SIGNATURE && position + END_HEADER_SIZE + u16(position + 20) == buffer.limit()) {
+                return position;
+            }
+        }
+
+        throw new ZipException(file + " is not a zip file (end of central directory not found)");
+    }
+
+    private int checkedPosition(long position) throws ZipException {
+        if (position < 0 || position >= buffer.limit()) {
+            throw new ZipException("Invalid offset " + position + " in " + file);
+        }
+
+        return (int) position;
+    }
+
+    private int u16(int position) {
+        return buffer.getShort(position) & 0xFFFF;
+    }
+
+    private long u32(int position) {
+        return buffer.getInt(position) & 0xFFFFFFFFL;
+    }
+
+    private String string(int position, int length) {
+        byte[] bytes = new byte[length];
+
+        buffer.duplicate().position(position).get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return The entries in the order of the central directory
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Closes the file channel. The mapping itself is released by the garbage collector once no buffer handed out by
+     * this file is reachable anymore.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public class Entry {
+        private final String name;
+        private final int flags;
+        private final int method;
+        private final int dosTime;
+        private final int crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        private Entry(String name, int flags, int method, int dosTime, int crc, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The general purpose flags as stored in the central directory
+         */
+        public int getFlags() {
+            return flags;
+        }
+
+        /**
+         * @return {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}
+         */
+        public int getMethod() {
+            return method;
+        }
+
+        /**
+         * @return The modification time and date in MS-DOS format (time in the lower 16 bits)
+         */
+        public int getDosTime() {
+            return dosTime;
+        }
+
+        /**
+         * @return The CRC-32 of the uncompressed content as stored in the central directory
+         */
+        public int getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return A read-only view of the (possibly compressed) entry data inside of the mapping
+         */
+        public ByteBuffer getRawData() throws ZipException {
+            int header = checkedPosition(localHeaderOffset);
+
+            if (buffer.getInt(header) != LOCAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid local header for " + name + " in " + file);
+            }
+
+            // The name and extra field lengths of the local header may differ from the ones in the central directory
+            long dataStart = header + LOCAL_HEADER_SIZE + u16(header + 26) + u16(header + 28);
+
+            if (dataStart + compressedSize > buffer.limit()) {
+                throw new ZipException("Truncated data for " + name + " in " + file);
+            }
+
+            return buffer.asReadOnlyBuffer().position((int) dataStart).limit((int) (dataStart + compressedSize)).slice();
+        }
+
+        /**
+         * Returns the uncompressed content of this entry. For stored entries this is a view of the mapping, deflated
+         * entries are inflated into <code>readBuffer</code>, so the returned buffer is only valid until
+         * <code>readBuffer</code> is used again.
+         */
+        public ByteBuffer getContent(ReadBuffer readBuffer) throws IOException {
+            if (method == ZipEntry.STORED) {
+                return getRawData();
+            }
+
+            return readBuffer.inflate(this);
+        }
+
+        /**
+         * Like {@link #getContent(ReadBuffer)}, but the returned buffer is always backed by the array of
+         * <code>readBuffer</code> (stored entries are copied into it). Useful for consumers that need a
+         * <code>byte[]</code>, like {@link org.objectweb.asm.ClassReader}.
+         */
+        public ByteBuffer getHeapContent(ReadBuffer readBuffer) throws IOException {
+            if (method == ZipEntry.STORED) {
+                return readBuffer.copy(getRawData());
+            }
+
+            return readBuffer.inflate(this);
+        }
+
+        /**
+         * @return A copy of the uncompressed content
+         */
+        public byte[] readAllBytes(ReadBuffer readBuffer) throws IOException {
+            ByteBuffer content = getContent(readBuffer);
+            byte[] bytes = new byte[content.remaining()];
+
+            content.get(bytes);
+
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Reusable buffers and inflater used to read entries. Every thread reading entries needs its own instance.
+     * <p>
+     * The inflater holds native memory until the buffer is closed.
+     */
+    public static class ReadBuffer implements Closeable {
+        private final Inflater inflater = new Inflater(true);
+        private final byte[] input = new byte[16 * 1024];
+        private byte[] output = new byte[64 * 1024];
+
+        private byte[] ensureCapacity(long size) throws ZipException {
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new ZipException("Entry is too large (" + size + " bytes)");
+            }
+            if (output.length < size) {
+                output = new byte[(int) Math.max(size, output.length * 2L)];
+            }
+
+            return output;
+        }
+
+        private ByteBuffer copy(ByteBuffer content) throws ZipException {
+            int size = content.remaining();
+
+            content.get(ensureCapacity(size), 0, size);
+
+            return ByteBuffer.wrap(output, 0, size);
+        }
+
+        private ByteBuffer inflate(Entry entry) throws IOException {
+            if (entry.method != ZipEntry.DEFLATED) {
+                throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.name);
+            }
+            if ((entry.flags & 1) != 0) {
+                throw new ZipException(entry.name + " is encrypted");
+            }
+
+            ByteBuffer raw = entry.getRawData();
+            int size = (int) entry.size;
+            byte[] output = ensureCapacity(size);
+            int written = 0;
+
+            inflater.reset();
+
+            try {
+                while (written < size) {
+                    if (inflater.needsInput()) {
+                        int length = Math.min(raw.remaining(), input.length);
+
+                        if (length == 0) {
+                            break;
+                        }
+
+                        raw.get(input, 0, length);
+                        inflater.setInput(input, 0, length);
+                    }
+
+                    int inflated = inflater.inflate(output, written, size - written);
+
+                    if (inflated == 0 && (inflater.finished() || inflater.needsDictionary())) {
+                        break;
+                    }
+
+                    written += inflated;
+                }
+            } catch (DataFormatException e) {
+                throw new ZipException("Invalid deflate data for " + entry.name + ": " + e.getMessage());
+            }
+
+            if (written != size) {
+                throw new ZipException("Unexpected end of deflate data for " + entry.name);
+            }
+
+            return ByteBuffer.wrap(output, 0, size);
+        }
+
+        /**
+         * Releases the inflater, the buffer can't be used afterwards
+         */
+        @Override
+        public void close() {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Read buffers shared by the tasks of one operation, a task borrows a buffer and returns it once it is done.
+     * Closing the pool closes every buffer, buffers that are returned afterwards are closed right away.
+     */
+    public static class ReadBufferPool implements Closeable {
+        private final Queue<ReadBuffer> buffers = new ConcurrentLinkedQueue<>();
+        private volatile boolean closed;
+
+        /**
+         * @return A buffer nobody else uses, it has to be {@link #release(ReadBuffer) released} afterwards
+         */
+        public ReadBuffer borrow() {
+            ReadBuffer readBuffer = buffers.poll();
+
+            return readBuffer != null ? readBuffer : new ReadBuffer();
+        }
+
+        public void release(ReadBuffer readBuffer) {
+            buffers.add(readBuffer);
+
+            if (closed) {
+                closeBuffers();
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            closeBuffers();
+        }
+
+        private void closeBuffers() {
+            ReadBuffer readBuffer;
+
+            while ((readBuffer = buffers.poll()) != null) {
+                readBuffer.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.utils;
+
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+import java.util.List;
+
+/**
+ * A 128-bit hash of a method body (instructions and try-catch blocks) that is independent of the {@link LabelNode}
+ * instances: labels are hashed as their index in the instruction list. Two bodies that
+ * {@link InstructionComparator#isSame(InsnList, InsnList, List, List)} considers the same always have the same hash,
+ * frames and line numbers are ignored like there. A collision of two different bodies is unlikely enough that an
+ * equal hash is taken as an equal body.
+ * <p>
+ * The hash is a value object, so it can be cached or used as a map key to find equal method bodies.
+ */
+public final class MethodBodyHash {
+    private static final long SEED_LOW = 0x9E3779B97F4A7C15L;
+    private static final long SEED_HIGH = 0xC2B2AE3D27D4EB4FL;
+    private static final long MULTIPLIER_LOW = 0x87C37B91114253D5L;
+    private static final long MULTIPLIER_HIGH = 0x4CF5AD432745937FL;
+
+    /**
+     * Reused by every hash on the same thread, {@link InsnList#indexOf(AbstractInsnNode)} would allocate an index
+     * cache for each instruction list
+     */
+    private static final ThreadLocal<LabelIndexTable> LABEL_INDICES = ThreadLocal.withInitial(LabelIndexTable::new);
+
+    private final long low;
+    private final long high;
+
+    private MethodBodyHash(long low, long high) {
+        this.low = low;
+        this.high = high;
+    }
+
+    public static MethodBodyHash of(MethodNode method) {
+        return of(method.instructions, method.tryCatchBlocks);
+    }
+
+    public static MethodBodyHash of(InsnList instructions, List<TryCatchBlockNode> tryCatchBlocks) {
+        Hasher hasher = new Hasher();
+        LabelIndexTable labelIndices = LABEL_INDICES.get();
+
+        labelIndices.reset(LabelIndexTable.countLabels(instructions));
+        labelIndices.putAll(instructions);
+
+        try {
+            hasher.update(instructions.size());
+
+            for (AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext()) {
+                hasher.update(insn.getType());
+                hasher.update(insn.getOpcode());
+
+                hashOperands(hasher, labelIndices, insn);
+            }
+
+            hasher.update(tryCatchBlocks.size());
+
+            for (TryCatchBlockNode tryCatchBlock : tryCatchBlocks) {
+                hasher.update(labelIndices.get(tryCatchBlock.start));
+                hasher.update(labelIndices.get(tryCatchBlock.end));
+                hasher.update(labelIndices.get(tryCatchBlock.handler));
+                hasher.update(tryCatchBlock.type);
+            }
+        } finally {
+            labelIndices.clear();
+        }
+
+        return hasher.finish();
+    }
+
+    private static void hashOperands(Hasher hasher, LabelIndexTable labelIndices, AbstractInsnNode insn) {
+        switch (insn.getType()) {
+            case AbstractInsnNode.INT_INSN:
+                hasher.update(((IntInsnNode) insn).operand);
+                break;
+            case AbstractInsnNode.VAR_INSN:
+                hasher.update(((VarInsnNode) insn).var);
+                break;
+            case AbstractInsnNode.TYPE_INSN:
+                hasher.update(((TypeInsnNode) insn).desc);
+                break;
+            case AbstractInsnNode.FIELD_INSN: {
+                FieldInsnNode fieldInsn = (FieldInsnNode) insn;
+
+                hasher.update(fieldInsn.owner);
+                hasher.update(fieldInsn.name);
+                hasher.update(fieldInsn.desc);
+                break;
+            }
+            case AbstractInsnNode.METHOD_INSN: {
+                MethodInsnNode methodInsn = (MethodInsnNode) insn;
+
+                hasher.update(methodInsn.owner);
+                hasher.update(methodInsn.name);
+                hasher.update(methodInsn.desc);
+                hasher.update(methodInsn.itf ? 1 : 0);
+                break;
+            }
+            case AbstractInsnNode.INVOKE_DYNAMIC_INSN: {
+                InvokeDynamicInsnNode indy = (InvokeDynamicInsnNode) insn;
+
+                hasher.update(indy.name);
+                hasher.update(indy.desc);
+                hashHandle(hasher, indy.bsm);
+                hashConstants(hasher, indy.bsmArgs);
+                break;
+            }
+            case AbstractInsnNode.JUMP_INSN:
+                hasher.update(labelIndices.get(((JumpInsnNode) insn).label));
+                break;
+            case AbstractInsnNode.LDC_INSN:
+                hashConstant(hasher, ((LdcInsnNode) insn).cst);
+                break;
+            case AbstractInsnNode.IINC_INSN:
+                hasher.update(((IincInsnNode) insn).var);
+                hasher.update(((IincInsnNode) insn).incr);
+                break;
+            case AbstractInsnNode.TABLESWITCH_INSN: {
+                TableSwitchInsnNode tableSwitch = (TableSwitchInsnNode) insn;
+
+                hasher.update(tableSwitch.min);
+                hasher.update(tableSwitch.max);
+                hasher.update(labelIndices.get(tableSwitch.dflt));
+                hashLabels(hasher, labelIndices, tableSwitch.labels);
+                break;
+            }
+            case AbstractInsnNode.LOOKUPSWITCH_INSN: {
+                LookupSwitchInsnNode lookupSwitch = (LookupSwitchInsnNode) insn;
+
+                hasher.update(labelIndices.get(lookupSwitch.dflt));
+                hasher.update(lookupSwitch.keys.size());
+
+                for (Integer key : lookupSwitch.keys) {
+                    hasher.update(key);
+                }
+
+                hashLabels(hasher, labelIndices, lookupSwitch.labels);
+                break;
+            }
+            case AbstractInsnNode.MULTIANEWARRAY_INSN:
+                hasher.update(((MultiANewArrayInsnNode) insn).desc);
+                hasher.update(((MultiANewArrayInsnNode) insn).dims);
+                break;
+            default: // INSN, LABEL, FRAME, LINE
+                break;
+        }
+    }
+
+    private static void hashLabels(Hasher hasher, LabelIndexTable labelIndices, List<LabelNode> labels) {
+        hasher.update(labels.size());
+
+        for (LabelNode label : labels) {
+            hasher.update(labelIndices.get(label));
+        }
+    }
+
+    private static void hashConstants(Hasher hasher, Object[] constants) {
+        hasher.update(constants.length);
+
+        for (Object constant : constants) {
+            hashConstant(hasher, constant);
+        }
+    }
+
+    /**
+     * Hashes constants the way {@link Object#equals(Object)} compares them
+     */
+    private static void hashConstant(Hasher hasher, Object cst) {
+        if (cst instanceof Integer) {
+            hasher.update(1);
+            hasher.update((Integer) cst);
+        } else if (cst instanceof Float) {
+            hasher.update(2);
+            hasher.update(Float.floatToIntBits((Float) cst));
+        } else if (cst instanceof Long) {
+            hasher.update(3);
+            hasher.update((Long) cst);
+        } else if (cst instanceof Double) {
+            hasher.update(4);
+            hasher.update(Double.doubleToLongBits((Double) cst));
+        } else if (cst instanceof String) {
+            hasher.update(5);
+            hasher.update((String) cst);
+        } else if (cst instanceof Type) {
+            hasher.update(6);
+            hasher.update(((Type) cst).getDescriptor());
+        } else if (cst instanceof Handle) {
+            hasher.update(7);
+            hashHandle(hasher, (Handle) cst);
+        } else if (cst instanceof ConstantDynamic) {
+            ConstantDynamic condy = (ConstantDynamic) cst;
+
+            hasher.update(8);
+            hasher.update(condy.getName());
+            hasher.update(condy.getDescriptor());
+            hashHandle(hasher, condy.getBootstrapMethod());
+            hasher.update(condy.getBootstrapMethodArgumentCount());
+
+            for (int i = 0; i < condy.getBootstrapMethodArgumentCount(); i++) {
+                hashConstant(hasher, condy.getBootstrapMethodArgument(i));
+            }
+        } else {
+            hasher.update(0);
+            hasher.update(cst == null ? 0 : cst.hashCode());
+        }
+    }
+
+    private static void hashHandle(Hasher hasher, Handle handle) {
+        hasher.update(handle.getTag());
+        hasher.update(handle.getOwner());
+        hasher.update(handle.getName());
+        hasher.update(handle.getDesc());
+        hasher.update(handle.isInterface() ? 1 : 0);
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof MethodBodyHash)) return false;
+
+        MethodBodyHash that = (MethodBodyHash) o;
+
+        return low == that.low && high == that.high;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) low;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+
+    /**
+     * Two independently seeded 64-bit multiply-rotate lanes, finished with the MurmurHash3 finalizer
+     */
+    private static class Hasher {
+        private long low = SEED_LOW;
+        private long high = SEED_HIGH;
+        private long count;
+
+        void update(long value) {
+            low = Long.rotateLeft(low ^ value * MULTIPLIER_LOW, 31) * MULTIPLIER_HIGH;
+            high = Long.rotateLeft(high + value * MULTIPLIER_HIGH, 33) * MULTIPLIER_LOW ^ low;
+            count++;
+        }
+
+        void update(String value) {
+            if (value == null) {
+                update(-1);
+                return;
+            }
+
+            update(value.length());
+
+            int i = 0;
+
+            // Four chars per round, the length is already part of the hash
+            for (; i + 3 < value.length(); i += 4) {
+                update((long) value.charAt(i) << 48 | (long) value.charAt(i + 1) << 32 | (long) value.charAt(i + 2) << 16 | value.charAt(i + 3));
+            }
+            for (; i < value.length(); i++) {
+                update(value.charAt(i));
+            }
+        }
+
+        MethodBodyHash finish() {
+            return new MethodBodyHash(mix(low ^ count), mix(high ^ low));
+        }
+
+        private static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xFF51AFD7ED558CCDL;
+            h ^= h >>> 33;
+            h *= 0xC4CEB9FE1A85EC53L;
+            h ^= h >>> 33;
+
+            return h;
+        }
+    }
+}
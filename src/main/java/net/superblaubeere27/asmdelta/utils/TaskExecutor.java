@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package net.superblaubeere27.asmdelta.utils;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs the parallel parts of ASMDelta. Work is submitted in {@link TaskGroup}s which propagate the first failure to
+ * the waiting caller and cancel the tasks that didn't start yet.
+ * <p>
+ * By default the tasks run on a work-stealing {@link ForkJoinPool}. On Java 21+ one virtual thread per task can be
+ * used instead.
+ */
+public class TaskExecutor implements AutoCloseable {
+    private final Mode mode;
+    private final int parallelism;
+    private final ExecutorService executor;
+
+    public TaskExecutor(int parallelism) {
+        this(parallelism, Mode.WORK_STEALING);
+    }
+
+    public TaskExecutor(int parallelism, Mode mode) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+
+        this.mode = mode;
+        this.parallelism = parallelism;
+        this.executor = mode == Mode.VIRTUAL_THREADS ? newVirtualThreadExecutor() : new ForkJoinPool(parallelism);
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            // Looked up reflectively, this project still targets Java 10
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer", e);
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Creates a group whose {@link TaskGroup#submit(TaskGroup.Task)} blocks while <code>maxPending</code> of its
+     * tasks are queued or running.
+     */
+    public <E extends Exception> TaskGroup<E> newGroup(int maxPending) {
+        return new TaskGroup<>(executor, maxPending);
+    }
+
+    /**
+     * Splits <code>items</code> into chunks of at most <code>chunkSize</code> items, runs <code>task</code> once per
+     * chunk and waits for all of them. Every chunk is processed by a single thread, so per-chunk state (buffers,
+     * partial results) doesn't need synchronization.
+     *
+     * @throws E                    The first exception thrown by a chunk, the remaining chunks are cancelled
+     * @throws InterruptedException If the calling thread was interrupted while waiting
+     */
+    public <T, E extends Exception> void forEachChunk(List<T> items, int chunkSize, ChunkTask<T, E> task) throws E, InterruptedException {
+        TaskGroup<E> group = newGroup(Integer.MAX_VALUE);
+
+        for (int start = 0; start < items.size() && !group.isCancelled(); start += chunkSize) {
+            List<T> chunk = items.subList(start, Math.min(start + chunkSize, items.size()));
+
+            group.submit(() -> task.run(chunk));
+        }
+
+        group.await();
+    }
+
+    /**
+     * @return A chunk size which gives every thread a few chunks, so threads that finish early can take over work
+     */
+    public int chunkSize(int itemCount) {
+        return Math.max(1, itemCount / (parallelism * 8));
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    public enum Mode {
+        WORK_STEALING,
+        VIRTUAL_THREADS;
+
+        public boolean isSupported() {
+            if (this != VIRTUAL_THREADS) {
+                return true;
+            }
+
+            try {
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return true;
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface ChunkTask<T, E extends Exception> {
+        void run(List<T> chunk) throws E;
+    }
+}
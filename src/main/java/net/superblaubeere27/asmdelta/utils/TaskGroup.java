@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package net.superblaubeere27.asmdelta.utils;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A set of tasks submitted to a {@link TaskExecutor} which is waited for as a whole.
+ * <p>
+ * The first task that fails cancels the group: tasks that didn't start yet are skipped and {@link #await()} rethrows
+ * the failure. Running tasks are never abandoned, {@link #await()} only returns once no task of the group runs
+ * anymore, even if the waiting thread is interrupted.
+ *
+ * @param <E> The checked exception the tasks may throw
+ */
+public class TaskGroup<E extends Exception> {
+    private final Executor executor;
+    private final int maxPending;
+    /**
+     * One permit per task that may still be queued, a task holds its permit until it finished
+     */
+    private final Semaphore permits;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private volatile boolean cancelled;
+
+    TaskGroup(Executor executor, int maxPending) {
+        if (maxPending < 1) {
+            throw new IllegalArgumentException("maxPending must be at least 1");
+        }
+
+        this.executor = executor;
+        this.maxPending = maxPending;
+        this.permits = new Semaphore(maxPending);
+    }
+
+    /**
+     * Submits a task, blocking while too many tasks of this group are pending. Tasks submitted after the group was
+     * cancelled are ignored.
+     *
+     * @throws InterruptedException If the thread was interrupted while waiting for a free slot. The group is cancelled
+     *                              and its running tasks are finished before this is thrown.
+     */
+    public void submit(Task<E> task) throws InterruptedException {
+        if (cancelled) {
+            return;
+        }
+
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            cancel();
+            awaitUninterruptibly();
+            throw e;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    if (!cancelled) {
+                        task.run();
+                    }
+                } catch (Throwable t) {
+                    if (failure.compareAndSet(null, t)) {
+                        cancel();
+                    }
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RuntimeException e) { // RejectedExecutionException
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until every submitted task finished.
+     *
+     * @throws E                    The first exception thrown by a task
+     * @throws InterruptedException If the thread was interrupted, the group is cancelled in that case
+     */
+    @SuppressWarnings("unchecked")
+    public void await() throws E, InterruptedException {
+        try {
+            permits.acquire(maxPending);
+            permits.release(maxPending);
+        } catch (InterruptedException e) {
+            cancel();
+            awaitUninterruptibly();
+            throw e;
+        }
+
+        Throwable throwable = failure.get();
+
+        if (throwable instanceof RuntimeException) {
+            throw (RuntimeException) throwable;
+        }
+        if (throwable instanceof Error) {
+            throw (Error) throwable;
+        }
+        if (throwable != null) {
+            throw (E) throwable; // Tasks can't throw any other checked exception
+        }
+    }
+
+    private void awaitUninterruptibly() {
+        permits.acquireUninterruptibly(maxPending);
+        permits.release(maxPending);
+    }
+
+    /**
+     * Skips every task that didn't start yet
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @FunctionalInterface
+    public interface Task<E extends Exception> {
+        void run() throws E;
+    }
+}
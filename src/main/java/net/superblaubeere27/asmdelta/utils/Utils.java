@@ -14,7 +14,9 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import net.superblaubeere27.asmdelta.difference.AbstractDifference;
 import net.superblaubeere27.asmdelta.utils.typeadapter.AbstractDifferenceSerializer;
+import net.superblaubeere27.asmdelta.utils.typeadapter.ByteArraySerializer;
 import net.superblaubeere27.asmdelta.utils.typeadapter.ClassNodeSerializer;
+import net.superblaubeere27.asmdelta.utils.typeadapter.LazyNodeSerializer;
 import net.superblaubeere27.asmdelta.utils.typeadapter.MethodNodeSerializer;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.InsnList;
@@ -34,7 +36,10 @@ public class Utils {
         GSON = new GsonBuilder()
                 .registerTypeAdapter(ClassNode.class, new ClassNodeSerializer())
                 .registerTypeAdapter(MethodNode.class, new MethodNodeSerializer())
+                .registerTypeAdapter(LazyClassNode.class, new LazyNodeSerializer<>(LazyClassNode::new))
+                .registerTypeAdapter(LazyMethodNode.class, new LazyNodeSerializer<>(LazyMethodNode::new))
                 .registerTypeAdapter(AbstractDifference.class, new AbstractDifferenceSerializer())
+                .registerTypeAdapter(byte[].class, new ByteArraySerializer())
                 .create();
     }
 
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a zip file whose entries are either copied from a {@link MappedZipFile} or deflated from memory. Unlike
+ * {@link java.util.zip.ZipOutputStream}, copied entries are written as they are compressed in the source file, so
+ * they are never inflated and deflated again.
+ * <p>
+ * Extra fields and comments of copied entries are dropped. ZIP64 records are written if the file needs them, but
+ * entries have to be smaller than 4 GiB.
+ */
+public class ZipWriter implements Closeable {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_HEADER_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_HEADER_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int ZIP64_END_HEADER_SIZE = 56;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_EXTRA_SIZE = 12;
+
+    private static final int VERSION = 20;
+    private static final int ZIP64_VERSION = 45;
+    /**
+     * The CRC and the sizes follow the data instead of being in the local header
+     */
+    private static final int DATA_DESCRIPTOR_FLAG = 1 << 3;
+    private static final int UTF8_FLAG = 1 << 11;
+
+    private static final long MAX_U16 = 0xFFFF;
+    private static final long MAX_U32 = 0xFFFFFFFFL;
+
+    private final WritableByteChannel channel;
+    private final List<CentralRecord> records = new ArrayList<>();
+    private final Set<String> names = new HashSet<>();
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 crc = new CRC32();
+    private long position;
+    private boolean closed;
+
+    public ZipWriter(OutputStream outputStream) {
+        this.channel = Channels.newChannel(outputStream);
+    }
+
+    /**
+     * Writes data in front of the zip data, like the header of a jmod. Offsets in the zip stay relative to the start of
+     * the zip data, so the preamble has to be written before the first entry.
+     */
+    public void writePreamble(byte[] preamble) throws IOException {
+        if (position != 0) {
+            throw new IllegalStateException("The preamble has to be written before the first entry");
+        }
+
+        ByteBuffer data = ByteBuffer.wrap(preamble);
+
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+    /**
+     * Copies the entry with its compressed data
+     */
+    public void copyEntry(MappedZipFile.Entry entry) throws IOException {
+        ByteBuffer data = entry.getRawData();
+
+        addEntry(entry.getName(), entry.getFlags() & ~DATA_DESCRIPTOR_FLAG, entry.getMethod(), entry.getDosTime(), entry.getCrc(), data.remaining(), entry.getSize());
+        write(data);
+    }
+
+    /**
+     * Deflates the content into a new entry
+     *
+     * @param dosTime The modification time in MS-DOS format, see {@link #dosTime(LocalDateTime)}
+     */
+    public void writeEntry(String name, byte[] content, int dosTime) throws IOException {
+        crc.reset();
+        crc.update(content, 0, content.length);
+
+        deflater.reset();
+        deflater.setInput(content, 0, content.length);
+        deflater.finish();
+
+        DataWriter deflated = new DataWriter(content.length / 2 + 64);
+        byte[] chunk = new byte[8192];
+
+        while (!deflater.finished()) {
+            deflated.writeBytes(chunk, 0, deflater.deflate(chunk));
+        }
+
+        addEntry(name, 0, ZipEntry.DEFLATED, dosTime, (int) crc.getValue(), deflated.size(), content.length);
+        write(ByteBuffer.wrap(deflated.getBuffer(), 0, deflated.size()));
+    }
+
+    /**
+     * Writes the local header of an entry and remembers it for the central directory
+     */
+    private void addEntry(String name, int flags, int method, int dosTime, int crc, long compressedSize, long size) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("The zip file was already closed");
+        }
+        if (!names.add(name)) {
+            throw new ZipException("Duplicate entry " + name);
+        }
+        if (compressedSize >= MAX_U32 || size >= MAX_U32) {
+            throw new ZipException(name + " is too large (entries must be smaller than 4 GiB)");
+        }
+
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+
+        if (nameBytes.length > MAX_U16) {
+            throw new ZipException("Entry name too long: " + name);
+        }
+        if (nameBytes.length != name.length()) {
+            flags |= UTF8_FLAG;
+        }
+
+        CentralRecord record = new CentralRecord(nameBytes, flags, method, dosTime, crc, compressedSize, size, position);
+        ByteBuffer header = allocate(LOCAL_HEADER_SIZE + nameBytes.length);
+
+        header.putInt(LOCAL_HEADER_SIGNATURE);
+        header.putShort((short) VERSION);
+        record.putCommonFields(header);
+        header.putShort((short) 0); // Extra field length
+        header.put(nameBytes);
+
+        records.add(record);
+        write(header.flip());
+    }
+
+    private void write(ByteBuffer data) throws IOException {
+        int length = data.remaining();
+
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+
+        position += length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            finish();
+        } finally {
+            deflater.end();
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes the central directory
+     */
+    private void finish() throws IOException {
+        long centralOffset = position;
+
+        for (CentralRecord record : records) {
+            boolean zip64 = record.localHeaderOffset >= MAX_U32;
+            ByteBuffer header = allocate(CENTRAL_HEADER_SIZE + record.name.length + (zip64 ? ZIP64_EXTRA_SIZE : 0));
+
+            header.putInt(CENTRAL_HEADER_SIGNATURE);
+            header.putShort((short) (zip64 ? ZIP64_VERSION : VERSION)); // Version made by
+            header.putShort((short) (zip64 ? ZIP64_VERSION : VERSION)); // Version needed to extract
+            record.putCommonFields(header);
+            header.putShort((short) (zip64 ? ZIP64_EXTRA_SIZE : 0));
+            header.putShort((short) 0); // Comment length
+            header.putShort((short) 0); // Disk number
+            header.putShort((short) 0); // Internal attributes
+            header.putInt(0); // External attributes
+            header.putInt((int) Math.min(record.localHeaderOffset, MAX_U32));
+            header.put(record.name);
+
+            if (zip64) {
+                header.putShort((short) ZIP64_EXTRA_ID);
+                header.putShort((short) 8);
+                header.putLong(record.localHeaderOffset);
+            }
+
+            write(header.flip());
+        }
+
+        long centralSize = position - centralOffset;
+        boolean zip64 = records.size() >= MAX_U16 || centralOffset >= MAX_U32 || centralSize >= MAX_U32;
+
+        if (zip64) {
+            long zip64EndOffset = position;
+            ByteBuffer zip64End = allocate(ZIP64_END_HEADER_SIZE + ZIP64_LOCATOR_SIZE);
+
+            zip64End.putInt(ZIP64_END_HEADER_SIGNATURE);
+            zip64End.putLong(ZIP64_END_HEADER_SIZE - 12); // Size of the remaining record
+            zip64End.putShort((short) ZIP64_VERSION);
+            zip64End.putShort((short) ZIP64_VERSION);
+            zip64End.putInt(0); // Disk number
+            zip64End.putInt(0); // Disk of the central directory
+            zip64End.putLong(records.size());
+            zip64End.putLong(records.size());
+            zip64End.putLong(centralSize);
+            zip64End.putLong(centralOffset);
+
+            zip64End.putInt(ZIP64_LOCATOR_SIGNATURE);
+            zip64End.putInt(0); // Disk of the ZIP64 end header
+            zip64End.putLong(zip64EndOffset);
+            zip64End.putInt(1); // Number of disks
+
+            write(zip64End.flip());
+        }
+
+        ByteBuffer end = allocate(END_HEADER_SIZE);
+
+        end.putInt(END_HEADER_SIGNATURE);
+        end.putShort((short) 0); // Disk number
+        end.putShort((short) 0); // Disk of the central directory
+        end.putShort((short) Math.min(records.size(), MAX_U16));
+        end.putShort((short) Math.min(records.size(), MAX_U16));
+        end.putInt((int) Math.min(centralSize, MAX_U32));
+        end.putInt((int) Math.min(centralOffset, MAX_U32));
+        end.putShort((short) 0); // Comment length
+
+        write(end.flip());
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Converts a local date and time to the MS-DOS format zip files use, dates before 1980 are clamped
+     */
+    public static int dosTime(LocalDateTime time) {
+        if (time.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+
+        return (time.getYear() - 1980) << 25
+                | time.getMonthValue() << 21
+                | time.getDayOfMonth() << 16
+                | time.getHour() << 11
+                | time.getMinute() << 5
+                | time.getSecond() >> 1;
+    }
+
+    private static class CentralRecord {
+        private final byte[] name;
+        private final int flags;
+        private final int method;
+        private final int dosTime;
+        private final int crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        private CentralRecord(byte[] name, int flags, int method, int dosTime, int crc, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        /**
+         * Puts the fields from the flags to the extra field length (exclusive), local and central headers share them
+         */
+        private void putCommonFields(ByteBuffer header) {
+            header.putShort((short) flags);
+            header.putShort((short) method);
+            header.putInt(dosTime);
+            header.putInt(crc);
+            header.putInt((int) compressedSize);
+            header.putInt((int) size);
+            header.putShort((short) name.length);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.utils.binary;
+
+import net.superblaubeere27.asmdelta.ASMDeltaPatch;
+import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.DifferenceRegistry;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The binary patch formats ({@link ASMDeltaPatch#BINARY_VERSION}, {@link ASMDeltaPatch#INDEXED_VERSION} and
+ * {@link ASMDeltaPatch#DICTIONARY_VERSION}).
+ * <pre>
+ * magic        "ASMD"
+ * version      varint
+ *
+ * version 2, everything after the version is deflated:
+ * name         string
+ * records
+ *
+ * version 3 and 4:
+ * name         string
+ * blocks       (varint length, deflated block)*, varint 0
+ *   block      (string class name, records)*, string null
+ * index        deflated:
+ *              the string table (varint count, string*)
+ *              varint count, (varlong offset, varint length)* (the blocks)
+ *              varint count, (string class name, varint count, varint block number delta*)*
+ * index offset long, the last 8 bytes of the file
+ *
+ * records      (varint type, varint length, frame)*, varint 0
+ *   type       the tag of the difference type, see {@link DifferenceRegistry}
+ *   frame      varint count, string* (the strings the record references first), payload
+ * </pre>
+ * The payload is written by {@link AbstractDifference#write(DifferenceOutput)}, class files are embedded by
+ * {@link ClassFileCodec}, version 2 shares their constants through the string table and stores repeated class files
+ * once. Apart from the class files that can be referenced, neither the writer nor the reader needs more than one record
+ * in memory, and a reader can skip the payload of a record.
+ * <p>
+ * The records of version 3 are grouped into runs of consecutive records of the same class, and the runs into blocks of
+ * about 64 KiB which are deflated on their own. The index maps every class to the blocks of its runs and repeats the
+ * string table, so a block can be decoded without reading the blocks before it, see {@link IndexedPatch}.
+ * <p>
+ * Version 4 is laid out like version 3, but every block is deflated with a preset dictionary built from the original
+ * classes of the block's classes (see {@link #dictionary(PatchDictionary, Collection)}), and blocks are cut at about
+ * 16 KiB. The reader needs the same original classes, it finds the classes of a block in the index.
+ */
+public class BinaryPatchFormat {
+    static final byte[] MAGIC = {'A', 'S', 'M', 'D'};
+
+    static final int END = 0;
+
+    /**
+     * Size of the index offset at the end of an indexed patch
+     */
+    static final int TRAILER_SIZE = 8;
+    /**
+     * Deflate only looks back this far, so longer dictionaries are cut to their end
+     */
+    static final int DICTIONARY_SIZE = 1 << 15;
+
+    /**
+     * @return Whether the stream starts with a binary patch, the stream is reset to where it was
+     */
+    public static boolean isBinaryPatch(InputStream inputStream) throws IOException {
+        inputStream.mark(MAGIC.length);
+
+        try {
+            byte[] magic = new byte[MAGIC.length];
+
+            return inputStream.readNBytes(magic, 0, magic.length) == magic.length && Arrays.equals(magic, MAGIC);
+        } finally {
+            inputStream.reset();
+        }
+    }
+
+    /**
+     * @return The version of the binary patch, <code>-1</code> if the stream doesn't start with one. The stream is reset
+     * to where it was, it has to support {@link InputStream#mark(int)}.
+     */
+    public static int peekVersion(InputStream inputStream) throws IOException {
+        inputStream.mark(MAGIC.length + 5);
+
+        try {
+            byte[] magic = new byte[MAGIC.length];
+
+            if (inputStream.readNBytes(magic, 0, magic.length) != magic.length || !Arrays.equals(magic, MAGIC)) {
+                return -1;
+            }
+
+            return readVarInt(inputStream);
+        } finally {
+            inputStream.reset();
+        }
+    }
+
+    static int readVarInt(InputStream inputStream) throws IOException {
+        int value = 0;
+
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = inputStream.read();
+
+            if (b == -1) {
+                throw new EOFException("Unexpected end of patch");
+            }
+
+            value |= (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Reads a string written by {@link net.superblaubeere27.asmdelta.utils.DataWriter#writeString(String)}
+     */
+    static String readString(InputStream inputStream) throws IOException {
+        int length = readVarInt(inputStream) - 1;
+
+        if (length == -1) {
+            return null;
+        }
+
+        return new String(readFully(inputStream, new byte[length], length), StandardCharsets.UTF_8);
+    }
+
+    static byte[] readFully(InputStream inputStream, byte[] buffer, int length) throws IOException {
+        if (length < 0 || inputStream.readNBytes(buffer, 0, length) != length) {
+            throw new EOFException("Unexpected end of patch");
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Builds the dictionary of a block of {@link ASMDeltaPatch#DICTIONARY_VERSION}: the start of the original class
+     * files of the block's classes up to the end of their constant pool, in the order of their names. The constant
+     * pools contain the names and strings the records reference.
+     *
+     * @return <code>null</code> if none of the classes existed
+     */
+    static byte[] dictionary(PatchDictionary patchDictionary, Collection<String> sortedClassNames) throws IOException {
+        byte[] dictionary = new byte[DICTIONARY_SIZE];
+        int size = 0;
+
+        for (String className : sortedClassNames) {
+            byte[] classFile = patchDictionary.getOriginalClass(className);
+
+            if (classFile == null) {
+                continue;
+            }
+
+            int length = ClassFileCodec.constantPoolEnd(classFile);
+
+            if (length == -1) {
+                length = classFile.length;
+            }
+
+            length = Math.min(length, DICTIONARY_SIZE);
+
+            int kept = Math.min(size, DICTIONARY_SIZE - length);
+
+            System.arraycopy(dictionary, size - kept, dictionary, 0, kept);
+            System.arraycopy(classFile, 0, dictionary, kept, length);
+            size = kept + length;
+        }
+
+        return size == 0 ? null : Arrays.copyOf(dictionary, size);
+    }
+
+    static byte[] inflate(byte[] data, int offset, int length) throws IOException {
+        return inflate(data, offset, length, null);
+    }
+
+    /**
+     * @param dictionary The dictionary the data was deflated with, may be <code>null</code>
+     */
+    static byte[] inflate(byte[] data, int offset, int length, byte[] dictionary) throws IOException {
+        Inflater inflater = new Inflater();
+
+        try {
+            inflater.setInput(data, offset, length);
+
+            byte[] inflated = new byte[Math.max(256, length * 4)];
+            int size = 0;
+
+            while (!inflater.finished()) {
+                if (size == inflated.length) {
+                    inflated = Arrays.copyOf(inflated, inflated.length * 2);
+                }
+
+                int count = inflater.inflate(inflated, size, inflated.length - size);
+
+                if (count == 0 && inflater.needsDictionary() && dictionary != null) {
+                    try {
+                        inflater.setDictionary(dictionary);
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException("The block was compressed against other original classes", e);
+                    }
+
+                    dictionary = null;
+                    continue;
+                }
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException("Truncated block");
+                }
+
+                size += count;
+            }
+
+            return Arrays.copyOf(inflated, size);
+        } catch (DataFormatException e) {
+            throw new IOException("Malformed block", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.utils.binary;
+
+import net.superblaubeere27.asmdelta.ASMDeltaPatch;
+import net.superblaubeere27.asmdelta.PatchReader;
+import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads a binary patch from start to end, the index of an indexed patch is ignored.
+ *
+ * @see BinaryPatchFormat
+ * @see IndexedPatch
+ */
+public class BinaryPatchReader extends PatchReader {
+    private final InputStream inputStream;
+    private final int asmDeltaVersion;
+    private final String patchName;
+    private final RecordDecoder decoder;
+
+    /**
+     * The records that are read at the moment, <code>null</code> if the next block of an indexed patch wasn't read yet
+     */
+    private InputStream records;
+    /**
+     * Whether the reader is inside of a run of an indexed patch
+     */
+    private boolean inRun;
+    private boolean ended;
+
+    public BinaryPatchReader(InputStream inputStream) throws IOException {
+        byte[] magic = BinaryPatchFormat.readFully(inputStream, new byte[BinaryPatchFormat.MAGIC.length], BinaryPatchFormat.MAGIC.length);
+
+        if (!Arrays.equals(magic, BinaryPatchFormat.MAGIC)) {
+            throw new IOException("Not a binary patch");
+        }
+
+        this.inputStream = inputStream;
+        this.asmDeltaVersion = BinaryPatchFormat.readVarInt(inputStream);
+        this.decoder = new RecordDecoder(asmDeltaVersion == ASMDeltaPatch.BINARY_VERSION);
+
+        if (asmDeltaVersion == ASMDeltaPatch.BINARY_VERSION) {
+            this.records = new BufferedInputStream(new InflaterInputStream(inputStream), 1 << 16);
+            this.patchName = BinaryPatchFormat.readString(records);
+        } else if (asmDeltaVersion == ASMDeltaPatch.INDEXED_VERSION) {
+            this.patchName = BinaryPatchFormat.readString(inputStream);
+        } else if (asmDeltaVersion == ASMDeltaPatch.DICTIONARY_VERSION) {
+            throw new IOException("The patch was compressed against the original classes, it can only be read with them (see ASMDeltaPatch.read(File, PatchDictionary))");
+        } else {
+            throw new IOException("Unsupported patch version " + asmDeltaVersion);
+        }
+    }
+
+    @Override
+    public String getPatchName() {
+        return patchName;
+    }
+
+    @Override
+    public int getAsmDeltaVersion() {
+        return asmDeltaVersion;
+    }
+
+    @Override
+    public AbstractDifference read() throws IOException {
+        while (!ended) {
+            if (asmDeltaVersion == ASMDeltaPatch.INDEXED_VERSION && !nextRun()) {
+                ended = true;
+                return null;
+            }
+
+            AbstractDifference difference = decoder.read(records);
+
+            if (difference != null) {
+                return difference;
+            }
+
+            if (asmDeltaVersion == ASMDeltaPatch.BINARY_VERSION) {
+                ended = true;
+            } else {
+                inRun = false;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Moves to the next run of an indexed patch unless the reader is inside of one
+     *
+     * @return <code>false</code> if there are no runs left
+     */
+    private boolean nextRun() throws IOException {
+        while (!inRun) {
+            if (records == null) {
+                int length = BinaryPatchFormat.readVarInt(inputStream);
+
+                if (length == 0) { // The index follows
+                    return false;
+                }
+
+                byte[] block = BinaryPatchFormat.readFully(inputStream, new byte[length], length);
+
+                records = new ByteArrayInputStream(BinaryPatchFormat.inflate(block, 0, length));
+            }
+
+            if (BinaryPatchFormat.readString(records) == null) { // End of the block
+                records = null;
+            } else {
+                inRun = true;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (records != null) {
+            records.close();
+        }
+
+        inputStream.close();
+    }
+}
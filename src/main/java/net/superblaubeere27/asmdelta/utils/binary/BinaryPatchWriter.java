@@ -0,0 +1,390 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.utils.binary;
+
+import net.superblaubeere27.asmdelta.ASMDeltaPatch;
+import net.superblaubeere27.asmdelta.PatchWriter;
+import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.utils.DataWriter;
+import net.superblaubeere27.asmdelta.utils.TaskExecutor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.zip.Adler32;
+
+/**
+ * Writes the binary formats. With a {@link TaskExecutor}, the class files of the differences are serialized and the
+ * blocks are deflated on its threads, the output is the same as without one.
+ * <p>
+ * The single deflate stream of version 2 is cut into parts of {@link #STREAM_PART_SIZE} which are deflated on their
+ * own, see {@link BlockCompressor#addStreamPart(byte[], byte[], boolean)}.
+ *
+ * @see BinaryPatchFormat
+ */
+public class BinaryPatchWriter extends PatchWriter {
+    /**
+     * The zlib header of a stream deflated with {@link java.util.zip.Deflater#BEST_COMPRESSION}
+     */
+    private static final byte[] ZLIB_HEADER = {0x78, (byte) 0xDA};
+    /**
+     * The deflate stream of version 2 is deflated in parts of this many bytes
+     */
+    private static final int STREAM_PART_SIZE = 1 << 17;
+    /**
+     * Blocks of an indexed patch are finished at the next class once they have this many bytes. Larger blocks compress
+     * better, smaller ones are faster to decode when only one class is needed.
+     */
+    private static final int BLOCK_SIZE = 1 << 16;
+    /**
+     * The block size of {@link ASMDeltaPatch#DICTIONARY_VERSION}. The dictionary only covers a few classes, so smaller
+     * blocks compress better.
+     */
+    private static final int DICTIONARY_BLOCK_SIZE = 1 << 14;
+    /**
+     * A class with more records is split into several blocks
+     */
+    private static final int MAX_BLOCK_SIZE = 1 << 20;
+    /**
+     * With an executor, differences are collected until there are this many and then prepared in parallel
+     */
+    private static final int PREPARE_BATCH_SIZE = 1 << 10;
+
+    private final OutputStream outputStream;
+    private final RecordEncoder encoder;
+    private final DataWriter buffer = new DataWriter(STREAM_PART_SIZE * 2);
+    private final TaskExecutor executor;
+    private final BlockCompressor compressor;
+    /**
+     * The differences that weren't encoded yet, if there is an executor
+     */
+    private final List<AbstractDifference> pending = new ArrayList<>();
+
+    /**
+     * The checksum of the deflated data of version 2, <code>null</code> if the patch is indexed
+     */
+    private final Adler32 checksum;
+    /**
+     * The end of the data before the part that is collected in {@link #buffer}, if the version is 2
+     */
+    private byte[] window;
+
+    /**
+     * The offsets and lengths of the blocks of an indexed patch, <code>null</code> if the patch isn't indexed
+     */
+    private final DataWriter blocks;
+    private int blockCount;
+    /**
+     * The blocks which contain records of a class, in ascending order
+     */
+    private final Map<String, List<Integer>> classBlocks = new LinkedHashMap<>();
+    /**
+     * The original classes blocks are compressed against, <code>null</code> unless the version is
+     * {@link ASMDeltaPatch#DICTIONARY_VERSION}
+     */
+    private final PatchDictionary dictionary;
+    /**
+     * The classes of the block that is collected in {@link #buffer}, if there is a dictionary
+     */
+    private final Set<String> blockClasses = new TreeSet<>();
+    /**
+     * The class of the run that is collected in {@link #buffer}
+     */
+    private String runClass;
+    private long position;
+
+    private boolean ended;
+
+    public BinaryPatchWriter(OutputStream outputStream, String patchName, int asmDeltaVersion) throws IOException {
+        this(outputStream, patchName, asmDeltaVersion, null);
+    }
+
+    /**
+     * @param dictionary The original classes, required by {@link ASMDeltaPatch#DICTIONARY_VERSION} and ignored by the
+     *                   other versions
+     */
+    public BinaryPatchWriter(OutputStream outputStream, String patchName, int asmDeltaVersion, PatchDictionary dictionary) throws IOException {
+        this(outputStream, patchName, asmDeltaVersion, dictionary, null);
+    }
+
+    /**
+     * @param dictionary The original classes, required by {@link ASMDeltaPatch#DICTIONARY_VERSION} and ignored by the
+     *                   other versions. It is called from the threads of the executor.
+     * @param executor   Encodes and compresses in parallel, may be <code>null</code>. It must not be closed before the
+     *                   patch is finished.
+     */
+    public BinaryPatchWriter(OutputStream outputStream, String patchName, int asmDeltaVersion, PatchDictionary dictionary, TaskExecutor executor) throws IOException {
+        if (asmDeltaVersion < ASMDeltaPatch.BINARY_VERSION || asmDeltaVersion > ASMDeltaPatch.DICTIONARY_VERSION) {
+            throw new IllegalArgumentException("Unsupported patch version " + asmDeltaVersion);
+        }
+        if (asmDeltaVersion == ASMDeltaPatch.DICTIONARY_VERSION && dictionary == null) {
+            throw new IllegalArgumentException("Version " + asmDeltaVersion + " requires the original classes");
+        }
+
+        this.outputStream = outputStream;
+        this.dictionary = asmDeltaVersion == ASMDeltaPatch.DICTIONARY_VERSION ? dictionary : null;
+        this.encoder = new RecordEncoder(asmDeltaVersion == ASMDeltaPatch.BINARY_VERSION);
+        this.executor = executor;
+
+        DataWriter header = new DataWriter();
+
+        header.writeBytes(BinaryPatchFormat.MAGIC, 0, BinaryPatchFormat.MAGIC.length);
+        header.writeVarInt(asmDeltaVersion);
+
+        if (asmDeltaVersion != ASMDeltaPatch.BINARY_VERSION) {
+            header.writeString(patchName);
+
+            this.checksum = null;
+            this.blocks = new DataWriter();
+            this.compressor = new BlockCompressor(executor, this::writeBlock);
+        } else {
+            header.writeBytes(ZLIB_HEADER, 0, ZLIB_HEADER.length);
+
+            this.checksum = new Adler32();
+            this.blocks = null;
+            this.compressor = new BlockCompressor(executor, this::write);
+
+            buffer.writeString(patchName);
+        }
+
+        write(header);
+    }
+
+    @Override
+    public void visitDifference(AbstractDifference difference) throws IOException {
+        if (ended) {
+            throw new IllegalStateException("The patch was already finished");
+        }
+
+        if (executor == null) {
+            encode(difference, null);
+            return;
+        }
+
+        pending.add(difference);
+
+        if (pending.size() >= PREPARE_BATCH_SIZE) {
+            encodePending();
+        }
+    }
+
+    /**
+     * Prepares the pending differences in parallel and encodes them in order
+     */
+    private void encodePending() throws IOException {
+        List<PreparedDifference> prepared = new ArrayList<>(pending.size());
+
+        for (AbstractDifference difference : pending) {
+            prepared.add(new PreparedDifference(difference));
+        }
+
+        pending.clear();
+
+        try {
+            executor.<PreparedDifference, RuntimeException>forEachChunk(prepared, executor.chunkSize(prepared.size()), chunk -> {
+                for (PreparedDifference difference : chunk) {
+                    difference.classFiles = RecordEncoder.prepare(difference.difference);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Encoding the patch was interrupted");
+        }
+
+        for (PreparedDifference difference : prepared) {
+            encode(difference.difference, difference.classFiles);
+        }
+    }
+
+    /**
+     * @param classFiles The prepared class files of the difference, <code>null</code> if it wasn't prepared
+     */
+    private void encode(AbstractDifference difference, List<byte[]> classFiles) throws IOException {
+        if (blocks != null) {
+            String className = difference.getClassName();
+
+            if (runClass != null && (!runClass.equals(className) || buffer.size() >= MAX_BLOCK_SIZE)) {
+                encoder.writeEnd(buffer);
+                runClass = null;
+
+                if (buffer.size() >= (dictionary != null ? DICTIONARY_BLOCK_SIZE : BLOCK_SIZE)) {
+                    finishBlock();
+                }
+            }
+
+            if (runClass == null) {
+                List<Integer> blockNumbers = classBlocks.computeIfAbsent(className, key -> new ArrayList<>(1));
+
+                if (blockNumbers.isEmpty() || blockNumbers.get(blockNumbers.size() - 1) != blockCount) {
+                    blockNumbers.add(blockCount);
+                }
+
+                buffer.writeString(className);
+                runClass = className;
+
+                if (dictionary != null) {
+                    blockClasses.add(className);
+                }
+            }
+        }
+
+        encoder.write(buffer, difference, classFiles);
+
+        if (blocks == null && buffer.size() >= STREAM_PART_SIZE) {
+            finishStreamPart(false);
+        }
+    }
+
+    /**
+     * Queues the collected records of version 2 for deflation
+     */
+    private void finishStreamPart(boolean last) throws IOException {
+        byte[] data = buffer.toByteArray();
+
+        checksum.update(data, 0, data.length);
+        compressor.addStreamPart(data, window, last);
+
+        window = BlockCompressor.slideWindow(window, data);
+        buffer.truncate(0);
+    }
+
+    /**
+     * Queues the collected runs for deflation into a block of their own
+     */
+    private void finishBlock() throws IOException {
+        buffer.writeString(null);
+
+        if (dictionary != null) {
+            List<String> classNames = new ArrayList<>(blockClasses);
+
+            compressor.add(buffer.toByteArray(), () -> BinaryPatchFormat.dictionary(dictionary, classNames));
+        } else {
+            compressor.add(buffer.toByteArray(), null);
+        }
+
+        blockCount++;
+
+        buffer.truncate(0);
+        blockClasses.clear();
+    }
+
+    private void writeBlock(DataWriter block) throws IOException {
+        DataWriter length = new DataWriter(5);
+
+        length.writeVarInt(block.size());
+        write(length);
+
+        blocks.writeVarLong(position);
+        blocks.writeVarInt(block.size());
+
+        write(block);
+    }
+
+    private void write(DataWriter data) throws IOException {
+        outputStream.write(data.getBuffer(), 0, data.size());
+        position += data.size();
+    }
+
+    @Override
+    public void visitEnd() throws IOException {
+        if (ended) {
+            return;
+        }
+
+        ended = true;
+
+        if (!pending.isEmpty()) {
+            encodePending();
+        }
+
+        if (blocks != null) {
+            finishIndexed();
+        } else {
+            encoder.writeEnd(buffer);
+            finishStreamPart(true);
+            compressor.flush();
+
+            DataWriter trailer = new DataWriter(4);
+
+            trailer.writeInt((int) checksum.getValue());
+            write(trailer);
+
+            outputStream.flush();
+        }
+    }
+
+    private void finishIndexed() throws IOException {
+        if (runClass != null) {
+            encoder.writeEnd(buffer);
+        }
+        if (buffer.size() > 0) {
+            finishBlock();
+        }
+
+        compressor.flush();
+
+        DataWriter end = new DataWriter(5);
+
+        end.writeVarInt(0);
+        write(end);
+
+        long indexOffset = position;
+        DataWriter index = new DataWriter(blocks.size() + classBlocks.size() * 32);
+
+        encoder.writeTables(index);
+
+        index.writeVarInt(blockCount);
+        index.writeBytes(blocks.getBuffer(), 0, blocks.size());
+
+        index.writeVarInt(classBlocks.size());
+
+        classBlocks.forEach((className, blockNumbers) -> {
+            index.writeString(className);
+            index.writeVarInt(blockNumbers.size());
+
+            int previous = 0;
+
+            for (int blockNumber : blockNumbers) {
+                index.writeVarInt(blockNumber - previous);
+                previous = blockNumber;
+            }
+        });
+
+        write(BlockCompressor.deflate(index.getBuffer(), index.size(), null, false, true));
+
+        DataWriter trailer = new DataWriter(BinaryPatchFormat.TRAILER_SIZE);
+
+        trailer.writeLong(indexOffset);
+        write(trailer);
+
+        outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            visitEnd();
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private static class PreparedDifference {
+        private final AbstractDifference difference;
+        private List<byte[]> classFiles;
+
+        private PreparedDifference(AbstractDifference difference) {
+            this.difference = difference;
+        }
+    }
+}
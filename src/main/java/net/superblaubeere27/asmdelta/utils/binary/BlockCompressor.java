@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.utils.binary;
+
+import net.superblaubeere27.asmdelta.utils.DataWriter;
+import net.superblaubeere27.asmdelta.utils.TaskExecutor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Deflates the blocks of a patch, on the threads of a {@link TaskExecutor} if there is one. Blocks are queued until
+ * there are enough to keep every thread busy, then they are deflated together and handed to the {@link Sink} in the
+ * order they were queued. The output doesn't depend on the executor.
+ */
+class BlockCompressor {
+    private final TaskExecutor executor;
+    private final Sink sink;
+    private final int maxPending;
+    private final List<Block> pending = new ArrayList<>();
+
+    /**
+     * @param executor Deflates the blocks, <code>null</code> to deflate every block on the calling thread once it is
+     *                 queued
+     */
+    BlockCompressor(TaskExecutor executor, Sink sink) {
+        this.executor = executor;
+        this.sink = sink;
+        this.maxPending = executor == null ? 1 : executor.getParallelism() * 2;
+    }
+
+    /**
+     * Queues a block which is deflated into a stream of its own
+     *
+     * @param dictionary Supplies the preset dictionary, called by the thread which deflates the block. May be
+     *                   <code>null</code>.
+     */
+    void add(byte[] data, DictionarySource dictionary) throws IOException {
+        add(new Block(data, dictionary, false, true));
+    }
+
+    /**
+     * Queues a part of a raw deflate stream which is split into independently deflated parts. Every part but the last
+     * ends with a sync flush and the next part is deflated with the end of the data before it as dictionary, so the
+     * parts form one valid stream which compresses almost as well as deflating the data at once.
+     *
+     * @param window The last {@link BinaryPatchFormat#DICTIONARY_SIZE} bytes before this part, may be
+     *               <code>null</code> for the first one
+     */
+    void addStreamPart(byte[] data, byte[] window, boolean last) throws IOException {
+        add(new Block(data, window == null ? null : () -> window, true, last));
+    }
+
+    private void add(Block block) throws IOException {
+        pending.add(block);
+
+        if (pending.size() >= maxPending) {
+            flush();
+        }
+    }
+
+    /**
+     * Deflates the queued blocks and hands them to the sink
+     */
+    void flush() throws IOException {
+        if (executor == null || pending.size() == 1) {
+            for (Block block : pending) {
+                block.deflate();
+            }
+        } else {
+            try {
+                executor.<Block, IOException>forEachChunk(pending, 1, chunk -> chunk.get(0).deflate());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Compressing the patch was interrupted");
+            }
+        }
+
+        for (Block block : pending) {
+            sink.accept(block.deflated);
+        }
+
+        pending.clear();
+    }
+
+    /**
+     * @param raw    Whether to omit the zlib header and checksum
+     * @param finish Whether to finish the stream, otherwise the output ends with a sync flush
+     */
+    static DataWriter deflate(byte[] data, int length, byte[] dictionary, boolean raw, boolean finish) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, raw);
+
+        try {
+            DataWriter out = new DataWriter(length / 2 + 64);
+            byte[] chunk = new byte[8192];
+
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+
+            deflater.setInput(data, 0, length);
+
+            if (finish) {
+                deflater.finish();
+
+                while (!deflater.finished()) {
+                    out.writeBytes(chunk, 0, deflater.deflate(chunk));
+                }
+            } else {
+                int count;
+
+                do {
+                    count = deflater.deflate(chunk, 0, chunk.length, Deflater.SYNC_FLUSH);
+                    out.writeBytes(chunk, 0, count);
+                } while (count == chunk.length);
+            }
+
+            return out;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return The last {@link BinaryPatchFormat#DICTIONARY_SIZE} bytes of <code>window</code> followed by
+     * <code>data</code>
+     */
+    static byte[] slideWindow(byte[] window, byte[] data) {
+        int fromData = Math.min(data.length, BinaryPatchFormat.DICTIONARY_SIZE);
+        int fromWindow = window == null ? 0 : Math.min(window.length, BinaryPatchFormat.DICTIONARY_SIZE - fromData);
+        byte[] result = new byte[fromWindow + fromData];
+
+        if (fromWindow > 0) {
+            System.arraycopy(window, window.length - fromWindow, result, 0, fromWindow);
+        }
+
+        System.arraycopy(data, data.length - fromData, result, fromWindow, fromData);
+
+        return result;
+    }
+
+    private static class Block {
+        private final byte[] data;
+        private final DictionarySource dictionary;
+        private final boolean raw;
+        private final boolean finish;
+        private DataWriter deflated;
+
+        private Block(byte[] data, DictionarySource dictionary, boolean raw, boolean finish) {
+            this.data = data;
+            this.dictionary = dictionary;
+            this.raw = raw;
+            this.finish = finish;
+        }
+
+        private void deflate() throws IOException {
+            deflated = BlockCompressor.deflate(data, data.length, dictionary == null ? null : dictionary.get(), raw, finish);
+        }
+    }
+
+    @FunctionalInterface
+    interface DictionarySource {
+        byte[] get() throws IOException;
+    }
+
+    @FunctionalInterface
+    interface Sink {
+        void accept(DataWriter deflated) throws IOException;
+    }
+}
@@ -0,0 +1,459 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.utils.binary;
+
+import net.superblaubeere27.asmdelta.utils.DataReader;
+import net.superblaubeere27.asmdelta.utils.DataWriter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Embeds class files into records with their <code>CONSTANT_Utf8</code> entries moved to the {@link StringTable}, so
+ * the owners, names, descriptors and string constants of all embedded classes and members are stored once per patch.
+ * The class file is restored byte by byte.
+ * <p>
+ * A class file that is equal to one embedded before (a library that is shaded twice, a generated method body that
+ * changed the same way in many classes) is stored as reference to the earlier one. The writer only keeps the SHA-256
+ * digests of the class files, the reader keeps the class files themselves and returns the same array for every
+ * reference. Both forget the oldest class files once the class files that can be referenced exceed
+ * {@link #WINDOW_SIZE}, so neither needs more than that in memory.
+ * <pre>
+ * class file   varint 0 = null, 1 = raw, 2 = pooled, 3 = reference
+ *   raw        varint length, byte*
+ *   pooled     byte[10] (magic, version, constant pool count), entry*, varint length, byte* (the rest of the file)
+ *   entry      byte tag, tag 1 = string reference, tag 0 = varint length, byte* (a Utf8 entry which can't be
+ *              stored as string), otherwise the entry as it is
+ *   reference  varlong distance (0 = the last class file that wasn't a reference)
+ * </pre>
+ * Class files with constants this codec doesn't know are stored raw.
+ * <p>
+ * Pooling and references only pay off if the records are read in order. The indexed format repeats the string table in
+ * its index and decodes its blocks independently, so it stores class files raw.
+ */
+class ClassFileCodec {
+    private static final int NULL = 0;
+    private static final int RAW = 1;
+    private static final int POOLED = 2;
+    private static final int REFERENCE = 3;
+
+    private static final int HEADER_SIZE = 10;
+
+    private static final int RAW_UTF8 = 0;
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+
+    /**
+     * The maximum total size of the class files that can be referenced
+     */
+    private static final long WINDOW_SIZE = 1 << 25;
+
+    private final StringTable strings;
+    /**
+     * Whether constants are pooled and equal class files are referenced
+     */
+    private final boolean shared;
+
+    /**
+     * The class files that can be referenced by their sequence number
+     */
+    private final Map<Long, Embedded> window = new HashMap<>();
+    /**
+     * The sequence numbers of the class files in the window by their digest, only used by the writer
+     */
+    private final Map<ByteBuffer, Long> sequences = new HashMap<>();
+    private long firstSequence;
+    private long nextSequence;
+    private long windowSize;
+    private MessageDigest digest;
+
+    /**
+     * @param shared Whether constants are moved to the string table and equal class files are referenced, the reader
+     *               has to use the same setting as the writer
+     */
+    ClassFileCodec(StringTable strings, boolean shared) {
+        this.strings = strings;
+        this.shared = shared;
+    }
+
+    void write(DataWriter out, byte[] classFile) {
+        if (classFile == null) {
+            out.writeVarInt(NULL);
+            return;
+        }
+
+        if (shared) {
+            ByteBuffer key = ByteBuffer.wrap(digest(classFile));
+            Long sequence = sequences.get(key);
+
+            if (sequence != null) {
+                out.writeVarInt(REFERENCE);
+                out.writeVarLong(nextSequence - 1 - sequence);
+                return;
+            }
+
+            sequences.put(key, add(new Embedded(key, null, classFile.length)));
+        }
+
+        int end = shared ? constantPoolEnd(classFile) : -1;
+
+        if (end == -1) {
+            out.writeVarInt(RAW);
+            out.writeByteArray(classFile);
+            return;
+        }
+
+        out.writeVarInt(POOLED);
+        out.writeBytes(classFile, 0, HEADER_SIZE);
+
+        int count = readUnsignedShort(classFile, 8);
+        int offset = HEADER_SIZE;
+
+        for (int i = 1; i < count; i++) {
+            int tag = classFile[offset];
+            int size = entrySize(classFile, offset);
+
+            if (tag == CONSTANT_UTF8) {
+                int length = size - 3;
+                String value = decode(classFile, offset + 3, length);
+
+                if (value != null) {
+                    out.writeByte(CONSTANT_UTF8);
+                    strings.writeReference(out, value);
+                } else {
+                    out.writeByte(RAW_UTF8);
+                    out.writeVarInt(length);
+                    out.writeBytes(classFile, offset + 3, length);
+                }
+            } else {
+                out.writeBytes(classFile, offset, size);
+            }
+            if (tag == CONSTANT_LONG || tag == CONSTANT_DOUBLE) {
+                i++;
+            }
+
+            offset += size;
+        }
+
+        out.writeVarInt(classFile.length - end);
+        out.writeBytes(classFile, end, classFile.length - end);
+    }
+
+    /**
+     * @return The class file, the array is shared by every reference to it and must not be modified
+     */
+    byte[] read(DataReader in) throws IOException {
+        int mode = in.readVarInt();
+        byte[] classFile;
+
+        switch (mode) {
+            case NULL:
+                return null;
+            case RAW:
+                classFile = in.readByteArray();
+                break;
+            case POOLED:
+                classFile = readPooled(in);
+                break;
+            case REFERENCE:
+                return resolve(in.readVarLong());
+            default:
+                throw new IOException("Unknown class file encoding " + mode);
+        }
+
+        if (shared) {
+            add(new Embedded(null, classFile, classFile.length));
+        }
+
+        return classFile;
+    }
+
+    private byte[] resolve(long distance) throws IOException {
+        Embedded embedded = distance < 0 ? null : window.get(nextSequence - 1 - distance);
+
+        if (embedded == null) {
+            throw new IOException("Invalid class file reference " + distance);
+        }
+
+        return embedded.classFile;
+    }
+
+    /**
+     * Adds a class file to the window and drops the oldest ones while the window is too large
+     *
+     * @return The sequence number of the class file
+     */
+    private long add(Embedded embedded) {
+        long sequence = nextSequence++;
+
+        window.put(sequence, embedded);
+        windowSize += embedded.size;
+
+        while (windowSize > WINDOW_SIZE) {
+            Embedded oldest = window.remove(firstSequence++);
+
+            windowSize -= oldest.size;
+
+            if (oldest.digest != null) {
+                sequences.remove(oldest.digest);
+            }
+        }
+
+        return sequence;
+    }
+
+    private byte[] digest(byte[] classFile) {
+        if (digest == null) {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not supported", e); // Every JVM has to support it
+            }
+        }
+
+        return digest.digest(classFile);
+    }
+
+    private byte[] readPooled(DataReader in) throws IOException {
+        byte[] header = in.readBytes(HEADER_SIZE);
+        DataWriter classFile = new DataWriter();
+
+        classFile.writeBytes(header, 0, HEADER_SIZE);
+
+        int count = readUnsignedShort(header, 8);
+
+        for (int i = 1; i < count; i++) {
+            int tag = in.readByte();
+
+            if (tag == CONSTANT_UTF8 || tag == RAW_UTF8) {
+                byte[] bytes = tag == CONSTANT_UTF8 ? encode(readString(in)) : in.readByteArray();
+
+                if (bytes.length > 0xFFFF) {
+                    throw new IOException("Constant too long");
+                }
+
+                classFile.writeByte(CONSTANT_UTF8);
+                classFile.writeByte(bytes.length >>> 8);
+                classFile.writeByte(bytes.length);
+                classFile.writeBytes(bytes, 0, bytes.length);
+                continue;
+            }
+
+            int size = infoSize(tag);
+
+            if (size == -1) {
+                throw new IOException("Unknown constant " + tag);
+            }
+
+            classFile.writeByte(tag);
+            classFile.writeBytes(in.readBytes(size), 0, size);
+
+            if (tag == CONSTANT_LONG || tag == CONSTANT_DOUBLE) {
+                i++;
+            }
+        }
+
+        byte[] rest = in.readByteArray();
+
+        classFile.writeBytes(rest, 0, rest.length);
+
+        return classFile.toByteArray();
+    }
+
+    private String readString(DataReader in) throws IOException {
+        String value = strings.readReference(in);
+
+        if (value == null) {
+            throw new IOException("Missing constant");
+        }
+
+        return value;
+    }
+
+    /**
+     * @return The offset after the constant pool, <code>-1</code> if the constant pool can't be pooled
+     */
+    static int constantPoolEnd(byte[] classFile) {
+        if (classFile.length < HEADER_SIZE) {
+            return -1;
+        }
+
+        int count = readUnsignedShort(classFile, 8);
+        int offset = HEADER_SIZE;
+
+        for (int i = 1; i < count; i++) {
+            if (offset >= classFile.length) {
+                return -1;
+            }
+
+            int size = entrySize(classFile, offset);
+
+            if (size == -1 || classFile.length - offset < size) {
+                return -1;
+            }
+            if (classFile[offset] == CONSTANT_LONG || classFile[offset] == CONSTANT_DOUBLE) {
+                i++;
+            }
+
+            offset += size;
+        }
+
+        return offset;
+    }
+
+    /**
+     * @return The size of the entry including its tag, <code>-1</code> if it is unknown or truncated
+     */
+    private static int entrySize(byte[] classFile, int offset) {
+        int tag = classFile[offset];
+
+        if (tag == CONSTANT_UTF8) {
+            return offset + 3 <= classFile.length ? 3 + readUnsignedShort(classFile, offset + 1) : -1;
+        }
+
+        int size = infoSize(tag);
+
+        return size == -1 ? -1 : size + 1;
+    }
+
+    /**
+     * @return The size of a constant without its tag, <code>-1</code> for unknown constants
+     */
+    private static int infoSize(int tag) {
+        switch (tag) {
+            case 7: // Class
+            case 8: // String
+            case 16: // MethodType
+            case 19: // Module
+            case 20: // Package
+                return 2;
+            case 15: // MethodHandle
+                return 3;
+            case 3: // Integer
+            case 4: // Float
+            case 9: // Fieldref
+            case 10: // Methodref
+            case 11: // InterfaceMethodref
+            case 12: // NameAndType
+            case 17: // Dynamic
+            case 18: // InvokeDynamic
+                return 4;
+            case CONSTANT_LONG:
+            case CONSTANT_DOUBLE:
+                return 8;
+            default:
+                return -1;
+        }
+    }
+
+    private static int readUnsignedShort(byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 8 | data[offset + 1] & 0xFF;
+    }
+
+    /**
+     * Decodes modified UTF-8
+     *
+     * @return <code>null</code> if the string wouldn't be encoded to the same bytes again or can't be stored in the
+     * {@link StringTable}
+     */
+    private static String decode(byte[] data, int offset, int length) {
+        char[] chars = new char[length];
+        int count = 0;
+        int end = offset + length;
+
+        while (offset < end) {
+            int b = data[offset++] & 0xFF;
+
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+            } else if ((b & 0xE0) == 0xC0 && offset < end) {
+                chars[count++] = (char) ((b & 0x1F) << 6 | data[offset++] & 0x3F);
+            } else if ((b & 0xF0) == 0xE0 && offset + 1 < end) {
+                chars[count++] = (char) ((b & 0x0F) << 12 | (data[offset++] & 0x3F) << 6 | data[offset++] & 0x3F);
+            } else {
+                return null;
+            }
+        }
+
+        String value = new String(chars, 0, count);
+
+        // Unpaired surrogates don't survive standard UTF-8
+        for (int i = 0; i < count; i++) {
+            if (Character.isHighSurrogate(chars[i]) && i + 1 < count && Character.isLowSurrogate(chars[i + 1])) {
+                i++;
+            } else if (Character.isSurrogate(chars[i])) {
+                return null;
+            }
+        }
+
+        byte[] encoded = encode(value);
+
+        if (encoded.length != length) {
+            return null;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (encoded[i] != data[end - length + i]) {
+                return null;
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Encodes modified UTF-8
+     */
+    private static byte[] encode(String value) {
+        DataWriter out = new DataWriter(value.length() * 3);
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c >= 0x01 && c <= 0x7F) {
+                out.writeByte(c);
+            } else if (c <= 0x7FF) {
+                out.writeByte(0xC0 | c >> 6 & 0x1F);
+                out.writeByte(0x80 | c & 0x3F);
+            } else {
+                out.writeByte(0xE0 | c >> 12 & 0x0F);
+                out.writeByte(0x80 | c >> 6 & 0x3F);
+                out.writeByte(0x80 | c & 0x3F);
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    private static class Embedded {
+        /**
+         * The digest of the class file, only known to the writer
+         */
+        private final ByteBuffer digest;
+        /**
+         * The class file, only kept by the reader
+         */
+        private final byte[] classFile;
+        private final int size;
+
+        private Embedded(ByteBuffer digest, byte[] classFile, int size) {
+            this.digest = digest;
+            this.classFile = classFile;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.utils.binary;
+
+import net.superblaubeere27.asmdelta.utils.ClassFiles;
+import net.superblaubeere27.asmdelta.utils.DataReader;
+import net.superblaubeere27.asmdelta.utils.InstructionCodec;
+import net.superblaubeere27.asmdelta.utils.LazyClassNode;
+import net.superblaubeere27.asmdelta.utils.LazyMethodNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads the payload written by a {@link DifferenceOutput}
+ */
+public class DifferenceInput {
+    private final DataReader in;
+    private final StringTable strings;
+    private final ClassFileCodec classFiles;
+
+    DifferenceInput(DataReader in, StringTable strings, ClassFileCodec classFiles) {
+        this.in = in;
+        this.strings = strings;
+        this.classFiles = classFiles;
+    }
+
+    public int readInt() throws IOException {
+        return in.readSignedVarInt();
+    }
+
+    public String readString() throws IOException {
+        return strings.readReference(in);
+    }
+
+    public byte[] readBytes() throws IOException {
+        int length = in.readVarInt() - 1;
+
+        if (length == -1) {
+            return null;
+        }
+
+        return in.readBytes(length);
+    }
+
+    public LazyClassNode readLazyClassNode() throws IOException {
+        byte[] bytes = readClassFile();
+
+        return bytes == null ? null : new LazyClassNode(bytes);
+    }
+
+    public LazyMethodNode readLazyMethodNode() throws IOException {
+        byte[] bytes = readClassFile();
+
+        return bytes == null ? null : new LazyMethodNode(bytes);
+    }
+
+    public MethodNode readMethodNode() throws IOException {
+        byte[] bytes = readClassFile();
+
+        return bytes == null ? null : ClassFiles.toMethodNode(bytes);
+    }
+
+    public FieldNode readFieldNode() throws IOException {
+        byte[] bytes = readClassFile();
+
+        return bytes == null ? null : ClassFiles.toFieldNode(bytes);
+    }
+
+    private byte[] readClassFile() throws IOException {
+        return classFiles.read(in);
+    }
+
+    public List<String> readStringList() throws IOException {
+        int size = in.readVarInt() - 1;
+
+        if (size == -1) {
+            return null;
+        }
+
+        List<String> list = new ArrayList<>(Math.min(size, in.remaining()));
+
+        for (int i = 0; i < size; i++) {
+            list.add(readString());
+        }
+
+        return list;
+    }
+
+    /**
+     * @return A sorted map
+     */
+    public Map<String, String> readStringMap() throws IOException {
+        int size = in.readVarInt() - 1;
+
+        if (size == -1) {
+            return null;
+        }
+
+        Map<String, String> map = new TreeMap<>();
+
+        for (int i = 0; i < size; i++) {
+            map.put(readString(), readString());
+        }
+
+        return map;
+    }
+
+    public Object readValue() throws IOException {
+        int tag = in.readByte();
+
+        switch (tag) {
+            case DifferenceOutput.VALUE_NULL:
+                return null;
+            case DifferenceOutput.VALUE_STRING:
+                return readString();
+            case DifferenceOutput.VALUE_CONSTANT:
+                return InstructionCodec.readConstant(in);
+            case DifferenceOutput.VALUE_ANNOTATION: {
+                byte[] bytes = readClassFile();
+
+                if (bytes == null) {
+                    throw new IOException("Missing annotation value");
+                }
+
+                return ClassFiles.toAnnotationValue(bytes);
+            }
+            default:
+                throw new IOException("Unknown value tag " + tag);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.utils.binary;
+
+import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.utils.ClassFiles;
+import net.superblaubeere27.asmdelta.utils.DataWriter;
+import net.superblaubeere27.asmdelta.utils.InstructionCodec;
+import net.superblaubeere27.asmdelta.utils.LazyNode;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Writes the payload of a binary record, see {@link net.superblaubeere27.asmdelta.difference.AbstractDifference#write(DifferenceOutput)}.
+ * Strings are written as references into the {@link StringTable} and tree nodes as class files, whose constants may be
+ * shared through the same table and which are stored once if they are repeated (see {@link ClassFileCodec}). Everything except <code>int</code>s may be
+ * <code>null</code>.
+ *
+ * @see DifferenceInput
+ */
+public class DifferenceOutput {
+    static final int VALUE_NULL = 0;
+    static final int VALUE_STRING = 1;
+    static final int VALUE_CONSTANT = 2;
+    static final int VALUE_ANNOTATION = 3;
+
+    private final DataWriter out;
+    private final StringTable strings;
+    private final ClassFileCodec classFiles;
+    /**
+     * The class files are collected here instead of being written if the output only prepares a difference
+     */
+    private final List<byte[]> collected;
+    /**
+     * The class files of the difference that is written, serialized in advance by {@link #prepare(AbstractDifference)}
+     */
+    private Iterator<byte[]> prepared;
+
+    DifferenceOutput(DataWriter out, StringTable strings, ClassFileCodec classFiles) {
+        this.out = out;
+        this.strings = strings;
+        this.classFiles = classFiles;
+        this.collected = null;
+    }
+
+    private DifferenceOutput(List<byte[]> collected) {
+        this.out = new DataWriter();
+        this.strings = null;
+        this.classFiles = null;
+        this.collected = collected;
+    }
+
+    /**
+     * Serializes the class files a difference embeds, which is the expensive part of writing it. Unlike writing, this
+     * doesn't touch any shared state, so differences can be prepared on any thread.
+     *
+     * @return The class files in the order they are written, see {@link #setPrepared(List)}
+     */
+    static List<byte[]> prepare(AbstractDifference difference) {
+        List<byte[]> classFiles = new ArrayList<>();
+
+        difference.write(new DifferenceOutput(classFiles));
+
+        return classFiles;
+    }
+
+    /**
+     * @param classFiles The class files returned by {@link #prepare(AbstractDifference)} for the next difference,
+     *                   <code>null</code> if they weren't prepared
+     */
+    void setPrepared(List<byte[]> classFiles) {
+        this.prepared = classFiles == null ? null : classFiles.iterator();
+    }
+
+    /**
+     * Writes a signed varint
+     */
+    public void writeInt(int value) {
+        out.writeSignedVarInt(value);
+    }
+
+    public void writeString(String value) {
+        if (strings != null) {
+            strings.writeReference(out, value);
+        }
+    }
+
+    public void writeBytes(byte[] bytes) {
+        out.writeVarInt(bytes == null ? 0 : bytes.length + 1);
+
+        if (bytes != null) {
+            out.writeBytes(bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Writes the bytes of the node, the node isn't parsed
+     */
+    public void writeLazyNode(LazyNode<?> node) {
+        writeClassFile(node, LazyNode::getBytes);
+    }
+
+    public void writeMethodNode(MethodNode methodNode) {
+        writeClassFile(methodNode, ClassFiles::methodToBytes);
+    }
+
+    public void writeFieldNode(FieldNode fieldNode) {
+        writeClassFile(fieldNode, ClassFiles::fieldToBytes);
+    }
+
+    private <T> void writeClassFile(T node, Function<T, byte[]> serializer) {
+        byte[] classFile;
+
+        if (prepared != null && prepared.hasNext()) {
+            classFile = prepared.next();
+        } else {
+            classFile = node == null ? null : serializer.apply(node);
+        }
+
+        if (collected != null) {
+            collected.add(classFile);
+        } else {
+            classFiles.write(out, classFile);
+        }
+    }
+
+    public void writeStringList(List<String> list) {
+        out.writeVarInt(list == null ? 0 : list.size() + 1);
+
+        if (list != null) {
+            list.forEach(this::writeString);
+        }
+    }
+
+    public void writeStringMap(Map<String, String> map) {
+        out.writeVarInt(map == null ? 0 : map.size() + 1);
+
+        if (map != null) {
+            map.forEach((key, value) -> {
+                writeString(key);
+                writeString(value);
+            });
+        }
+    }
+
+    /**
+     * Writes a field constant or an annotation value. Field constants are written like instruction constants,
+     * anything else can only be an annotation value.
+     */
+    public void writeValue(Object value) {
+        if (value == null) {
+            out.writeByte(VALUE_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(VALUE_STRING);
+            writeString((String) value);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Float || value instanceof Double || value instanceof Type) {
+            out.writeByte(VALUE_CONSTANT);
+            InstructionCodec.writeConstant(out, value);
+        } else {
+            out.writeByte(VALUE_ANNOTATION);
+            writeClassFile(value, ClassFiles::annotationValueToBytes);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.utils.binary;
+
+import net.superblaubeere27.asmdelta.ASMDeltaPatch;
+import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.DifferenceLookup;
+import net.superblaubeere27.asmdelta.utils.DataReader;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Random access to an indexed patch ({@link ASMDeltaPatch#INDEXED_VERSION} or {@link ASMDeltaPatch#DICTIONARY_VERSION}). Opening the patch only reads its index,
+ * the differences of a class are read and decoded when they are requested, so the cost of opening a patch doesn't
+ * depend on its size. Records of other classes that share a block are skipped without being decoded.
+ * <p>
+ * Instances are safe for concurrent use, every request decodes fresh differences.
+ */
+public class IndexedPatch implements DifferenceLookup, Closeable {
+    private final FileChannel channel;
+    private final String patchName;
+    /**
+     * Knows every string of the patch, each request decodes with a copy of it
+     */
+    private final RecordDecoder decoder;
+    /**
+     * Every block of the patch, in the order of the patch
+     */
+    private final Block[] allBlocks;
+    /**
+     * The blocks which contain records of a class, in the order of the patch
+     */
+    private final Map<String, Block[]> blocks;
+    /**
+     * The original classes the blocks were compressed against, <code>null</code> for version 3
+     */
+    private final PatchDictionary dictionary;
+
+    private IndexedPatch(FileChannel channel, String patchName, RecordDecoder decoder, Block[] allBlocks, Map<String, Block[]> blocks, PatchDictionary dictionary) {
+        this.channel = channel;
+        this.patchName = patchName;
+        this.decoder = decoder;
+        this.allBlocks = allBlocks;
+        this.blocks = blocks;
+        this.dictionary = dictionary;
+    }
+
+    public static IndexedPatch open(File file) throws IOException {
+        return open(file, null);
+    }
+
+    /**
+     * @param dictionary The original classes the patch was written with, only needed for
+     *                   {@link ASMDeltaPatch#DICTIONARY_VERSION}
+     */
+    public static IndexedPatch open(File file, PatchDictionary dictionary) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+        try {
+            return open(channel, dictionary);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static IndexedPatch open(FileChannel channel, PatchDictionary dictionary) throws IOException {
+        InputStream header = new BufferedInputStream(Channels.newInputStream(channel.position(0)), 512);
+        byte[] magic = BinaryPatchFormat.readFully(header, new byte[BinaryPatchFormat.MAGIC.length], BinaryPatchFormat.MAGIC.length);
+
+        if (!Arrays.equals(magic, BinaryPatchFormat.MAGIC)) {
+            throw new IOException("Not a binary patch");
+        }
+
+        int version = BinaryPatchFormat.readVarInt(header);
+
+        if (version != ASMDeltaPatch.INDEXED_VERSION && version != ASMDeltaPatch.DICTIONARY_VERSION) {
+            throw new IOException("The patch has no index (version " + version + ")");
+        }
+        if (version == ASMDeltaPatch.DICTIONARY_VERSION && dictionary == null) {
+            throw new IOException("The patch was compressed against the original classes, they are required to read it");
+        }
+
+        String patchName = BinaryPatchFormat.readString(header);
+
+        long size = channel.size();
+        long indexOffset = new DataReader(readFully(channel, size - BinaryPatchFormat.TRAILER_SIZE, BinaryPatchFormat.TRAILER_SIZE)).readLong();
+
+        if (indexOffset < 0 || indexOffset > size - BinaryPatchFormat.TRAILER_SIZE) {
+            throw new IOException("Invalid index offset " + indexOffset);
+        }
+
+        int indexLength = Math.toIntExact(size - BinaryPatchFormat.TRAILER_SIZE - indexOffset);
+        DataReader index = new DataReader(BinaryPatchFormat.inflate(readFully(channel, indexOffset, indexLength), 0, indexLength));
+
+        RecordDecoder decoder = RecordDecoder.readTables(index);
+        Block[] blocks = new Block[index.readVarInt()];
+
+        for (int i = 0; i < blocks.length; i++) {
+            long offset = index.readVarLong();
+            int length = index.readVarInt();
+
+            if (offset < 0 || length <= 0 || offset + length > indexOffset) {
+                throw new IOException("Invalid block " + i);
+            }
+
+            blocks[i] = new Block(offset, length);
+        }
+
+        int classCount = index.readVarInt();
+        Map<String, Block[]> classBlocks = new HashMap<>(Math.min(classCount, index.remaining()) * 2);
+
+        for (int i = 0; i < classCount; i++) {
+            String className = index.readString();
+            Block[] blocksOfClass = new Block[index.readVarInt()];
+            int blockNumber = 0;
+
+            for (int j = 0; j < blocksOfClass.length; j++) {
+                blockNumber += index.readVarInt();
+
+                if (blockNumber < 0 || blockNumber >= blocks.length) {
+                    throw new IOException("Invalid block number " + blockNumber);
+                }
+
+                blocksOfClass[j] = blocks[blockNumber];
+                blocks[blockNumber].classNames.add(className);
+            }
+
+            classBlocks.put(className, blocksOfClass);
+        }
+
+        return new IndexedPatch(channel, patchName, decoder, blocks, classBlocks, version == ASMDeltaPatch.DICTIONARY_VERSION ? dictionary : null);
+    }
+
+    public String getPatchName() {
+        return patchName;
+    }
+
+    public Set<String> getClassNames() {
+        return Collections.unmodifiableSet(blocks.keySet());
+    }
+
+    /**
+     * @return Whether the patch has differences for the given class, doesn't read anything
+     */
+    @Override
+    public boolean contains(String className) {
+        return blocks.containsKey(className);
+    }
+
+    /**
+     * @return The differences whose {@link AbstractDifference#getClassName()} is the given class, in the order of the
+     * patch. Empty if the patch doesn't change the class.
+     */
+    @Override
+    public List<AbstractDifference> getDifferences(String className) throws IOException {
+        Block[] classBlocks = blocks.get(className);
+
+        if (classBlocks == null) {
+            return Collections.emptyList();
+        }
+
+        List<AbstractDifference> differences = new ArrayList<>();
+        RecordDecoder decoder = this.decoder.copy();
+
+        for (Block block : classBlocks) {
+            InputStream records = readBlock(block);
+            String runClass;
+
+            while ((runClass = BinaryPatchFormat.readString(records)) != null) {
+                if (!runClass.equals(className)) {
+                    decoder.skipAll(records);
+                    continue;
+                }
+
+                AbstractDifference difference;
+
+                while ((difference = decoder.read(records)) != null) {
+                    differences.add(difference);
+                }
+            }
+        }
+
+        return differences;
+    }
+
+    /**
+     * @return Every difference of the patch in the order of the patch, for applying the whole patch at once
+     */
+    public List<AbstractDifference> getDifferences() throws IOException {
+        List<AbstractDifference> differences = new ArrayList<>();
+        RecordDecoder decoder = this.decoder.copy();
+
+        for (Block block : allBlocks) {
+            InputStream records = readBlock(block);
+
+            while (BinaryPatchFormat.readString(records) != null) {
+                AbstractDifference difference;
+
+                while ((difference = decoder.read(records)) != null) {
+                    differences.add(difference);
+                }
+            }
+        }
+
+        return differences;
+    }
+
+    private InputStream readBlock(Block block) throws IOException {
+        byte[] blockDictionary = dictionary == null ? null : BinaryPatchFormat.dictionary(dictionary, block.classNames);
+
+        return new ByteArrayInputStream(BinaryPatchFormat.inflate(readFully(channel, block.offset, block.length), 0, block.length, blockDictionary));
+    }
+
+    private static byte[] readFully(FileChannel channel, long position, int length) throws IOException {
+        if (position < 0) {
+            throw new EOFException("Truncated patch");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated patch");
+            }
+        }
+
+        return buffer.array();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static class Block {
+        private final long offset;
+        private final int length;
+        /**
+         * The classes which have records in this block, only filled while opening the patch
+         */
+        private final Set<String> classNames = new TreeSet<>();
+
+        private Block(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
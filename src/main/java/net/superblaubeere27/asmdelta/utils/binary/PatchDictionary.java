@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.utils.binary;
+
+import net.superblaubeere27.asmdelta.ASMDelta;
+import net.superblaubeere27.asmdelta.utils.MappedZipFile;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The original classes a patch is compressed against, see {@link net.superblaubeere27.asmdelta.ASMDeltaPatch#DICTIONARY_VERSION}.
+ * The patch can only be read with the same classes it was written with. Implementations have to be thread safe, blocks
+ * may be compressed and decoded concurrently.
+ */
+@FunctionalInterface
+public interface PatchDictionary {
+    /**
+     * @return The original class file of the class, <code>null</code> if the class didn't exist
+     */
+    byte[] getOriginalClass(String className) throws IOException;
+
+    /**
+     * @param readBuffers The buffers the classes are read with
+     * @return A dictionary which reads the classes from the given jar, as long as the jar and the pool are open
+     */
+    static PatchDictionary of(MappedZipFile jar, MappedZipFile.ReadBufferPool readBuffers) {
+        Map<String, MappedZipFile.Entry> entries = new HashMap<>();
+        String prefix = ASMDelta.classEntryPrefix(jar);
+
+        ASMDelta.classEntries(jar).forEach((name, entry) -> {
+            String className = name.substring(prefix.length(), name.length() - ".class".length());
+
+            entries.put(className, entry);
+        });
+
+        return className -> {
+            MappedZipFile.Entry entry = entries.get(className);
+
+            if (entry == null) {
+                return null;
+            }
+
+            MappedZipFile.ReadBuffer readBuffer = readBuffers.borrow();
+
+            try {
+                return entry.readAllBytes(readBuffer);
+            } finally {
+                readBuffers.release(readBuffer);
+            }
+        };
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.utils.binary;
+
+import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.DifferenceRegistry;
+import net.superblaubeere27.asmdelta.utils.DataReader;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes the records written by a {@link RecordEncoder}
+ */
+class RecordDecoder {
+    private final StringTable strings;
+    /**
+     * Whether the string table is complete, otherwise it is built while reading
+     */
+    private final boolean complete;
+    private final ClassFileCodec classFiles;
+
+    private byte[] frame = new byte[256];
+
+    /**
+     * Creates a decoder for reading the records in order, starting at the first one
+     *
+     * @param shareClassFiles The setting the records were encoded with, see {@link RecordEncoder#RecordEncoder(boolean)}
+     */
+    RecordDecoder(boolean shareClassFiles) {
+        this(new StringTable(), false, shareClassFiles);
+    }
+
+    private RecordDecoder(StringTable strings, boolean complete, boolean shareClassFiles) {
+        this.strings = strings;
+        this.complete = complete;
+        this.classFiles = new ClassFileCodec(strings, shareClassFiles);
+    }
+
+    /**
+     * Reads the table written by {@link RecordEncoder#writeTables(net.superblaubeere27.asmdelta.utils.DataWriter)},
+     * the decoder can start at any record.
+     */
+    static RecordDecoder readTables(DataReader in) throws IOException {
+        StringTable strings = new StringTable();
+
+        strings.readAdded(in);
+
+        return new RecordDecoder(strings, true, false);
+    }
+
+    /**
+     * @return A decoder that shares the complete table of this one, decoders may be used concurrently this way
+     */
+    RecordDecoder copy() {
+        if (!complete) {
+            throw new IllegalStateException("The string table is incomplete");
+        }
+
+        return new RecordDecoder(strings, true, false);
+    }
+
+    /**
+     * @return The next difference, <code>null</code> at the end of the records
+     */
+    AbstractDifference read(InputStream in) throws IOException {
+        int type = BinaryPatchFormat.readVarInt(in);
+
+        if (type == BinaryPatchFormat.END) {
+            return null;
+        }
+
+        DataReader record = readFrame(in);
+
+        if (complete) {
+            StringTable.skipAdded(record);
+        } else {
+            strings.readAdded(record);
+        }
+
+        return DifferenceRegistry.read(type, new DifferenceInput(record, strings, classFiles));
+    }
+
+    /**
+     * Skips the records until the end
+     */
+    void skipAll(InputStream in) throws IOException {
+        while (BinaryPatchFormat.readVarInt(in) != BinaryPatchFormat.END) {
+            int length = BinaryPatchFormat.readVarInt(in);
+
+            if (length < 0 || in.skip(length) != length) {
+                throw new EOFException("Unexpected end of patch");
+            }
+        }
+    }
+
+    private DataReader readFrame(InputStream in) throws IOException {
+        int length = BinaryPatchFormat.readVarInt(in);
+
+        if (length > frame.length) {
+            frame = new byte[Math.max(length, frame.length * 2)];
+        }
+
+        return new DataReader(BinaryPatchFormat.readFully(in, frame, length), 0, length);
+    }
+}
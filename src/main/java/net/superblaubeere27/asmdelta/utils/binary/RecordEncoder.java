@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.utils.binary;
+
+import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.DifferenceRegistry;
+import net.superblaubeere27.asmdelta.utils.DataWriter;
+
+import java.util.List;
+
+/**
+ * Encodes the records of a patch, see {@link BinaryPatchFormat}. Every string is written once, when a record
+ * references it first.
+ */
+class RecordEncoder {
+    private final StringTable strings = new StringTable();
+
+    private final DataWriter frame = new DataWriter();
+    private final DataWriter payload = new DataWriter();
+    private final DifferenceOutput output;
+
+    /**
+     * @param shareClassFiles Whether the constants of embedded class files are moved to the string table and repeated
+     *                        class files are referenced, see {@link ClassFileCodec}
+     */
+    RecordEncoder(boolean shareClassFiles) {
+        this.output = new DifferenceOutput(payload, strings, new ClassFileCodec(strings, shareClassFiles));
+    }
+
+    /**
+     * Serializes the class files of a difference in advance, may be called from any thread
+     *
+     * @see DifferenceOutput#prepare(AbstractDifference)
+     */
+    static List<byte[]> prepare(AbstractDifference difference) {
+        return DifferenceOutput.prepare(difference);
+    }
+
+    void write(DataWriter out, AbstractDifference difference) {
+        write(out, difference, null);
+    }
+
+    /**
+     * @param classFiles The result of {@link #prepare(AbstractDifference)}, <code>null</code> if the difference wasn't
+     *                   prepared
+     */
+    void write(DataWriter out, AbstractDifference difference, List<byte[]> classFiles) {
+        out.writeVarInt(DifferenceRegistry.getTag(difference.getClass()));
+
+        int knownStrings = strings.size();
+
+        payload.truncate(0);
+        output.setPrepared(classFiles);
+        difference.write(output);
+        output.setPrepared(null);
+
+        frame.truncate(0);
+        strings.writeAdded(frame, knownStrings);
+
+        out.writeVarInt(frame.size() + payload.size());
+        out.writeBytes(frame.getBuffer(), 0, frame.size());
+        out.writeBytes(payload.getBuffer(), 0, payload.size());
+    }
+
+    void writeEnd(DataWriter out) {
+        out.writeVarInt(BinaryPatchFormat.END);
+    }
+
+    /**
+     * Writes every string used so far, a decoder created by {@link RecordDecoder#readTables(DataReader)} can decode any
+     * record that was written before
+     */
+    void writeTables(DataWriter out) {
+        strings.writeAdded(out, 0);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.utils.binary;
+
+import net.superblaubeere27.asmdelta.utils.DataReader;
+import net.superblaubeere27.asmdelta.utils.DataWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The strings of a binary patch, every string is stored once and referenced by its index. Reference 0 is
+ * <code>null</code>, reference <code>i + 1</code> is the string at index <code>i</code>.
+ * <p>
+ * The table grows while the patch is written, every record carries the strings it references first.
+ */
+public class StringTable {
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> indices = new HashMap<>();
+
+    public int intern(String value) {
+        if (value == null) {
+            return 0;
+        }
+
+        Integer index = indices.get(value);
+
+        if (index == null) {
+            index = strings.size();
+
+            strings.add(value);
+            indices.put(value, index);
+        }
+
+        return index + 1;
+    }
+
+    public void writeReference(DataWriter out, String value) {
+        out.writeVarInt(intern(value));
+    }
+
+    public String readReference(DataReader in) throws IOException {
+        int reference = in.readVarInt();
+
+        if (reference == 0) {
+            return null;
+        }
+        if (reference < 0 || reference > strings.size()) {
+            throw new IOException("Invalid string reference " + reference);
+        }
+
+        return strings.get(reference - 1);
+    }
+
+    public int size() {
+        return strings.size();
+    }
+
+    /**
+     * Writes the strings that were interned since the table had <code>size</code> strings
+     */
+    public void writeAdded(DataWriter out, int size) {
+        out.writeVarInt(strings.size() - size);
+
+        for (int i = size; i < strings.size(); i++) {
+            out.writeString(strings.get(i));
+        }
+    }
+
+    /**
+     * Skips strings written by {@link #writeAdded(DataWriter, int)}
+     */
+    public static void skipAdded(DataReader in) throws IOException {
+        int count = in.readVarInt();
+
+        for (int i = 0; i < count; i++) {
+            in.readString();
+        }
+    }
+
+    /**
+     * Appends strings written by {@link #writeAdded(DataWriter, int)}
+     */
+    public void readAdded(DataReader in) throws IOException {
+        int count = in.readVarInt();
+
+        for (int i = 0; i < count; i++) {
+            String string = in.readString();
+
+            if (string == null) {
+                throw new IOException("Invalid string table entry");
+            }
+
+            strings.add(string);
+        }
+    }
+}
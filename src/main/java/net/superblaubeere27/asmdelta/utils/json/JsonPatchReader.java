@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.utils.json;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import net.superblaubeere27.asmdelta.PatchReader;
+import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.utils.Utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the GZIP'd JSON format token by token, only the difference that is read at the moment is parsed into a tree.
+ */
+public class JsonPatchReader extends PatchReader {
+    private final JsonReader reader;
+    private String patchName;
+    private int asmDeltaVersion;
+    /**
+     * Whether the reader is inside of the <code>differenceList</code> array
+     */
+    private boolean inDifferences;
+    private boolean ended;
+
+    public JsonPatchReader(InputStream inputStream) throws IOException {
+        this.reader = Utils.GSON.newJsonReader(new BufferedReader(new InputStreamReader(new GZIPInputStream(inputStream, 1 << 16), StandardCharsets.UTF_8), 1 << 16));
+
+        reader.beginObject();
+        readProperties();
+    }
+
+    /**
+     * Reads the properties of the patch until it reaches the differences or the end of the patch
+     */
+    private void readProperties() throws IOException {
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+
+            switch (name) {
+                case "patchName":
+                    patchName = reader.nextString();
+                    break;
+                case "asmDeltaVersion":
+                    asmDeltaVersion = reader.nextInt();
+                    break;
+                case "differenceList":
+                    reader.beginArray();
+                    inDifferences = true;
+                    return;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+
+        reader.endObject();
+        ended = true;
+    }
+
+    @Override
+    public String getPatchName() {
+        return patchName;
+    }
+
+    @Override
+    public int getAsmDeltaVersion() {
+        return asmDeltaVersion;
+    }
+
+    @Override
+    public AbstractDifference read() throws IOException {
+        while (!ended) {
+            if (inDifferences && reader.hasNext()) {
+                try {
+                    return Utils.GSON.fromJson(reader, AbstractDifference.class);
+                } catch (JsonParseException e) {
+                    throw new IOException("Malformed difference", e);
+                }
+            }
+
+            if (inDifferences) {
+                reader.endArray();
+                inDifferences = false;
+            }
+
+            readProperties();
+        }
+
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.utils.json;
+
+import com.google.gson.stream.JsonWriter;
+import net.superblaubeere27.asmdelta.PatchWriter;
+import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.utils.Utils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the GZIP'd JSON format token by token, the output is the same as serializing a whole
+ * {@link net.superblaubeere27.asmdelta.ASMDeltaPatch} with {@link Utils#GSON}.
+ */
+public class JsonPatchWriter extends PatchWriter {
+    private final GZIPOutputStream gz;
+    private final JsonWriter writer;
+    private boolean ended;
+
+    public JsonPatchWriter(OutputStream outputStream, String patchName, int asmDeltaVersion) throws IOException {
+        this.gz = new GZIPOutputStream(outputStream, 1 << 16);
+        this.writer = Utils.GSON.newJsonWriter(new BufferedWriter(new OutputStreamWriter(gz, StandardCharsets.UTF_8), 1 << 16));
+
+        writer.beginObject();
+
+        if (patchName != null) {
+            writer.name("patchName").value(patchName);
+        }
+
+        writer.name("asmDeltaVersion").value(asmDeltaVersion);
+        writer.name("differenceList").beginArray();
+    }
+
+    @Override
+    public void visitDifference(AbstractDifference difference) throws IOException {
+        if (ended) {
+            throw new IllegalStateException("The patch was already finished");
+        }
+
+        Utils.GSON.toJson(difference, AbstractDifference.class, writer);
+    }
+
+    @Override
+    public void visitEnd() throws IOException {
+        if (ended) {
+            return;
+        }
+
+        ended = true;
+
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+        gz.finish();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            visitEnd();
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -12,6 +12,7 @@ package net.superblaubeere27.asmdelta.utils.typeadapter;
 
 import com.google.gson.*;
 import net.superblaubeere27.asmdelta.difference.AbstractDifference;
+import net.superblaubeere27.asmdelta.difference.DifferenceRegistry;
 
 import java.lang.reflect.Type;
 
@@ -25,12 +26,13 @@ public class AbstractDifferenceSerializer implements JsonSerializer<AbstractDiff
             throws JsonParseException {
         JsonObject jsonObj = jsonElement.getAsJsonObject();
         String className = jsonObj.get(CLASS_META_KEY).getAsString();
-        try {
-            Class<?> clz = Class.forName(className);
-            return jsonDeserializationContext.deserialize(jsonElement, clz);
-        } catch (ClassNotFoundException e) {
-            throw new JsonParseException(e);
+        Class<? extends AbstractDifference> clz = DifferenceRegistry.forName(className);
+
+        if (clz == null) {
+            throw new JsonParseException("Unknown difference type " + className);
         }
+
+        return jsonDeserializationContext.deserialize(jsonElement, clz);
     }
 
     @Override
@@ -8,12 +8,12 @@
  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
+
 package net.superblaubeere27.asmdelta.utils.typeadapter;
 
 import com.google.gson.*;
+import net.superblaubeere27.asmdelta.utils.ClassFiles;
 import net.superblaubeere27.asmdelta.utils.Hex;
-import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.tree.ClassNode;
 
 import java.io.IOException;
@@ -23,28 +23,15 @@ public class ClassNodeSerializer implements JsonSerializer<ClassNode>, JsonDeser
 
     @Override
     public JsonElement serialize(ClassNode classNode, Type type, JsonSerializationContext jsonSerializationContext) {
-        ClassWriter classWriter = new ClassWriter(0);
-
-
-        classNode.accept(classWriter);
-
-        return new JsonPrimitive(Hex.encodeHexString(classWriter.toByteArray()));
+        return new JsonPrimitive(Hex.encodeHexString(ClassFiles.toBytes(classNode)));
     }
 
     @Override
     public ClassNode deserialize(JsonElement jsonElement, Type type, JsonDeserializationContext jsonDeserializationContext) throws JsonParseException {
-        ClassNode classNode = new ClassNode();
-
-        ClassReader cr;
-
         try {
-            cr = new ClassReader(Hex.decodeHex(jsonElement.getAsString()));
+            return ClassFiles.toClassNode(Hex.decodeHex(jsonElement.getAsString()));
         } catch (IOException e) {
             throw new JsonParseException(e);
         }
-
-        cr.accept(classNode, 0);
-
-        return classNode;
     }
 }
\ No newline at end of file
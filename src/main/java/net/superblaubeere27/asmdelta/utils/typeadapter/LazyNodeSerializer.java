@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta.utils.typeadapter;
+
+import com.google.gson.*;
+import net.superblaubeere27.asmdelta.utils.Hex;
+import net.superblaubeere27.asmdelta.utils.LazyNode;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.function.Function;
+
+/**
+ * Writes lazy nodes like {@link ClassNodeSerializer} and {@link MethodNodeSerializer}, but doesn't parse them when
+ * reading.
+ */
+public class LazyNodeSerializer<T extends LazyNode<?>> implements JsonSerializer<T>, JsonDeserializer<T> {
+    private final Function<byte[], T> factory;
+
+    public LazyNodeSerializer(Function<byte[], T> factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public JsonElement serialize(T node, Type type, JsonSerializationContext jsonSerializationContext) {
+        return new JsonPrimitive(Hex.encodeHexString(node.getBytes()));
+    }
+
+    @Override
+    public T deserialize(JsonElement jsonElement, Type type, JsonDeserializationContext jsonDeserializationContext) throws JsonParseException {
+        try {
+            return factory.apply(Hex.decodeHex(jsonElement.getAsString()));
+        } catch (IOException e) {
+            throw new JsonParseException(e);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2019 superblaubeere27
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package net.superblaubeere27.asmdelta;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Runs a small application with the agent jar and a patch for it in every format the agent reads. The application is
+ * started without the dependencies of asm-delta on its class path, like a real one, so the agent jar has to bring them.
+ * <p>
+ * Run it after <code>mvn package</code>:
+ * <code>java -cp target/test-classes:target/classes:&lt;dependencies&gt; net.superblaubeere27.asmdelta.PatchAgentCheck [agent jar]</code>
+ */
+public class PatchAgentCheck {
+    private static final String ORIGINAL = "original";
+    private static final String PATCHED = "patched";
+
+    public static void main(String[] args) throws Exception {
+        File agentJar = args.length > 0 ? new File(args[0]) : findAgentJar(new File("target"));
+        File directory = Files.createTempDirectory("asm-delta-agent").toFile();
+
+        File originalJar = writeApplication(new File(directory, "original.jar"), ORIGINAL);
+        File patchedJar = writeApplication(new File(directory, "patched.jar"), PATCHED);
+
+        Map<String, Integer> versions = new TreeMap<>();
+
+        versions.put("JSON", ASMDeltaPatch.JSON_VERSION);
+        versions.put("binary", ASMDeltaPatch.BINARY_VERSION);
+        versions.put("indexed", ASMDeltaPatch.INDEXED_VERSION);
+
+        boolean failed = false;
+
+        for (Map.Entry<String, Integer> version : versions.entrySet()) {
+            File patchFile = new File(directory, version.getKey() + ".patch");
+
+            try (FileOutputStream outputStream = new FileOutputStream(patchFile)) {
+                new ASMDeltaPatch("agent-check", version.getValue(), ASMDelta.calculateDifference(1, originalJar, patchedJar)).write(outputStream);
+            }
+
+            String output = run(agentJar, patchFile, originalJar);
+
+            if (output.equals(PATCHED)) {
+                System.out.println(version.getKey() + ": ok");
+            } else {
+                System.out.println(version.getKey() + ": expected \"" + PATCHED + "\", the application printed:\n" + output);
+                failed = true;
+            }
+        }
+
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static File findAgentJar(File directory) {
+        File[] agentJars = directory.listFiles((dir, name) -> name.endsWith("-agent.jar"));
+
+        if (agentJars == null || agentJars.length != 1) {
+            throw new IllegalStateException("No agent jar in " + directory.getAbsolutePath() + ", run mvn package or pass its path");
+        }
+
+        return agentJars[0];
+    }
+
+    private static String run(File agentJar, File patchFile, File applicationJar) throws IOException, InterruptedException {
+        String java = new File(System.getProperty("java.home"), "bin/java").getPath();
+        Process process = new ProcessBuilder(java, "-javaagent:" + agentJar.getAbsolutePath() + "=" + patchFile.getAbsolutePath(), "-cp", applicationJar.getAbsolutePath(), "app.Main")
+                .redirectErrorStream(true)
+                .start();
+
+        byte[] output;
+
+        try (InputStream inputStream = process.getInputStream()) {
+            output = inputStream.readAllBytes();
+        }
+
+        process.waitFor();
+
+        return new String(output, StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * An application whose main class prints the greeting of another class
+     */
+    private static File writeApplication(File file, String greeting) throws IOException {
+        try (JarOutputStream jar = new JarOutputStream(new FileOutputStream(file))) {
+            jar.putNextEntry(new JarEntry("app/Main.class"));
+            jar.write(mainClass());
+            jar.putNextEntry(new JarEntry("app/Greeter.class"));
+            jar.write(greeterClass(greeting));
+        }
+
+        return file;
+    }
+
+    private static byte[] mainClass() {
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "app/Main", null, "java/lang/Object", null);
+
+        MethodVisitor main = classWriter.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "main", "([Ljava/lang/String;)V", null, null);
+
+        main.visitCode();
+        main.visitFieldInsn(Opcodes.GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+        main.visitMethodInsn(Opcodes.INVOKESTATIC, "app/Greeter", "greeting", "()Ljava/lang/String;", false);
+        main.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V", false);
+        main.visitInsn(Opcodes.RETURN);
+        main.visitMaxs(0, 0);
+        main.visitEnd();
+
+        classWriter.visitEnd();
+
+        return classWriter.toByteArray();
+    }
+
+    private static byte[] greeterClass(String greeting) {
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "app/Greeter", null, "java/lang/Object", null);
+
+        MethodVisitor method = classWriter.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "greeting", "()Ljava/lang/String;", null, null);
+
+        method.visitCode();
+        method.visitLdcInsn(greeting);
+        method.visitInsn(Opcodes.ARETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+
+        classWriter.visitEnd();
+
+        return classWriter.toByteArray();
+    }
+}